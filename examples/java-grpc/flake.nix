@@ -17,12 +17,191 @@
   }:
     flake-utils.lib.eachDefaultSystem (system: let
       pkgs = nixpkgs.legacyPackages.${system};
+
+      protocConfig = {
+        sourceDirectories = ["./proto"];
+        includeDirectories = ["./proto"];
+        files = ["./proto/example/v1/greeter.proto"];
+      };
+
+      javaConfig = {
+        enable = true;
+        package = pkgs.protobuf_21;
+        # Java 21 runs the server calls on virtual threads
+        jdk = pkgs.jdk21;
+        outputPath = "gen/java";
+        options = [];
+        grpc = {
+          enable = true;
+          options = [];
+          # Generates bufrnix.BufrnixGrpcServer, bufrnix.BufrnixServerStreams and
+          # bufrnix.BufrnixGrpcMetrics, used by GreeterServer and GreeterClient
+          virtualThreads = true;
+          flowControl = true;
+          metrics = true;
+        };
+      };
+
+      # Generated messages and stubs compiled into a jar, with native-image metadata
+      protos = bufrnix.lib.mkBufrnixDerivations {
+        inherit pkgs;
+        src = ./.;
+        config = {
+          protoc = protocConfig;
+          languages.java =
+            javaConfig
+            // {
+              nativeImage.enable = true;
+              jar.enable = true;
+            };
+        };
+      };
+
+      # Runtime of the Netty server beyond the compile classpath of the stubs
+      grpcRuntime = map pkgs.fetchurl [
+        {
+          url = "https://repo1.maven.org/maven2/io/grpc/grpc-core/1.60.0/grpc-core-1.60.0.jar";
+          hash = "sha256-5EvmSZU0kF+aq0Sgj4D0IGlQ+Klv8ifaRLn4H+8b510=";
+        }
+        {
+          url = "https://repo1.maven.org/maven2/io/grpc/grpc-util/1.60.0/grpc-util-1.60.0.jar";
+          hash = "sha256-6awXc+o23H8ZfDOBVMLRssBvWUnArCzT2k9/DhAabkc=";
+        }
+        {
+          url = "https://repo1.maven.org/maven2/io/grpc/grpc-netty-shaded/1.60.0/grpc-netty-shaded-1.60.0.jar";
+          hash = "sha256-RaQiXeIsnMx+bF2BPUCQ0GbNemTf6NDMy+Q13/CI0fA=";
+        }
+        {
+          url = "https://repo1.maven.org/maven2/io/grpc/grpc-context/1.60.0/grpc-context-1.60.0.jar";
+          hash = "sha256-A0UXafMZfgKMVbGhGY+gYwGCjM2p0jTuW7IqFmHRjDc=";
+        }
+        {
+          url = "https://repo1.maven.org/maven2/io/perfmark/perfmark-api/0.26.0/perfmark-api-0.26.0.jar";
+          hash = "sha256-t9I+k6NFN84zJwgmmg0UBHiKW14ZSegvVTX85Rs+qVs=";
+        }
+        {
+          url = "https://repo1.maven.org/maven2/com/google/code/gson/gson/2.10.1/gson-2.10.1.jar";
+          hash = "sha256-QkHBSncnw0/uplB+yAExij1KkPBw5FJWgQefuU7kxZM=";
+        }
+        {
+          url = "https://repo1.maven.org/maven2/com/google/guava/failureaccess/1.0.1/failureaccess-1.0.1.jar";
+          hash = "sha256-oXHuTHNN0tqDfksWvp30Zhr6typBra8x64Tf2vk2yiY=";
+        }
+      ];
+
+      # Latency histograms of GreeterClient --load
+      hdrHistogram = pkgs.fetchurl {
+        url = "https://repo1.maven.org/maven2/org/hdrhistogram/HdrHistogram/2.2.2/HdrHistogram-2.2.2.jar";
+        hash = "sha256-ItHUMWxOwTpotVnpjIJW1pBxWTcx2pYTZkD4ZPoU+tg=";
+      };
+
+      classpath = pkgs.lib.concatStringsSep ":" (protos.jars.java.classpath ++ grpcRuntime ++ [hdrHistogram]);
+
+      # Example classes for the executor benchmark
+      exampleClasses = pkgs.stdenv.mkDerivation {
+        pname = "java-grpc-example-classes";
+        version = "1.0.0";
+        src = ./src;
+
+        nativeBuildInputs = [pkgs.jdk21];
+
+        buildPhase = ''
+          runHook preBuild
+          find main/java -name '*.java' > sources
+          javac --release 17 -encoding UTF-8 -classpath ${classpath} -d classes @sources
+          runHook postBuild
+        '';
+
+        installPhase = ''
+          runHook preInstall
+          cp -r classes $out
+          runHook postInstall
+        '';
+      };
+
+      # GreeterServer on the JVM, with --quiet to stop logging every call
+      greeterServer = pkgs.writeShellApplication {
+        name = "greeter-server";
+        runtimeInputs = [pkgs.jdk21];
+        text = ''
+          exec java -cp ${exampleClasses}:${classpath} com.example.grpc.GreeterServer "$@"
+        '';
+      };
+
+      # Open-loop load against a running GreeterServer, e.g. --rpc=bidi --rps=500 --duration=30s
+      greeterLoad = pkgs.writeShellApplication {
+        name = "greeter-load";
+        runtimeInputs = [pkgs.jdk21];
+        text = ''
+          exec java -cp ${exampleClasses}:${classpath} com.example.grpc.GreeterClient --load "$@"
+        '';
+      };
+
+      # 1000 slow clients of an onNext loop, then of BufrnixServerStreams
+      slowClientsBenchmark = pkgs.writeShellApplication {
+        name = "slow-clients-benchmark";
+        runtimeInputs = [pkgs.jdk21];
+        text = ''
+          clients="''${1:-1000}"
+          for mode in loop flow; do
+            java -cp ${exampleClasses}:${classpath} com.example.grpc.SlowClientsBenchmark "$mode" "$clients"
+          done
+        '';
+      };
+
+      # Fails if BufrnixServerStreams lets a slow client fall more messages behind than its
+      # flow-control window holds. The onNext loop runs first for contrast and may exceed it.
+      slowClientsCheck = pkgs.runCommand "java-grpc-slow-clients" {nativeBuildInputs = [pkgs.jdk21];} ''
+        # A server and a client socket per slow client
+        ulimit -n "$(ulimit -Hn)" || true
+        java -cp ${exampleClasses}:${classpath} com.example.grpc.SlowClientsBenchmark loop 1000 || true
+        java -cp ${exampleClasses}:${classpath} com.example.grpc.SlowClientsBenchmark flow 1000
+        touch $out
+      '';
+
+      # 10000 concurrent sayHelloStream calls on the default pool, then on virtual threads
+      executorBenchmark = pkgs.writeShellApplication {
+        name = "executor-benchmark";
+        runtimeInputs = [pkgs.jdk21];
+        text = ''
+          streams="''${1:-10000}"
+          for mode in pool virtual; do
+            java -cp ${exampleClasses}:${classpath} com.example.grpc.ExecutorBenchmark "$mode" "$streams"
+          done
+        '';
+      };
+
+      # GreeterServer compiled ahead of time with GraalVM native-image
+      serverNative = pkgs.stdenv.mkDerivation {
+        pname = "greeter-server-native";
+        version = "1.0.0";
+        src = ./src;
+
+        nativeBuildInputs = [pkgs.graalvmPackages.graalvm-ce];
+
+        buildPhase = ''
+          runHook preBuild
+
+          find main/java -name '*.java' > sources
+          javac --release 17 -encoding UTF-8 -classpath ${classpath} -d classes @sources
+          native-image --no-fallback -classpath classes:${classpath} \
+            -o greeter-server com.example.grpc.GreeterServer
+
+          runHook postBuild
+        '';
+
+        installPhase = ''
+          runHook preInstall
+          install -Dm755 greeter-server $out/bin/greeter-server
+          runHook postInstall
+        '';
+      };
     in {
       devShells.default = pkgs.mkShell {
         packages = [
           pkgs.gradle
           pkgs.maven
-          pkgs.jdk17
+          pkgs.jdk21
           pkgs.protobuf_21
         ];
         shellHook = ''
@@ -32,6 +211,12 @@
           echo "  gradle build - Build with Gradle (in gen/java/)"
           echo "  gradle runServer - Run the gRPC server"
           echo "  gradle runClient - Run the gRPC client"
+          echo "  nix build .#server-native - Build the server as a GraalVM native image"
+          echo "  nix run .#greeter-server -- --quiet - Run the server without logging every call"
+          echo "  nix run .#greeter-load -- --rpc=unary --rps=1000 - Load the server with GreeterClient --load"
+          echo "  nix run .#executor-benchmark - Compare the default pool with virtual threads"
+          echo "  nix run .#slow-clients-benchmark - Compare an onNext loop with flow-controlled streaming"
+          echo "  nix build .#checks.${system}.slow-clients - Check that slow clients stay within their window"
         '';
       };
       packages = {
@@ -39,24 +224,16 @@
           inherit pkgs;
           config = {
             root = ./.;
-            protoc = {
-              sourceDirectories = ["./proto"];
-              includeDirectories = ["./proto"];
-              files = ["./proto/example/v1/greeter.proto"];
-            };
-            languages.java = {
-              enable = true;
-              package = pkgs.protobuf_21;
-              jdk = pkgs.jdk17;
-              outputPath = "gen/java";
-              options = [];
-              grpc = {
-                enable = true;
-                options = [];
-              };
-            };
+            protoc = protocConfig;
+            languages.java = javaConfig;
           };
         };
+        server-native = serverNative;
+        greeter-server = greeterServer;
+        greeter-load = greeterLoad;
+        executor-benchmark = executorBenchmark;
+        slow-clients-benchmark = slowClientsBenchmark;
       };
+      checks.slow-clients = slowClientsCheck;
     });
 }
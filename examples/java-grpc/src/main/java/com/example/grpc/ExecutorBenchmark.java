@@ -0,0 +1,205 @@
+package com.example.grpc;
+
+import com.example.grpc.v1.GreeterServiceGrpc;
+import com.example.grpc.v1.HelloRequest;
+import com.example.grpc.v1.HelloResponse;
+
+import bufrnix.BufrnixGrpcServer;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens many concurrent {@code sayHelloStream} calls against a blocking greeter running either on
+ * grpc-java's default thread pool or on virtual threads, and reports platform threads, memory and
+ * latency percentiles.
+ *
+ * <p>Unlike GreeterServer, whose streams are paced on a scheduler, every stream here blocks its
+ * handler thread for 5 x 500 ms, standing in for blocking I/O such as a JDBC query. A stream
+ * cannot complete in less than 2.5 s. Run one mode per JVM so that the thread and memory peaks of
+ * one do not carry over:
+ *
+ * <pre>
+ * java -cp ... com.example.grpc.ExecutorBenchmark pool 10000
+ * java -cp ... com.example.grpc.ExecutorBenchmark virtual 10000
+ * </pre>
+ *
+ * <p>Client and server share the JVM, so the thread counts include the few Netty event loop
+ * threads of both; the client handles its responses on those event loops.
+ */
+public class ExecutorBenchmark {
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "virtual";
+        int streams = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        if (!mode.equals("pool") && !mode.equals("virtual")) {
+            System.err.println("Usage: ExecutorBenchmark [pool|virtual] [streams]");
+            System.exit(2);
+        }
+        if (mode.equals("virtual") && !BufrnixGrpcServer.virtualThreads()) {
+            System.err.println("Virtual threads need Java 21, running on " + System.getProperty("java.version"));
+            System.exit(1);
+        }
+
+        ServerBuilder<?> builder = ServerBuilder.forPort(0).addService(new SleepingGreeter());
+        if (mode.equals("virtual")) {
+            BufrnixGrpcServer.configure(builder);
+        }
+        Server server = builder.build().start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+            .usePlaintext()
+            .directExecutor()
+            .build();
+
+        try {
+            // Connect and load the call path before measuring
+            GreeterServiceGrpc.newBlockingStub(channel)
+                .sayHello(HelloRequest.newBuilder().setName("warmup").build());
+            run(mode, streams, channel);
+        } finally {
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Server streaming with a blocking handler, as GreeterServer had it before BufrnixServerStreams. */
+    static class SleepingGreeter extends GreeterServiceGrpc.GreeterServiceImplBase {
+        /** Answers the warmup call. */
+        @Override
+        public void sayHello(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+            responseObserver.onNext(HelloResponse.newBuilder()
+                .setMessage("Hello " + request.getName())
+                .setTimestamp(System.currentTimeMillis())
+                .build());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void sayHelloStream(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+            for (int i = 1; i <= 5; i++) {
+                responseObserver.onNext(HelloResponse.newBuilder()
+                    .setMessage("Hello " + request.getName() + " (message " + i + ")")
+                    .setTimestamp(System.currentTimeMillis())
+                    .build());
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            responseObserver.onCompleted();
+        }
+    }
+
+    private static void run(String mode, int streams, ManagedChannel channel) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int baselineThreads = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+
+        // Sample the heap while the streams are open; platform thread stacks are outside of it
+        AtomicLong peakHeap = new AtomicLong();
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        GreeterServiceGrpc.GreeterServiceStub stub = GreeterServiceGrpc.newStub(channel);
+        long[] firstMessage = new long[streams];
+        long[] completed = new long[streams];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(streams);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < streams; i++) {
+            int stream = i;
+            long opened = System.nanoTime();
+            stub.sayHelloStream(HelloRequest.newBuilder().setName("user-" + i).build(), new StreamObserver<HelloResponse>() {
+                @Override
+                public void onNext(HelloResponse response) {
+                    if (firstMessage[stream] == 0) {
+                        firstMessage[stream] = System.nanoTime() - opened;
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    if (failures.getAndIncrement() == 0) {
+                        System.err.println("Stream failed: " + t);
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    completed[stream] = System.nanoTime() - opened;
+                    done.countDown();
+                }
+            });
+        }
+        boolean finished = done.await(5, TimeUnit.MINUTES);
+        long wall = System.nanoTime() - start;
+        sampler.interrupt();
+
+        System.out.printf("%s: %d concurrent sayHelloStream calls on %s%n",
+            mode, streams, mode.equals("virtual") ? "virtual threads" : "the default gRPC pool");
+        System.out.printf("  platform threads: %d before, %d peak%n", baselineThreads, threads.getPeakThreadCount());
+        System.out.printf("  peak heap used:   %d MiB%n", peakHeap.get() >> 20);
+        long peakRss = peakRssKiB();
+        if (peakRss > 0) {
+            System.out.printf("  peak RSS:         %d MiB%n", peakRss >> 10);
+        }
+        System.out.printf("  first message:    %s%n", percentiles(firstMessage));
+        System.out.printf("  completed:        %s%n", percentiles(completed));
+        System.out.printf("  wall time:        %.0f ms, %d failed%s%n",
+            wall / 1e6, failures.get(), finished ? "" : ", timed out");
+    }
+
+    /** p50, p99 and max of the recorded latencies in milliseconds, skipping unfinished streams. */
+    private static String percentiles(long[] nanos) {
+        long[] sorted = Arrays.stream(nanos).filter(n -> n > 0).sorted().toArray();
+        if (sorted.length == 0) {
+            return "no stream finished";
+        }
+        return String.format("p50 %.0f ms, p99 %.0f ms, max %.0f ms",
+            sorted[(int) (sorted.length * 0.50)] / 1e6,
+            sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e6,
+            sorted[sorted.length - 1] / 1e6);
+    }
+
+    /** Peak resident set size of this process from /proc, or -1 where it is unavailable. */
+    private static long peakRssKiB() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux
+        }
+        return -1;
+    }
+}
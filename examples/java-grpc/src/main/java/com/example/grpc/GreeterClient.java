@@ -4,10 +4,12 @@ import com.example.grpc.v1.GreeterServiceGrpc;
 import com.example.grpc.v1.HelloRequest;
 import com.example.grpc.v1.HelloResponse;
 
+import bufrnix.BufrnixGrpcMetrics;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.stub.StreamObserver;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -207,8 +209,16 @@ public class GreeterClient {
 
     /**
      * Main method demonstrating all gRPC call patterns.
+     *
+     * <p>With {@code --load} as the first argument, runs the {@link LoadGenerator} instead, with
+     * the remaining arguments.
      */
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--load")) {
+            LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         String target = "localhost:8980";
         if (args.length > 0) {
             target = args[0];
@@ -218,7 +228,9 @@ public class GreeterClient {
         logger.info("Make sure the server is running first!");
         logger.info("");
 
-        GreeterClient client = new GreeterClient("localhost", 8980);
+        // Record the client side of every call
+        BufrnixGrpcMetrics metrics = new BufrnixGrpcMetrics();
+        GreeterClient client = new GreeterClient(metrics.install(ManagedChannelBuilder.forTarget(target)).usePlaintext().build());
         try {
             // Demonstrate unary RPC
             client.greetUnary("World");
@@ -252,5 +264,11 @@ public class GreeterClient {
         logger.info("  ✓ Server streaming RPCs");
         logger.info("  ✓ Client streaming RPCs");
         logger.info("  ✓ Bidirectional streaming RPCs");
+
+        logger.info("");
+        logger.info("Client call metrics:");
+        for (BufrnixGrpcMetrics.MethodSnapshot method : metrics.snapshot()) {
+            logger.info("  " + method);
+        }
     }
 }
\ No newline at end of file
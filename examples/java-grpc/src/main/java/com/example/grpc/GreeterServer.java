@@ -4,13 +4,23 @@ import com.example.grpc.v1.GreeterServiceGrpc;
 import com.example.grpc.v1.HelloRequest;
 import com.example.grpc.v1.HelloResponse;
 
+import bufrnix.BufrnixGrpcMetrics;
+import bufrnix.BufrnixGrpcServer;
+import bufrnix.BufrnixServerStreams;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.stub.StreamObserver;
+import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 /**
  * Server implementation that uses the generated gRPC service stubs.
@@ -19,12 +29,17 @@ import java.util.logging.Logger;
 public class GreeterServer {
     private static final Logger logger = Logger.getLogger(GreeterServer.class.getName());
     
+    /** Port of the Prometheus text endpoint of the call metrics. */
+    static final int METRICS_PORT = 9464;
+
     private final int port;
     private final Server server;
+    private HttpServer metricsEndpoint;
 
     public GreeterServer(int port) {
         this.port = port;
-        this.server = ServerBuilder.forPort(port)
+        // Blocking handlers run on virtual threads on Java 21; every call is recorded in the metrics
+        this.server = BufrnixGrpcMetrics.global().install(BufrnixGrpcServer.configure(ServerBuilder.forPort(port)))
             .addService(new GreeterServiceImpl())
             .build();
     }
@@ -32,7 +47,10 @@ public class GreeterServer {
     /** Start serving requests. */
     public void start() throws IOException {
         server.start();
-        logger.info("Server started, listening on " + port);
+        logger.info("Server started, listening on " + port
+            + (BufrnixGrpcServer.virtualThreads() ? " (virtual threads)" : " (default thread pool)"));
+        metricsEndpoint = BufrnixGrpcMetrics.global().serve(new InetSocketAddress(METRICS_PORT));
+        logger.info("Call metrics at http://localhost:" + METRICS_PORT + "/metrics");
         
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.err.println("*** shutting down gRPC server since JVM is shutting down");
@@ -50,6 +68,9 @@ public class GreeterServer {
         if (server != null) {
             server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
         }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop(0);
+        }
     }
 
     /**
@@ -86,30 +107,22 @@ public class GreeterServer {
 
         @Override
         public void sayHelloStream(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
-            String baseName = request.getName();
-            if (request.hasTitle()) {
-                baseName = request.getTitle() + " " + baseName;
-            }
+            String baseName = request.hasTitle() ? request.getTitle() + " " + request.getName() : request.getName();
 
-            // Send multiple greetings (server streaming)
-            for (int i = 1; i <= 5; i++) {
-                HelloResponse response = HelloResponse.newBuilder()
-                    .setMessage("Hello " + baseName + " (message " + i + ")")
-                    .setTimestamp(System.currentTimeMillis())
-                    .build();
-
-                logger.info("Streaming response " + i + ": " + response.getMessage());
-                responseObserver.onNext(response);
-
-                // Add a small delay between messages
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-            responseObserver.onCompleted();
+            // Send multiple greetings (server streaming), each built when the client can take it
+            Iterator<HelloResponse> greetings = IntStream.rangeClosed(1, 5)
+                .mapToObj(i -> {
+                    HelloResponse response = HelloResponse.newBuilder()
+                        .setMessage("Hello " + baseName + " (message " + i + ")")
+                        .setTimestamp(System.currentTimeMillis())
+                        .build();
+                    logger.info("Streaming response " + i + ": " + response.getMessage());
+                    return response;
+                })
+                .iterator();
+
+            // 500 ms apart, on a scheduler instead of a sleeping handler thread
+            BufrnixServerStreams.stream(responseObserver, greetings, Duration.ofMillis(500));
         }
 
         @Override
@@ -201,6 +214,12 @@ public class GreeterServer {
         logger.info("");
         logger.info("Connect with GreeterClient or any gRPC client on port 8980");
         logger.info("Press Ctrl+C to stop the server");
+
+        // Under load (GreeterClient --load), logging every call would dominate the handlers
+        if (Arrays.asList(args).contains("--quiet")) {
+            logger.info("Logging calls off (--quiet)");
+            logger.setLevel(Level.WARNING);
+        }
         
         server.blockUntilShutdown();
     }
@@ -0,0 +1,299 @@
+package com.example.grpc;
+
+import com.example.grpc.v1.GreeterServiceGrpc;
+import com.example.grpc.v1.HelloRequest;
+import com.example.grpc.v1.HelloResponse;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for GreeterService, run with {@code GreeterClient --load}.
+ *
+ * <p>Calls are scheduled at a fixed rate and their latency is measured from the time they were
+ * scheduled to start, not from the time they were sent. When the server falls behind and the
+ * concurrency limit holds calls back, the time they wait counts against the server. A closed
+ * loop, which only sends once a previous call returned, would instead send fewer calls during a
+ * stall and hide it from the percentiles (coordinated omission). The service time, measured
+ * from the actual send, is reported next to it.
+ *
+ * <pre>
+ * GreeterClient --load --rpc=unary --rps=2000 --concurrency=64 --duration=30s --payload=256
+ * GreeterClient --load --rpc=bidi --messages=10 --rps=200 --target=localhost:8980
+ * </pre>
+ */
+public class LoadGenerator {
+    /** The four RPC shapes of GreeterService. */
+    enum Rpc {
+        UNARY("unary"),
+        SERVER_STREAM("server-stream"),
+        CLIENT_STREAM("client-stream"),
+        BIDI("bidi");
+
+        final String flag;
+
+        Rpc(String flag) {
+            this.flag = flag;
+        }
+
+        static Rpc parse(String flag) {
+            for (Rpc rpc : values()) {
+                if (rpc.flag.equals(flag)) {
+                    return rpc;
+                }
+            }
+            throw new IllegalArgumentException("Unknown RPC kind " + flag + ", expected unary, server-stream, client-stream or bidi");
+        }
+    }
+
+    /** Settings of one run, from {@code --name=value} arguments. */
+    static final class Options {
+        String target = "localhost:8980";
+        Rpc rpc = Rpc.UNARY;
+        double rps = 100;
+        int concurrency = 64;
+        Duration duration = Duration.ofSeconds(30);
+        Duration warmup = Duration.ofSeconds(5);
+        int payload = 16;
+        int messages = 5;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                String value = arg.substring(equals + 1);
+                switch (arg.substring(2, equals)) {
+                    case "target": options.target = value; break;
+                    case "rpc": options.rpc = Rpc.parse(value); break;
+                    case "rps": options.rps = Double.parseDouble(value); break;
+                    case "concurrency": options.concurrency = Integer.parseInt(value); break;
+                    case "duration": options.duration = parseDuration(value); break;
+                    case "warmup": options.warmup = parseDuration(value); break;
+                    case "payload": options.payload = Integer.parseInt(value); break;
+                    case "messages": options.messages = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (options.rps <= 0 || options.concurrency < 1 || options.payload < 0 || options.messages < 1) {
+                throw new IllegalArgumentException("rps, concurrency and messages must be positive, payload not negative");
+            }
+            return options;
+        }
+
+        /** Parses {@code 500ms}, {@code 30s}, {@code 2m} or plain seconds. */
+        private static Duration parseDuration(String value) {
+            if (value.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+            }
+            if (value.endsWith("s")) {
+                return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+            }
+            if (value.endsWith("m")) {
+                return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+            }
+            return Duration.ofSeconds(Long.parseLong(value));
+        }
+    }
+
+    // Calls due before the end of a run still start if they are at most this late
+    private static final long LATE_START_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final GreeterServiceGrpc.GreeterServiceStub stub;
+    private final Options options;
+    private final HelloRequest request;
+
+    private final Recorder latency = new Recorder(3);
+    private final Recorder serviceTime = new Recorder(3);
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicBoolean errorReported = new AtomicBoolean();
+    private final Semaphore inFlight;
+
+    LoadGenerator(GreeterServiceGrpc.GreeterServiceStub stub, Options options) {
+        this.stub = stub;
+        this.options = options;
+        this.request = HelloRequest.newBuilder().setName("x".repeat(options.payload)).build();
+        this.inFlight = new Semaphore(options.concurrency);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: GreeterClient --load [--target=host:port] [--rpc=unary|server-stream|client-stream|bidi]");
+            System.err.println("         [--rps=N] [--concurrency=N] [--duration=30s] [--warmup=5s] [--payload=BYTES] [--messages=N]");
+            System.exit(2);
+            return;
+        }
+
+        ManagedChannel channel = ManagedChannelBuilder.forTarget(options.target).usePlaintext().build();
+        try {
+            LoadGenerator generator = new LoadGenerator(GreeterServiceGrpc.newStub(channel), options);
+            if (!options.warmup.isZero()) {
+                System.out.printf("Warming up for %d s%n", options.warmup.toSeconds());
+                generator.drive(options.warmup);
+            }
+            System.out.printf("Running %s at %.0f calls/s for %d s%n", options.rpc.flag, options.rps, options.duration.toSeconds());
+            generator.report(generator.drive(options.duration));
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Counts of one run. */
+    private static final class Run {
+        long elapsedNanos;
+        long notStarted;
+        long completed;
+        long failed;
+        long messages;
+        Histogram latency;
+        Histogram serviceTime;
+    }
+
+    /** Starts calls at the configured rate for {@code duration}, then waits for them to finish. */
+    private Run drive(Duration duration) throws InterruptedException {
+        // Drop whatever a previous run recorded
+        latency.reset();
+        serviceTime.reset();
+        completed.set(0);
+        failed.set(0);
+        messages.set(0);
+
+        Run run = new Run();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long total = (long) (duration.toNanos() / 1e9 * options.rps);
+        for (long i = 0; i < total; i++) {
+            long scheduled = start + (long) (i * 1e9 / options.rps);
+            long now;
+            while ((now = System.nanoTime()) < scheduled) {
+                LockSupport.parkNanos(scheduled - now);
+            }
+            if (now >= end + LATE_START_GRACE_NANOS) {
+                // The concurrency limit held calls back for so long that the run is over
+                run.notStarted = total - i;
+                break;
+            }
+            inFlight.acquire();
+            start(scheduled);
+        }
+        if (!inFlight.tryAcquire(options.concurrency, 60, TimeUnit.SECONDS)) {
+            System.err.println("Calls still running 60 s after the end of the run");
+        } else {
+            inFlight.release(options.concurrency);
+        }
+
+        run.elapsedNanos = System.nanoTime() - start;
+        run.completed = completed.get();
+        run.failed = failed.get();
+        run.messages = messages.get();
+        run.latency = latency.getIntervalHistogram();
+        run.serviceTime = serviceTime.getIntervalHistogram();
+        return run;
+    }
+
+    /** Starts one call of the configured kind, scheduled for {@code scheduled}. */
+    private void start(long scheduled) {
+        long sent = System.nanoTime();
+        StreamObserver<HelloResponse> responses = new Completion(scheduled, sent);
+        switch (options.rpc) {
+            case UNARY:
+                messages.incrementAndGet();
+                stub.sayHello(request, responses);
+                break;
+            case SERVER_STREAM:
+                messages.incrementAndGet();
+                stub.sayHelloStream(request, responses);
+                break;
+            case CLIENT_STREAM:
+                send(stub.sayHelloClientStream(responses));
+                break;
+            case BIDI:
+                send(stub.sayHelloBidirectional(responses));
+                break;
+        }
+    }
+
+    private void send(StreamObserver<HelloRequest> requests) {
+        for (int i = 0; i < options.messages; i++) {
+            requests.onNext(request);
+        }
+        messages.addAndGet(options.messages);
+        requests.onCompleted();
+    }
+
+    /** Records the latency of one call when it completes and frees its concurrency slot. */
+    private final class Completion implements StreamObserver<HelloResponse> {
+        private final long scheduled;
+        private final long sent;
+        private int received;
+
+        Completion(long scheduled, long sent) {
+            this.scheduled = scheduled;
+            this.sent = sent;
+        }
+
+        @Override
+        public void onNext(HelloResponse response) {
+            received++;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            failed.incrementAndGet();
+            if (errorReported.compareAndSet(false, true)) {
+                System.err.println("Call failed: " + t);
+            }
+            inFlight.release();
+        }
+
+        @Override
+        public void onCompleted() {
+            long now = System.nanoTime();
+            latency.recordValue(TimeUnit.NANOSECONDS.toMicros(now - scheduled));
+            serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(now - sent));
+            messages.addAndGet(received);
+            completed.incrementAndGet();
+            inFlight.release();
+        }
+    }
+
+    private void report(Run run) {
+        double seconds = run.elapsedNanos / 1e9;
+        System.out.printf(Locale.ROOT, "%s, %d B payload, concurrency %d%n", options.rpc.flag, options.payload, options.concurrency);
+        System.out.printf(Locale.ROOT, "  calls:      %d completed, %d failed, %d not started%n", run.completed, run.failed, run.notStarted);
+        System.out.printf(Locale.ROOT, "  throughput: %.1f calls/s, %.1f messages/s over %.1f s with the last calls (target %.1f calls/s)%n",
+            run.completed / seconds, run.messages / seconds, seconds, options.rps);
+        System.out.println("  latency from scheduled start:  " + percentiles(run.latency));
+        System.out.println("  service time from actual send: " + percentiles(run.serviceTime));
+    }
+
+    private static String percentiles(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return "no completed calls";
+        }
+        return String.format(Locale.ROOT, "p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+            histogram.getValueAtPercentile(50) / 1e3,
+            histogram.getValueAtPercentile(99) / 1e3,
+            histogram.getValueAtPercentile(99.9) / 1e3,
+            histogram.getMaxValue() / 1e3);
+    }
+}
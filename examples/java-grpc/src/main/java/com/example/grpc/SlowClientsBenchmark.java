@@ -0,0 +1,229 @@
+package com.example.grpc;
+
+import com.example.grpc.v1.GreeterServiceGrpc;
+import com.example.grpc.v1.HelloRequest;
+import com.example.grpc.v1.HelloResponse;
+
+import bufrnix.BufrnixServerStreams;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Streams large messages to many slow clients, either from a plain {@code onNext} loop or through
+ * {@link BufrnixServerStreams}, and reports how much the server has buffered for them.
+ *
+ * <p>Each client has its own connection with a 64 KiB flow-control window and reads one 16 KiB
+ * message every 200 ms. After a few seconds, with every stream still open, the benchmark counts
+ * the messages sent but not yet read, and measures the retained heap and the RSS, which includes
+ * the direct buffers Netty queues the messages in. Run one mode per JVM:
+ *
+ * <pre>
+ * java -cp ... com.example.grpc.SlowClientsBenchmark loop 1000
+ * java -cp ... com.example.grpc.SlowClientsBenchmark flow 1000
+ * </pre>
+ *
+ * <p>The loop queues the whole stream in the outbound buffers of every call at once, while the
+ * flow-controlled stream stops at about one window per call. In flow mode the run fails if any
+ * stream has more messages buffered than fit in the client's window plus the transport's onReady
+ * threshold; the loop is reported against the same bound for contrast but never fails.
+ */
+public class SlowClientsBenchmark {
+    private static final int MESSAGES_PER_STREAM = 32;
+    private static final int MESSAGE_SIZE = 16 * 1024;
+    private static final int CLIENT_WINDOW = 64 * 1024;
+    private static final long READ_INTERVAL_MILLIS = 200;
+    private static final long MEASURE_AFTER_MILLIS = 5_000;
+    // grpc-java reports a call ready while less than 32 KiB are queued in its transport
+    private static final int ON_READY_THRESHOLD = 32 * 1024;
+    private static final int MAX_BUFFERED_PER_STREAM = (CLIENT_WINDOW + ON_READY_THRESHOLD) / MESSAGE_SIZE;
+    private static final String PADDING = "x".repeat(MESSAGE_SIZE);
+
+    // Cancelling the open streams at the end logs a stream error for each of them
+    private static final Logger nettyLogger = Logger.getLogger("io.grpc.netty.shaded.io.grpc.netty.NettyServerHandler");
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "flow";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        if (!mode.equals("loop") && !mode.equals("flow")) {
+            System.err.println("Usage: SlowClientsBenchmark [loop|flow] [clients]");
+            System.exit(2);
+        }
+
+        nettyLogger.setLevel(Level.OFF);
+
+        AtomicIntegerArray sent = new AtomicIntegerArray(clients);
+        Server server = ServerBuilder.forPort(0)
+            .addService(new LargeGreeter(mode.equals("flow"), sent))
+            .build()
+            .start();
+        ScheduledExecutorService readers = Executors.newSingleThreadScheduledExecutor();
+        List<ManagedChannel> channels = new ArrayList<>();
+        List<ClientCallStreamObserver<HelloRequest>> calls = new ArrayList<>();
+        AtomicIntegerArray received = new AtomicIntegerArray(clients);
+        boolean bounded;
+
+        try {
+            for (int i = 0; i < clients; i++) {
+                ManagedChannel channel = NettyChannelBuilder.forAddress("localhost", server.getPort())
+                    .usePlaintext()
+                    .flowControlWindow(CLIENT_WINDOW)
+                    .directExecutor()
+                    .build();
+                channels.add(channel);
+                GreeterServiceGrpc.newStub(channel).sayHelloStream(
+                    HelloRequest.newBuilder().setName("client-" + i).build(),
+                    new SlowReader(readers, received, i, calls));
+            }
+
+            Thread.sleep(MEASURE_AFTER_MILLIS);
+            System.gc();
+            long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            long totalSent = 0;
+            long totalReceived = 0;
+            int maxBuffered = 0;
+            for (int i = 0; i < clients; i++) {
+                totalSent += sent.get(i);
+                totalReceived += received.get(i);
+                maxBuffered = Math.max(maxBuffered, sent.get(i) - received.get(i));
+            }
+            long buffered = totalSent - totalReceived;
+            bounded = maxBuffered <= MAX_BUFFERED_PER_STREAM;
+
+            System.out.printf("%s: %d slow clients, %d x %d KiB messages per stream%n",
+                mode, clients, MESSAGES_PER_STREAM, MESSAGE_SIZE >> 10);
+            System.out.printf("  sent %d, read %d, buffered %d messages (%.1f per stream, %d MiB)%n",
+                totalSent, totalReceived, buffered, (double) buffered / clients,
+                buffered * MESSAGE_SIZE >> 20);
+            System.out.printf("  most buffered:    %d messages in one stream, bound %d%s%n",
+                maxBuffered, MAX_BUFFERED_PER_STREAM, bounded ? "" : " exceeded");
+            System.out.printf("  heap after GC:    %d MiB%n", heap >> 20);
+            long rss = rssKiB();
+            if (rss > 0) {
+                System.out.printf("  RSS:              %d MiB%n", rss >> 10);
+            }
+        } finally {
+            for (ClientCallStreamObserver<HelloRequest> call : calls) {
+                call.cancel("benchmark done", null);
+            }
+            readers.shutdownNow();
+            for (ManagedChannel channel : channels) {
+                channel.shutdownNow();
+            }
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        if (mode.equals("flow") && !bounded) {
+            System.err.println("BufrnixServerStreams buffered more messages than the flow-control window allows");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Streams {@link #MESSAGES_PER_STREAM} large greetings, counting the messages handed to gRPC per
+     * client; the client index is the number in the request name.
+     */
+    static class LargeGreeter extends GreeterServiceGrpc.GreeterServiceImplBase {
+        private final boolean flowControl;
+        private final AtomicIntegerArray sent;
+
+        LargeGreeter(boolean flowControl, AtomicIntegerArray sent) {
+            this.flowControl = flowControl;
+            this.sent = sent;
+        }
+
+        @Override
+        public void sayHelloStream(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+            int client = Integer.parseInt(request.getName().substring("client-".length()));
+            Iterator<HelloResponse> greetings = IntStream.rangeClosed(1, MESSAGES_PER_STREAM)
+                .mapToObj(i -> {
+                    sent.incrementAndGet(client);
+                    return HelloResponse.newBuilder()
+                        .setMessage("Hello " + request.getName() + " (message " + i + ") " + PADDING)
+                        .setTimestamp(System.currentTimeMillis())
+                        .build();
+                })
+                .iterator();
+
+            if (flowControl) {
+                BufrnixServerStreams.stream(responseObserver, greetings);
+            } else {
+                while (greetings.hasNext()) {
+                    responseObserver.onNext(greetings.next());
+                }
+                responseObserver.onCompleted();
+            }
+        }
+    }
+
+    /** Reads one message every {@link #READ_INTERVAL_MILLIS} through manual inbound flow control. */
+    static class SlowReader implements ClientResponseObserver<HelloRequest, HelloResponse> {
+        private final ScheduledExecutorService readers;
+        private final AtomicIntegerArray received;
+        private final int client;
+        private final List<ClientCallStreamObserver<HelloRequest>> calls;
+        private ClientCallStreamObserver<HelloRequest> call;
+
+        SlowReader(ScheduledExecutorService readers, AtomicIntegerArray received, int client,
+                List<ClientCallStreamObserver<HelloRequest>> calls) {
+            this.readers = readers;
+            this.received = received;
+            this.client = client;
+            this.calls = calls;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<HelloRequest> requestStream) {
+            call = requestStream;
+            calls.add(requestStream);
+            requestStream.disableAutoRequestWithInitial(1);
+        }
+
+        @Override
+        public void onNext(HelloResponse response) {
+            received.incrementAndGet(client);
+            readers.schedule(() -> call.request(1), READ_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+
+    /** Current resident set size of this process from /proc, or -1 where it is unavailable. */
+    private static long rssKiB() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux
+        }
+        return -1;
+    }
+}
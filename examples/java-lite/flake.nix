@@ -0,0 +1,111 @@
+{
+  description = "Java protobuf-javalite example with bufrnix";
+
+  inputs = {
+    nixpkgs.url = "github:nixos/nixpkgs/nixos-unstable";
+    flake-utils.url = "github:numtide/flake-utils";
+    # bufrnix.url = "github:conneroisu/bufrnix";
+    bufrnix.url = "path:../..";
+    bufrnix.inputs.nixpkgs.follows = "nixpkgs";
+  };
+
+  outputs = {
+    self,
+    nixpkgs,
+    flake-utils,
+    bufrnix,
+  }:
+    flake-utils.lib.eachDefaultSystem (system: let
+      pkgs = nixpkgs.legacyPackages.${system};
+
+      # Runtimes the comparison compiles the example messages against
+      protobufJava = pkgs.fetchurl {
+        url = "https://repo1.maven.org/maven2/com/google/protobuf/protobuf-java/4.31.1/protobuf-java-4.31.1.jar";
+        hash = "sha256-1g3+fGig04okjMqWkk8oncfhlmqIfufK45dwGvCFda4=";
+      };
+      protobufJavalite = pkgs.fetchurl {
+        url = "https://repo1.maven.org/maven2/com/google/protobuf/protobuf-javalite/4.31.1/protobuf-javalite-4.31.1.jar";
+        hash = "sha256-VoGqeCkmKycsveKk/Kw4BwsGPvfZq74aDREtDfgZPLM=";
+      };
+
+      compare = pkgs.writeShellApplication {
+        name = "compare-runtimes";
+        runtimeInputs = [
+          pkgs.jdk17
+          pkgs.protobuf
+          pkgs.coreutils
+          pkgs.findutils
+        ];
+        text = ''
+          # Compile the example messages for the full and the lite runtime and
+          # report their size, startup and heap footprint side by side
+          people=''${1:-10000}
+          work=$(mktemp -d)
+          trap 'rm -rf "$work"' EXIT
+
+          for mode in full lite; do
+            if [ "$mode" = lite ]; then
+              runtime=${protobufJavalite}
+              out="lite:$work/$mode/gen"
+            else
+              runtime=${protobufJava}
+              out="$work/$mode/gen"
+            fi
+            mkdir -p "$work/$mode/gen" "$work/$mode/classes"
+            protoc -I ${./proto} --java_out="$out" example/v1/person.proto
+            find "$work/$mode/gen" ${./src/main/java} -name '*.java' > "$work/$mode/sources"
+            javac --release 17 -nowarn -classpath "$runtime" -d "$work/$mode/classes" @"$work/$mode/sources"
+            (cd "$work/$mode/classes" && jar --create --file "$work/$mode/messages.jar" com/example/protos)
+
+            echo "== $mode =="
+            echo "messages_jar_bytes=$(stat -c %s "$work/$mode/messages.jar")"
+            echo "runtime_jar_bytes=$(stat -c %s "$runtime")"
+            java -classpath "$work/$mode/classes:$runtime" com.example.Footprint "$people"
+          done
+        '';
+      };
+    in {
+      devShells.default = pkgs.mkShell {
+        packages = [
+          pkgs.gradle
+          pkgs.maven
+          pkgs.jdk17
+          pkgs.protobuf
+        ];
+        shellHook = ''
+          echo "Java Lite Protobuf Example"
+          echo "Available commands:"
+          echo "  nix build - Generate Java lite protobuf code"
+          echo "  nix run .#compare - Compare the full and lite runtimes"
+          echo "  gradle build - Build with Gradle (in gen/java/)"
+        '';
+      };
+
+      packages = {
+        default = bufrnix.lib.mkBufrnixPackage {
+          inherit pkgs;
+          config = {
+            root = ./.;
+            protoc = {
+              sourceDirectories = ["./proto"];
+              includeDirectories = ["./proto"];
+              files = ["./proto/example/v1/person.proto"];
+            };
+            languages.java = {
+              enable = true;
+              package = pkgs.protobuf;
+              jdk = pkgs.jdk17;
+              outputPath = "gen/java";
+              lite = true;
+            };
+          };
+        };
+        inherit compare;
+      };
+
+      apps.compare = {
+        type = "app";
+        program = "${compare}/bin/compare-runtimes";
+      };
+    });
+}
@@ -0,0 +1,61 @@
+package com.example;
+
+import com.example.protos.v1.AddressBook;
+import com.example.protos.v1.Person;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the footprint of the generated messages on the runtime they were compiled for.
+ *
+ * <p>Builds an address book, serializes and parses it, and reports the JVM uptime at the first
+ * completed round trip, the number of loaded classes, the used heap after that round trip and
+ * the heap retained by the parsed address book. Only API shared by protobuf-java and
+ * protobuf-javalite is used, so the same source runs against both runtimes.
+ */
+public class Footprint {
+    public static void main(String[] args) throws Exception {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+        // First round trip, dominated by class loading and runtime initialization
+        byte[] first = addressBook(1).toByteArray();
+        AddressBook.parseFrom(first);
+        long startupMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        int loadedClasses = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        long baselineHeap = usedHeap();
+
+        byte[] serialized = addressBook(people).toByteArray();
+        long heapBefore = usedHeap();
+        AddressBook parsed = AddressBook.parseFrom(serialized);
+        long retained = usedHeap() - heapBefore;
+
+        System.out.println("startup_ms=" + startupMs);
+        System.out.println("loaded_classes=" + loadedClasses);
+        System.out.println("baseline_heap_bytes=" + baselineHeap);
+        System.out.println("serialized_bytes=" + serialized.length);
+        System.out.println("retained_heap_bytes=" + retained);
+        System.out.println("people=" + parsed.getPeopleCount());
+    }
+
+    private static AddressBook addressBook(int people) {
+        AddressBook.Builder book = AddressBook.newBuilder();
+        for (int i = 0; i < people; i++) {
+            book.addPeople(Person.newBuilder()
+                .setId(i)
+                .setName("Person " + i)
+                .setEmail("person" + i + "@example.com")
+                .addPhones(Person.PhoneNumber.newBuilder()
+                    .setNumber("555-" + i)
+                    .setType(Person.PhoneType.HOME)));
+        }
+        return book.build();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -32,8 +32,8 @@
           protoc = {
             sourceDirectories = ["./proto"];
             includeDirectories = ["./proto"];
+            # buf/validate/validate.proto is only imported: its classes ship with protovalidate-java
             files = [
-              "./proto/buf/validate/validate.proto"
               "./proto/example/v1/user.proto"
             ];
           };
@@ -42,7 +42,17 @@
               enable = true;
               outputPath = "gen/java";
               options = [];
-              protovalidate.enable = true;
+              protovalidate = {
+                enable = true;
+                # Also compile the rules into UserValidator, UserProfileValidator, ...
+                compile = true;
+                # Generate bufrnix.BufrnixValidation to compile the runtime rules at startup
+                warmup = true;
+                # Generate bufrnix.BufrnixBatchValidation for parallel batch validation
+                batch = true;
+              };
+              # JMH project comparing the compiled validators with the runtime Validator
+              benchmarks.enable = true;
             };
           };
         };
@@ -67,6 +77,7 @@
           echo "  nix build - Generate Java protobuf code with protovalidate"
           echo "  cd gen/java && gradle build - Build with Gradle"
           echo "  cd gen/java && gradle run - Run the validation example"
+          echo "  cd gen/java/benchmarks && gradle jmh - Compare compiled and runtime validation"
         '';
       };
     });
@@ -1,20 +1,29 @@
 package com.example.validation;
 
+import build.buf.protovalidate.ValidationResult;
 import build.buf.protovalidate.Validator;
-import build.buf.protovalidate.exceptions.ValidationException;
+import bufrnix.BufrnixBatchValidation;
+import bufrnix.BufrnixValidation;
+import bufrnix.protovalidate.Violation;
 
 import com.example.protos.v1.User;
 import com.example.protos.v1.UserProfile;
+import com.example.protos.v1.UserValidator;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class UserValidationExample {
     public static void main(String[] args) {
         try {
-            // Create a validator instance
-            Validator validator = new Validator();
+            // Runtime validator: reads the rules from the descriptors and evaluates CEL.
+            // UserValidator was compiled from the same rules by protoc-gen-validate-java.
+            Validator validator = BufrnixValidation.validator();
             
             System.out.println("=== Java Protovalidate Example ===\n");
+            // Compile the rules of every message now instead of on each type's first use
+            System.out.println("Warmup:\n" + BufrnixValidation.format(BufrnixValidation.warmUp()) + "\n");
             
             // Test 1: Valid user
             System.out.println("Test 1: Valid User");
@@ -80,6 +89,26 @@ public class UserValidationExample {
                 .build();
             testValidation(validator, validUser2, "User with bio in profile");
             
+            // Batch validation: every 100th user has an empty name
+            System.out.println("\nBatch Validation - 10000 Users");
+            List<User> users = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                users.add(User.newBuilder(validUser)
+                    .setId(i + 1)
+                    .setName(i % 100 == 0 ? "" : "User " + i)
+                    .build());
+            }
+            BufrnixBatchValidation batch = BufrnixBatchValidation.newBuilder().build();
+            BufrnixBatchValidation.Result<?> runtimeResult = batch.validate(validator, users);
+            BufrnixBatchValidation.Result<Violation> compiledResult = batch.validate(users, UserValidator::validate);
+            System.out.println("   Runtime Validator:       " + runtimeResult);
+            System.out.println("   Compiled UserValidator:  " + compiledResult);
+            System.out.println("   Invalid indexes: " + compiledResult.violations().keySet().stream().limit(5).toList() + " ...");
+            
+            // Fail-fast: stop once 10 violations were found
+            BufrnixBatchValidation failFast = BufrnixBatchValidation.newBuilder().failFast(10).build();
+            System.out.println("   Fail-fast after 10:      " + failFast.validate(users, UserValidator::validate));
+            
         } catch (Exception e) {
             System.err.println("Error initializing validator: " + e.getMessage());
             e.printStackTrace();
@@ -107,16 +136,18 @@ public class UserValidationExample {
             .build();
     }
     
-    private static void testValidation(Validator validator, User user, String description) {
-        try {
-            validator.validate(user);
+    private static void testValidation(Validator validator, User user, String description) throws Exception {
+        ValidationResult result = validator.validate(user);
+        List<Violation> compiled = UserValidator.validate(user);
+        if (result.isSuccess()) {
             System.out.println("✅ " + description + " - VALID");
-        } catch (ValidationException e) {
+        } else {
             System.out.println("❌ " + description + " - INVALID");
             System.out.println("   Validation errors:");
-            e.getViolations().forEach(violation -> 
-                System.out.println("   - " + violation.getFieldPath() + ": " + violation.getMessage())
+            result.getViolations().forEach(violation ->
+                System.out.println("   - " + violation.toProto().getRuleId() + ": " + violation.toProto().getMessage())
             );
         }
+        System.out.println("   Compiled UserValidator: " + (compiled.isEmpty() ? "VALID" : compiled));
     }
-}
\ No newline at end of file
+}
@@ -60,6 +60,47 @@
       };
     in {
       # formatting = treefmtEval.${system}.config.build.check inputs.self;
+
+      # Compile the generated Java jar with every feature that writes sources next to the
+      # messages: gRPC helpers, compiled validators, protovalidate helpers and benchmarks
+      java-jar =
+        (import ./src/lib/mkBufrnixDerivations.nix {
+          inherit pkgs;
+          src = ./examples/java-protovalidate;
+          config = {
+            protoc = {
+              sourceDirectories = ["./proto"];
+              includeDirectories = ["./proto"];
+              files = ["./proto/example/v1/user.proto"];
+            };
+            languages.java = {
+              enable = true;
+              outputPath = "gen/java";
+              grpc = {
+                enable = true;
+                virtualThreads = true;
+                flowControl = true;
+                metrics = true;
+                zeroCopy = true;
+              };
+              protovalidate = {
+                enable = true;
+                compile = true;
+                warmup = true;
+                batch = true;
+              };
+              benchmarks.enable = true;
+              nativeImage.enable = true;
+              jar.enable = true;
+            };
+          };
+        }).jars.java;
+
+      # Compile the per-package Java subprojects, helper classes included, in dependency order
+      java-subprojects = import ./src/languages/java/test/subprojects.nix {inherit pkgs;};
+
+      # Compare the validators of protoc-gen-validate-java with protovalidate-java
+      protoc-gen-validate-java = (pkgs.callPackage ./src/packages/protoc-gen-validate-java {}).tests.differential;
     });
 
     devShells = eachSystem (
@@ -130,6 +171,18 @@
         import "${inputs.self}/src/lib/mkBufrnix.nix" {
           inherit pkgs self config;
         };
+
+      # Generate every language in its own derivation instead of the working tree
+      mkBufrnixDerivations = {
+        pkgs,
+        self ? null,
+        config ? {},
+        src ? null,
+        ...
+      }:
+        import "${inputs.self}/src/lib/mkBufrnixDerivations.nix" {
+          inherit pkgs self config src;
+        };
     };
   };
 }
@@ -0,0 +1,75 @@
+/* AppCDS archive for a jar compiled from generated Java code.
+
+   Runs a training workload (appcds/Training.java) that initializes every
+   class in the jar and touches every descriptor and message type, records
+   the loaded classes and dumps them into a static CDS archive. Services
+   that put the jar's classpath first on their own classpath and run the
+   same JDK map the archived classes instead of loading and verifying them:
+
+     java -XX:SharedArchiveFile=<archive> -cp <jar.classpath>:<app> ...
+
+   The archive pins the paths, sizes and modification times of the jars it
+   was dumped from, which store paths keep stable.
+
+   Outputs:
+   - $out/share/java/<name>-<version>.jsa: The AppCDS archive
+   - $out/share/java/<name>-<version>.classlist: Classes loaded by the training run
+   - passthru.jvmFlags: JVM flags selecting the archive
+
+   Type: appCds :: { pkgs, lib, cfg, jar } -> Derivation
+*/
+{
+  pkgs,
+  lib,
+  cfg,
+  jar,
+  ...
+}:
+with lib; let
+  jarName = "${cfg.jar.name}-${cfg.jar.version}";
+  classpath = concatStringsSep ":" jar.classpath;
+in
+  pkgs.stdenvNoCC.mkDerivation (finalAttrs: {
+    pname = "${cfg.jar.name}-appcds";
+    inherit (cfg.jar) version;
+    dontUnpack = true;
+
+    nativeBuildInputs = [cfg.jdk];
+
+    buildPhase = ''
+      runHook preBuild
+
+      javac -nowarn -classpath ${escapeShellArg classpath} -d training ${./appcds/Training.java}
+
+      # The training class is only on the classpath of the recording run, so
+      # the archive's classpath stays a prefix of the services' classpath
+      java -Xshare:off -XX:DumpLoadedClassList="${jarName}.classlist" \
+        -classpath ${escapeShellArg classpath}:training \
+        bufrnix.appcds.Training ${jar}/share/java/${jarName}.jar
+
+      java -Xshare:dump -Xlog:cds=error \
+        -XX:SharedClassListFile="${jarName}.classlist" \
+        -XX:SharedArchiveFile="${jarName}.jsa" \
+        -classpath ${escapeShellArg classpath}
+
+      runHook postBuild
+    '';
+
+    installPhase = ''
+      runHook preInstall
+
+      install -Dm644 "${jarName}.jsa" "$out/share/java/${jarName}.jsa"
+      install -Dm644 "${jarName}.classlist" "$out/share/java/${jarName}.classlist"
+
+      runHook postInstall
+    '';
+
+    passthru = {
+      inherit (jar) classpath;
+      jvmFlags = ["-XX:SharedArchiveFile=${finalAttrs.finalPackage}/share/java/${jarName}.jsa"];
+    };
+
+    meta = {
+      description = "AppCDS archive of the Java classes compiled from protobuf code generated by bufrnix";
+    };
+  })
@@ -0,0 +1,87 @@
+package bufrnix.appcds;
+
+import com.google.protobuf.MessageLite;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Training workload for the AppCDS archive of a generated jar.
+ *
+ * <p>Loads and initializes every class in the jar, then touches every file descriptor, service
+ * descriptor and message type the way a service does on its first requests: the default
+ * instance is printed, rebuilt, serialized and parsed back. The JVM records every class this
+ * loads into the class list the archive is dumped from. Only {@link MessageLite} and reflection
+ * are used, so the same workload runs against protobuf-java and protobuf-javalite.
+ */
+public final class Training {
+  private Training() {}
+
+  public static void main(String[] args) throws Exception {
+    List<Class<?>> classes = new ArrayList<>();
+    for (String jar : args) {
+      classes.addAll(load(jar));
+    }
+
+    int messages = 0;
+    for (Class<?> type : classes) {
+      invokeStatic(type, "getDescriptor");
+      invokeStatic(type, "getServiceDescriptor");
+      if (MessageLite.class.isAssignableFrom(type) && !Modifier.isAbstract(type.getModifiers())) {
+        Object instance = invokeStatic(type, "getDefaultInstance");
+        if (instance instanceof MessageLite) {
+          exercise((MessageLite) instance);
+          messages++;
+        }
+      }
+    }
+    System.out.println("Trained on " + classes.size() + " classes and " + messages + " messages");
+  }
+
+  private static List<Class<?>> load(String jar) throws IOException {
+    List<Class<?>> classes = new ArrayList<>();
+    try (JarFile file = new JarFile(jar)) {
+      Enumeration<JarEntry> entries = file.entries();
+      while (entries.hasMoreElements()) {
+        String name = entries.nextElement().getName();
+        if (!name.endsWith(".class") || name.equals("module-info.class")) {
+          continue;
+        }
+        String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+        try {
+          classes.add(Class.forName(className, true, Training.class.getClassLoader()));
+        } catch (ClassNotFoundException | LinkageError e) {
+          System.err.println("Skipping " + className + ": " + e);
+        }
+      }
+    }
+    return classes;
+  }
+
+  private static void exercise(MessageLite message) throws Exception {
+    message.toString();
+    MessageLite copy = message.toBuilder().build();
+    byte[] bytes = copy.toByteArray();
+    message.getParserForType().parseFrom(bytes);
+    copy.hashCode();
+    copy.equals(message);
+  }
+
+  private static Object invokeStatic(Class<?> type, String name) throws Exception {
+    Method method;
+    try {
+      method = type.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+    if (!Modifier.isStatic(method.getModifiers()) || method.getDeclaringClass() != type) {
+      return null;
+    }
+    return method.invoke(null);
+  }
+}
@@ -0,0 +1,155 @@
+/* JMH benchmark project for generated Java messages.
+
+   Writes a standalone Gradle project to `<outputPath>/benchmarks` that
+   compiles the generated messages and runs codec benchmarks (serialize,
+   parse, serialized size, hashCode/equals, JSON) for every one of them.
+   The message list is taken from the `class_scope` insertion points protoc
+   emits into each message class; payloads are synthesized from the
+   descriptors at benchmark setup.
+
+   With protovalidate.compile, ValidationBenchmark also compares the
+   compiled <Message>Validator classes against the protovalidate-java
+   runtime for every message that has one.
+
+   With grpc.zeroCopy, MarshallerBenchmark compares BufrnixZeroCopyMarshaller
+   against grpc-java's ProtoUtils.marshaller, parsing from transport-sized
+   direct buffers with and without aliasing and serializing into an
+   outbound buffer.
+
+   Run with `gradle jmh` in the benchmarks directory; results are written
+   to build/results/jmh/results.json.
+
+   Type: benchmarks :: { pkgs, lib, cfg } -> AttrSet
+*/
+{
+  pkgs,
+  lib,
+  cfg,
+  ...
+}:
+with lib; let
+  outputPath = cfg.outputPath;
+  benchmarksDir = "${outputPath}/benchmarks";
+  sourceDir = "${benchmarksDir}/src/jmh/java/bufrnix/benchmarks";
+
+  # The generated messages import buf.validate, which ships with protovalidate-java
+  protovalidateDependency =
+    optionalString (cfg.protovalidate or false) ''
+      implementation 'build.buf:protovalidate:0.13.0'
+    ''
+    # The compiled validators match patterns with re2j
+    + optionalString (cfg.validators or false) ''
+      implementation 'com.google.re2j:re2j:1.8'
+    '';
+
+  # The gRPC helpers next to the messages need the gRPC runtime; the marshaller benchmark
+  # builds transport buffers from grpc-core
+  grpcDependencies =
+    optionalString (cfg.grpc or false) ''
+      implementation 'io.grpc:grpc-protobuf:1.60.0'
+      implementation 'io.grpc:grpc-stub:1.60.0'
+    ''
+    + optionalString (cfg.zeroCopy or false) ''
+      jmh 'io.grpc:grpc-core:1.60.0'
+    '';
+in
+  if cfg.enable && (cfg.lite or false)
+  then {
+    runtimeInputs = [];
+    generateHooks = ''
+      echo "Skipping JMH benchmarks: lite messages have no descriptors to synthesize payloads from"
+    '';
+  }
+  else if cfg.enable
+  then {
+    runtimeInputs = [
+      pkgs.gnugrep
+      pkgs.gnused
+    ];
+
+    generateHooks = ''
+      # Collect every generated message for the JMH benchmarks
+      local benchmark_messages
+      benchmark_messages=$({ grep -rhoE --include='*.java' --exclude-dir=benchmarks 'class_scope:[A-Za-z0-9_.]+' "${outputPath}" || true; } |
+        sed 's/^class_scope://' | sort -u | sed 's/.*/"&"/' | paste -sd, -)
+
+      if [ -z "$benchmark_messages" ]; then
+        echo "No generated Java messages found, skipping JMH benchmarks"
+      else
+        echo "Writing JMH benchmarks for $(echo "$benchmark_messages" | tr ',' '\n' | wc -l) messages to ${benchmarksDir}"
+        mkdir -p "${sourceDir}"
+        bufrnix_write_generated "${sourceDir}/MessageCatalog.java" < ${./benchmarks/MessageCatalog.java}
+        bufrnix_write_generated "${sourceDir}/Payloads.java" < ${./benchmarks/Payloads.java}
+        sed "s|\"@messages@\"|$benchmark_messages|" ${./benchmarks/CodecBenchmark.java} | bufrnix_write_generated "${sourceDir}/CodecBenchmark.java"
+      ${
+        if cfg.validators or false
+        then ''
+          # Compare the validators of protoc-gen-validate-java with the protovalidate runtime
+          local validated_messages
+          validated_messages=$({ grep -rhoE --include='*Validator.java' --exclude-dir=benchmarks '\{@code [A-Za-z0-9_.]+\}, without reflection' "${outputPath}" || true; } |
+            sed 's/^{@code \([^}]*\)}.*/"\1"/' | sort -u | paste -sd, -)
+          if [ -n "$validated_messages" ]; then
+            sed "s|\"@validated@\"|$validated_messages|" ${./benchmarks/ValidationBenchmark.java} | bufrnix_write_generated "${sourceDir}/ValidationBenchmark.java"
+          else
+            rm -f "${sourceDir}/ValidationBenchmark.java"
+          fi
+        ''
+        else ''
+          rm -f "${sourceDir}/ValidationBenchmark.java"
+        ''
+      }
+      ${
+        if cfg.zeroCopy or false
+        then ''
+          # Compare BufrnixZeroCopyMarshaller with grpc-java's ProtoUtils.marshaller
+          sed -e "s|\"@messages@\"|$benchmark_messages|" -e 's/^import bufrnix\.BufrnixZeroCopyMarshaller;$/import ${cfg.helperPackage}.BufrnixZeroCopyMarshaller;/' \
+            ${./benchmarks/MarshallerBenchmark.java} | bufrnix_write_generated "${sourceDir}/MarshallerBenchmark.java"
+        ''
+        else ''
+          rm -f "${sourceDir}/MarshallerBenchmark.java"
+        ''
+      }
+
+        bufrnix_write_generated "${benchmarksDir}/settings.gradle" <<'GRADLE_EOF'
+      rootProject.name = 'generated-protos-benchmarks'
+      GRADLE_EOF
+
+        bufrnix_write_generated "${benchmarksDir}/build.gradle" <<'GRADLE_EOF'
+      plugins {
+          id 'java'
+          id 'me.champeau.jmh' version '0.7.2'
+      }
+
+      repositories {
+          mavenCentral()
+      }
+
+      // Benchmark the messages straight from the generated tree
+      sourceSets.main.java {
+          srcDir '..'
+          exclude 'benchmarks/**'
+          exclude '**/*Grpc.java'
+      }
+
+      dependencies {
+          implementation 'com.google.protobuf:protobuf-java:4.31.1'
+          jmh 'com.google.protobuf:protobuf-java-util:4.31.1'
+      ${protovalidateDependency}${grpcDependencies}}
+
+      java {
+          sourceCompatibility = JavaVersion.VERSION_17
+          targetCompatibility = JavaVersion.VERSION_17
+      }
+
+      jmh {
+          jmhVersion = '1.37'
+          resultFormat = 'JSON'
+      }
+      GRADLE_EOF
+      fi
+    '';
+  }
+  else {
+    runtimeInputs = [];
+    generateHooks = "";
+  }
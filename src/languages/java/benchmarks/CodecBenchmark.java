@@ -0,0 +1,133 @@
+package bufrnix.benchmarks;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Codec benchmarks for every generated message.
+ *
+ * <p>The {@code message} parameter lists the full names of all messages found in the generated
+ * code and is filled in by bufrnix. Payloads are synthesized from the descriptors by {@link
+ * Payloads}.
+ *
+ * <p>Generated messages memoize their serialized size and hash code, so {@code serializedSize}
+ * and {@code hashCodeOfCopy} measure a fresh shallow copy (nested messages keep their memoized
+ * values); subtract {@code rebuild} to get the cost of the computation alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+  @Param({"@messages@"})
+  public String message;
+
+  private Message payload;
+  private Message equalCopy;
+  private Parser<? extends Message> parser;
+  private byte[] encoded;
+  private ByteBuffer encodedBuffer;
+  private byte[] output;
+  private String json;
+  private JsonFormat.Printer jsonPrinter;
+  private JsonFormat.Parser jsonParser;
+
+  @Setup
+  public void setup() throws IOException {
+    payload = Payloads.populate(MessageCatalog.defaultInstance(message));
+    equalCopy = payload.toBuilder().build();
+    parser = payload.getParserForType();
+    encoded = payload.toByteArray();
+    encodedBuffer = ByteBuffer.wrap(encoded).asReadOnlyBuffer();
+    output = new byte[encoded.length];
+    jsonPrinter = JsonFormat.printer();
+    jsonParser = JsonFormat.parser();
+    json = jsonPrinter.print(payload);
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return payload.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] writeTo() throws IOException {
+    CodedOutputStream stream = CodedOutputStream.newInstance(output);
+    payload.writeTo(stream);
+    return output;
+  }
+
+  @Benchmark
+  public Message parseFromBytes() throws InvalidProtocolBufferException {
+    return parser.parseFrom(encoded);
+  }
+
+  @Benchmark
+  public Message parseFromByteBuffer() throws InvalidProtocolBufferException {
+    return parser.parseFrom(encodedBuffer.duplicate());
+  }
+
+  @Benchmark
+  public Message parseFromCodedInputStream() throws InvalidProtocolBufferException {
+    return parser.parseFrom(CodedInputStream.newInstance(encoded));
+  }
+
+  @Benchmark
+  public Message rebuild() {
+    return payload.toBuilder().build();
+  }
+
+  @Benchmark
+  public int serializedSize() {
+    return payload.toBuilder().build().getSerializedSize();
+  }
+
+  @Benchmark
+  public int hashCodeOfCopy() {
+    return payload.toBuilder().build().hashCode();
+  }
+
+  @Benchmark
+  public boolean equalsCopy() {
+    return payload.equals(equalCopy);
+  }
+
+  @Benchmark
+  public Message jsonRoundTrip() throws InvalidProtocolBufferException {
+    Message.Builder builder = payload.newBuilderForType();
+    jsonParser.merge(jsonPrinter.print(payload), builder);
+    return builder.build();
+  }
+
+  @Benchmark
+  public String jsonPrint() throws InvalidProtocolBufferException {
+    return jsonPrinter.print(payload);
+  }
+
+  @Benchmark
+  public Message jsonParse() throws InvalidProtocolBufferException {
+    Message.Builder builder = payload.newBuilderForType();
+    jsonParser.merge(json, builder);
+    return builder.build();
+  }
+}
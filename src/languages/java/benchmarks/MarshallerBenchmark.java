@@ -0,0 +1,182 @@
+package bufrnix.benchmarks;
+
+import bufrnix.BufrnixZeroCopyMarshaller;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import io.grpc.Context;
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor;
+import io.grpc.internal.CompositeReadableBuffer;
+import io.grpc.internal.ReadableBuffers;
+import io.grpc.protobuf.ProtoUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The zero-copy marshaller of {@code grpc.zeroCopy} against grpc-java's {@code
+ * ProtoUtils.marshaller}.
+ *
+ * <p>The {@code message} parameter lists every generated message and is filled in by bufrnix. The
+ * synthesized payload is grown to about {@code payloadBytes} through its first top-level bytes
+ * field, or its first string field if it has none; messages with neither stay small.
+ *
+ * <p>The parse benchmarks read the encoded message from 16 KiB direct buffers, the size of the
+ * HTTP/2 frames the Netty transport receives, through the stream grpc-java hands to a marshaller.
+ * {@code parseAliased} parses inside an aliasing scope, as a server call with the aliasing
+ * interceptor does. The serialize benchmarks drain the message into a stream that copies into a
+ * direct buffer, the way the transport writes into its outbound buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallerBenchmark {
+  private static final int FRAME_SIZE = 16 * 1024;
+
+  @Param({"@messages@"})
+  public String message;
+
+  @Param({"16384", "4194304"})
+  public int payloadBytes;
+
+  private Message payload;
+  private MethodDescriptor.Marshaller<Message> protoUtils;
+  private BufrnixZeroCopyMarshaller<Message> zeroCopy;
+  private List<ByteBuffer> frames;
+  private Context call;
+  private Outbound outbound;
+
+  @Setup
+  public void setup() {
+    payload = grow(Payloads.populate(MessageCatalog.defaultInstance(message)), payloadBytes);
+    protoUtils = ProtoUtils.marshaller(payload.getDefaultInstanceForType());
+    zeroCopy = BufrnixZeroCopyMarshaller.marshaller(payload.getDefaultInstanceForType());
+
+    byte[] encoded = payload.toByteArray();
+    frames = new ArrayList<>();
+    for (int offset = 0; offset < encoded.length; offset += FRAME_SIZE) {
+      int length = Math.min(FRAME_SIZE, encoded.length - offset);
+      frames.add(ByteBuffer.allocateDirect(length).put(encoded, offset, length).flip());
+    }
+    call = Context.ROOT.fork();
+    outbound = new Outbound(encoded.length);
+
+    if (!zeroCopy.parse(received()).equals(payload) || !protoUtils.parse(received()).equals(payload)) {
+      throw new IllegalStateException(message + " does not survive a round trip through the marshallers");
+    }
+  }
+
+  @Benchmark
+  public Message parseProtoUtils() {
+    return protoUtils.parse(received());
+  }
+
+  @Benchmark
+  public Message parseZeroCopy() {
+    return zeroCopy.parse(received());
+  }
+
+  @Benchmark
+  public Message parseAliased() {
+    InputStream stream = received();
+    try (BufrnixZeroCopyMarshaller.Aliasing aliasing = BufrnixZeroCopyMarshaller.Aliasing.open(call)) {
+      Context previous = call.attach();
+      try {
+        return zeroCopy.parse(stream);
+      } finally {
+        call.detach(previous);
+      }
+    }
+  }
+
+  @Benchmark
+  public int serializeProtoUtils() throws IOException {
+    return outbound.drain(protoUtils.stream(payload));
+  }
+
+  @Benchmark
+  public int serializeZeroCopy() throws IOException {
+    return outbound.drain(zeroCopy.stream(payload));
+  }
+
+  /** The encoded payload as the transport hands it to a marshaller. */
+  private InputStream received() {
+    CompositeReadableBuffer buffer = new CompositeReadableBuffer();
+    for (ByteBuffer frame : frames) {
+      buffer.addBuffer(ReadableBuffers.wrap(frame.duplicate()));
+    }
+    return ReadableBuffers.openStream(buffer, true);
+  }
+
+  /** Sets the first top-level bytes field, or else string field, to {@code size} bytes. */
+  private static Message grow(Message message, int size) {
+    FieldDescriptor target = null;
+    for (FieldDescriptor field : message.getDescriptorForType().getFields()) {
+      if (field.isRepeated() || field.getRealContainingOneof() != null) {
+        continue;
+      }
+      if (field.getJavaType() == FieldDescriptor.JavaType.BYTE_STRING) {
+        target = field;
+        break;
+      }
+      if (field.getJavaType() == FieldDescriptor.JavaType.STRING && target == null) {
+        target = field;
+      }
+    }
+    if (target == null) {
+      return message;
+    }
+    byte[] content = new byte[size];
+    Arrays.fill(content, (byte) 'x');
+    Object value =
+        target.getJavaType() == FieldDescriptor.JavaType.BYTE_STRING
+            ? ByteString.copyFrom(content)
+            : new String(content, StandardCharsets.US_ASCII);
+    return message.toBuilder().setField(target, value).build();
+  }
+
+  /** Stands in for the outbound buffers the transport serializes a drained message into. */
+  private static final class Outbound extends OutputStream {
+    private final ByteBuffer buffer;
+
+    Outbound(int capacity) {
+      buffer = ByteBuffer.allocateDirect(Math.max(capacity, 1));
+    }
+
+    int drain(InputStream message) throws IOException {
+      buffer.clear();
+      return ((Drainable) message).drainTo(this);
+    }
+
+    @Override
+    public void write(int b) {
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      buffer.put(b, off, len);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package bufrnix.benchmarks;
+
+import com.google.protobuf.GeneratedMessage;
+import com.google.protobuf.Message;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Resolves proto message names to the default instances of their generated classes.
+ *
+ * <p>The classpath is scanned once for classes extending {@link GeneratedMessage}, skipping the
+ * protobuf and JMH runtime libraries.
+ */
+final class MessageCatalog {
+  private static Map<String, Message> messages;
+
+  private MessageCatalog() {}
+
+  /** Returns the default instance of the message with the given full proto name. */
+  static synchronized Message defaultInstance(String fullName) {
+    if (messages == null) {
+      messages = scan();
+    }
+    Message message = messages.get(fullName);
+    if (message == null) {
+      throw new IllegalArgumentException("No generated class found for message " + fullName);
+    }
+    return message;
+  }
+
+  private static Map<String, Message> scan() {
+    Map<String, Message> found = new HashMap<>();
+    ClassLoader loader = MessageCatalog.class.getClassLoader();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      Path path = Path.of(entry);
+      try {
+        if (Files.isDirectory(path)) {
+          try (Stream<Path> files = Files.walk(path)) {
+            files
+                .map(file -> path.relativize(file).toString().replace(File.separatorChar, '/'))
+                .forEach(name -> register(name, loader, found));
+          }
+        } else if (entry.endsWith(".jar") && Files.isRegularFile(path)) {
+          try (JarFile jar = new JarFile(path.toFile())) {
+            for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+              register(entries.nextElement().getName(), loader, found);
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot scan classpath entry " + entry, e);
+      }
+    }
+    return found;
+  }
+
+  private static void register(String resource, ClassLoader loader, Map<String, Message> found) {
+    // Skip the runtime libraries on the classpath, only generated code is of interest
+    if (!resource.endsWith(".class")
+        || resource.startsWith("com/google/")
+        || resource.startsWith("org/openjdk/jmh/")
+        || resource.startsWith("META-INF/")
+        || resource.contains("$Builder")) {
+      return;
+    }
+    String className = resource.substring(0, resource.length() - ".class".length()).replace('/', '.');
+    try {
+      Class<?> type = Class.forName(className, false, loader);
+      if (!GeneratedMessage.class.isAssignableFrom(type) || Modifier.isAbstract(type.getModifiers())) {
+        return;
+      }
+      Method getDefaultInstance = type.getMethod("getDefaultInstance");
+      Message message = (Message) getDefaultInstance.invoke(null);
+      found.put(message.getDescriptorForType().getFullName(), message);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // Not a loadable generated message, e.g. a class with missing optional dependencies
+    }
+  }
+}
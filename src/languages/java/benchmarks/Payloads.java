@@ -0,0 +1,85 @@
+package bufrnix.benchmarks;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.OneofDescriptor;
+import com.google.protobuf.Message;
+import java.util.List;
+
+/**
+ * Synthesizes benchmark payloads from message descriptors.
+ *
+ * <p>Every singular field is set, repeated and map fields get {@link #REPEATED} elements, only
+ * the first field of each oneof is set and nested messages are populated up to {@link
+ * #MAX_DEPTH} levels, which keeps recursive schemas finite. {@code google.protobuf.Any} fields
+ * are left empty since their JSON form needs the packed type to be registered.
+ */
+final class Payloads {
+  static final int REPEATED = 3;
+  static final int MAX_DEPTH = 3;
+
+  private Payloads() {}
+
+  /** Returns a fully populated message of the type of the given prototype. */
+  static Message populate(Message prototype) {
+    Message.Builder builder = prototype.newBuilderForType();
+    fill(builder, 0, 0);
+    return builder.build();
+  }
+
+  private static void fill(Message.Builder builder, int depth, int seed) {
+    Descriptor descriptor = builder.getDescriptorForType();
+    for (FieldDescriptor field : descriptor.getFields()) {
+      OneofDescriptor oneof = field.getRealContainingOneof();
+      if (oneof != null && oneof.getField(0) != field) {
+        continue;
+      }
+      if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE
+          && (depth >= MAX_DEPTH || isAny(field.getMessageType()))) {
+        continue;
+      }
+      if (field.isRepeated()) {
+        for (int i = 0; i < REPEATED; i++) {
+          builder.addRepeatedField(field, value(builder, field, depth, seed + i));
+        }
+      } else {
+        builder.setField(field, value(builder, field, depth, seed));
+      }
+    }
+  }
+
+  private static Object value(Message.Builder builder, FieldDescriptor field, int depth, int seed) {
+    switch (field.getJavaType()) {
+      case INT:
+        return 42 + seed;
+      case LONG:
+        return 4_200_000_000L + seed;
+      case FLOAT:
+        return 3.25f + seed;
+      case DOUBLE:
+        return 6.5d + seed;
+      case BOOLEAN:
+        return seed % 2 == 0;
+      case STRING:
+        return field.getName() + seed;
+      case BYTE_STRING:
+        return ByteString.copyFromUtf8("bytes-" + field.getName() + seed);
+      case ENUM:
+        EnumDescriptor type = field.getEnumType();
+        List<?> values = type.getValues();
+        return values.get(values.size() - 1);
+      case MESSAGE:
+        Message.Builder nested = builder.newBuilderForField(field);
+        fill(nested, depth + 1, seed);
+        return nested.build();
+      default:
+        throw new IllegalArgumentException("Unsupported field type " + field.getJavaType());
+    }
+  }
+
+  private static boolean isAny(Descriptor type) {
+    return type.getFullName().equals("google.protobuf.Any");
+  }
+}
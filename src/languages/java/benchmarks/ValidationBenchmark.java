@@ -0,0 +1,104 @@
+package bufrnix.benchmarks;
+
+import build.buf.protovalidate.ValidationResult;
+import build.buf.protovalidate.Validator;
+import build.buf.protovalidate.ValidatorFactory;
+import build.buf.protovalidate.exceptions.ValidationException;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Message;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compiled validators from protoc-gen-validate-java against the protovalidate-java runtime.
+ *
+ * <p>The {@code message} parameter lists the messages that have a generated validator and is
+ * filled in by bufrnix. Both validators check the same synthesized payload, which usually
+ * violates some rules, so the cost of reporting violations is part of the measurement.
+ *
+ * <p>The generated validator is bound through {@link LambdaMetafactory}, so {@code generated}
+ * calls its static {@code validate} method directly. The runtime validator is used once during
+ * setup, which builds and caches its CEL programs for the message type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+  @Param({"@validated@"})
+  public String message;
+
+  private Message payload;
+  private Function<Message, List<?>> generated;
+  private Validator runtime;
+
+  @Setup
+  public void setup() throws Throwable {
+    payload = Payloads.populate(MessageCatalog.defaultInstance(message));
+    generated = generatedValidator(payload);
+    runtime = ValidatorFactory.newBuilder().build();
+    int expected = runtime.validate(payload).getViolations().size();
+    int actual = generated.apply(payload).size();
+    if (actual != expected) {
+      throw new IllegalStateException(
+          message + ": generated validator reports " + actual + " violations, runtime " + expected);
+    }
+  }
+
+  @Benchmark
+  public List<?> generated() {
+    return generated.apply(payload);
+  }
+
+  @Benchmark
+  public ValidationResult runtime() throws ValidationException {
+    return runtime.validate(payload);
+  }
+
+  /** Binds {@code <Message>Validator.validate(<Message>)} of the payload's type to a function. */
+  @SuppressWarnings("unchecked")
+  private static Function<Message, List<?>> generatedValidator(Message payload) throws Throwable {
+    Class<?> type = payload.getClass();
+    String name = payload.getDescriptorForType().getName();
+    for (Descriptor parent = payload.getDescriptorForType().getContainingType();
+        parent != null;
+        parent = parent.getContainingType()) {
+      name = parent.getName() + "_" + name;
+    }
+    String javaPackage = type.getPackageName();
+    Class<?> validator =
+        Class.forName((javaPackage.isEmpty() ? "" : javaPackage + ".") + name + "Validator");
+
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    MethodHandle validate =
+        lookup.findStatic(validator, "validate", MethodType.methodType(List.class, type));
+    MethodHandle factory =
+        LambdaMetafactory.metafactory(
+                lookup,
+                "apply",
+                MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class),
+                validate,
+                validate.type())
+            .getTarget();
+    return (Function<Message, List<?>>) (Function<?, ?>) factory.invoke();
+  }
+}
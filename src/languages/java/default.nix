@@ -9,6 +9,17 @@ with lib; let
   # Define output path and options
   outputPath = cfg.outputPath;
   javaOptions = cfg.options;
+  lite = cfg.lite or false;
+
+  # Runtime artifacts of the generated code, switched to the lite runtime in lite mode
+  protobufArtifact =
+    if lite
+    then "protobuf-javalite"
+    else "protobuf-java";
+  grpcProtobufArtifact =
+    if lite
+    then "grpc-protobuf-lite"
+    else "grpc-protobuf";
 
   # Import Java-specific sub-modules
   grpcModule = import ./grpc.nix {
@@ -16,7 +27,8 @@ with lib; let
     cfg =
       (cfg.grpc or {enable = false;})
       // {
-        outputPath = outputPath;
+        inherit outputPath lite;
+        helperPackage = cfg.descriptors.package or "bufrnix";
       };
   };
 
@@ -26,22 +38,96 @@ with lib; let
       (cfg.protovalidate or {enable = false;})
       // {
         outputPath = outputPath;
+        descriptorsPackage = cfg.descriptors.package or "bufrnix";
+      };
+  };
+
+  # The validation warmup walks the descriptors listed by BufrnixDescriptors
+  validationWarmup = (cfg.protovalidate.enable or false) && (cfg.protovalidate.warmup or false);
+  compiledValidators = (cfg.protovalidate.enable or false) && (cfg.protovalidate.compile or false);
+
+  # Helper classes written next to the generated code, relative to the output path
+  helperPath = replaceStrings ["."] ["/"] (cfg.descriptors.package or "bufrnix");
+  grpcHelper = option: (cfg.grpc.enable or false) && (cfg.grpc.${option} or false);
+
+  subprojectsModule = import ./subprojects.nix {
+    inherit pkgs lib gradleDependencies mavenDependencies mavenProperties singleProjectBuildFiles;
+    cfg =
+      (cfg.subprojects or {enable = false;})
+      // {
+        outputPath = outputPath;
+        # Coordinates of the generated pom.xml
+        groupId = "com.example";
+        artifactId = "generated-protos";
+        version = "1.0.0";
+        # Helpers the generated code calls
+        runtimeSources =
+          optional (grpcHelper "virtualThreads") "${helperPath}/BufrnixGrpcServer.java"
+          ++ optional (grpcHelper "flowControl") "${helperPath}/BufrnixServerStreams.java"
+          ++ optional (grpcHelper "metrics") "${helperPath}/BufrnixGrpcMetrics.java"
+          ++ optional (grpcHelper "zeroCopy") "${helperPath}/BufrnixZeroCopyMarshaller.java"
+          ++ optional ((cfg.protovalidate.enable or false) && (cfg.protovalidate.batch or false)) "${helperPath}/BufrnixBatchValidation.java"
+          ++ optional compiledValidators "bufrnix/protovalidate/*.java";
+        # Helpers calling the generated code of every package
+        helperSources =
+          optional (((cfg.descriptors.enable or false) || validationWarmup) && !lite) "${helperPath}/BufrnixDescriptors.java"
+          ++ optional validationWarmup "${helperPath}/BufrnixValidation.java";
+      };
+  };
+
+  descriptorsModule = import ./descriptors.nix {
+    inherit pkgs lib;
+    cfg =
+      (cfg.descriptors or {enable = false;})
+      // {
+        inherit outputPath lite;
+        enable = (cfg.descriptors.enable or false) || validationWarmup;
+        package = cfg.descriptors.package or "bufrnix";
+      };
+  };
+
+  benchmarksModule = import ./benchmarks.nix {
+    inherit pkgs lib;
+    cfg =
+      (cfg.benchmarks or {enable = false;})
+      // {
+        inherit outputPath lite;
+        protovalidate = cfg.protovalidate.enable or false;
+        validators = compiledValidators;
+        grpc = cfg.grpc.enable or false;
+        zeroCopy = (cfg.grpc.enable or false) && (cfg.grpc.zeroCopy or false);
+        helperPackage = cfg.descriptors.package or "bufrnix";
+      };
+  };
+
+  nativeImageModule = import ./native-image.nix {
+    inherit pkgs lib;
+    cfg =
+      (cfg.nativeImage or {enable = false;})
+      // {
+        inherit outputPath;
+        name = "java";
+        grpc = cfg.grpc.enable or false;
       };
   };
 
   # Build Gradle dependencies section
   gradleDependencies =
     ''
-      implementation 'com.google.protobuf:protobuf-java:4.31.1'
+      implementation 'com.google.protobuf:${protobufArtifact}:4.31.1'
     ''
     + optionalString (cfg.grpc.enable or false) ''
       implementation 'io.grpc:grpc-stub:1.60.0'
-      implementation 'io.grpc:grpc-protobuf:1.60.0'
+      implementation 'io.grpc:${grpcProtobufArtifact}:1.60.0'
       implementation 'io.grpc:grpc-netty-shaded:1.60.0'
       implementation 'javax.annotation:javax.annotation-api:1.3.2'
     ''
     + optionalString (cfg.protovalidate.enable or false) ''
-      implementation 'build.buf:protovalidate:0.9.0'
+      implementation 'build.buf:protovalidate:0.13.0'
+    ''
+    # Compiled validators match patterns with re2j, which protovalidate only needs at runtime
+    + optionalString compiledValidators ''
+      implementation 'com.google.re2j:re2j:1.8'
     '';
 
   # Build Maven dependencies section
@@ -49,7 +135,7 @@ with lib; let
     ''
       <dependency>
           <groupId>com.google.protobuf</groupId>
-          <artifactId>protobuf-java</artifactId>
+          <artifactId>${protobufArtifact}</artifactId>
           <version>''${protobuf.version}</version>
       </dependency>
     ''
@@ -61,7 +147,7 @@ with lib; let
       </dependency>
       <dependency>
           <groupId>io.grpc</groupId>
-          <artifactId>grpc-protobuf</artifactId>
+          <artifactId>${grpcProtobufArtifact}</artifactId>
           <version>''${grpc.version}</version>
       </dependency>
       <dependency>
@@ -81,6 +167,13 @@ with lib; let
           <artifactId>protovalidate</artifactId>
           <version>''${protovalidate.version}</version>
       </dependency>
+    ''
+    + optionalString compiledValidators ''
+      <dependency>
+          <groupId>com.google.re2j</groupId>
+          <artifactId>re2j</artifactId>
+          <version>1.8</version>
+      </dependency>
     '';
 
   # Maven properties
@@ -94,14 +187,62 @@ with lib; let
       <grpc.version>1.60.0</grpc.version>
     ''
     + optionalString (cfg.protovalidate.enable or false) ''
-      <protovalidate.version>0.9.0</protovalidate.version>
+      <protovalidate.version>0.13.0</protovalidate.version>
     '';
 
+  # build.gradle and pom.xml of the output path as a single project
+  singleProjectBuildFiles = ''
+    # Generate build.gradle file for the Java project
+    bufrnix_write_generated "${outputPath}/build.gradle" <<'GRADLE_EOF'
+    plugins {
+        id 'java'
+        id 'application'
+    }
+
+    repositories {
+        mavenCentral()
+    }
+
+    dependencies {
+    ${gradleDependencies}}
+
+    java {
+        sourceCompatibility = JavaVersion.VERSION_17
+        targetCompatibility = JavaVersion.VERSION_17
+    }
+    GRADLE_EOF
+
+    # Generate Maven pom.xml as alternative
+    bufrnix_write_generated "${outputPath}/pom.xml" <<'POM_EOF'
+    <?xml version="1.0" encoding="UTF-8"?>
+    <project xmlns="http://maven.apache.org/POM/4.0.0"
+             xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+             xsi:schemaLocation="http://maven.apache.org/POM/4.0.0
+             http://maven.apache.org/xsd/maven-4.0.0.xsd">
+        <modelVersion>4.0.0</modelVersion>
+
+        <groupId>com.example</groupId>
+        <artifactId>generated-protos</artifactId>
+        <version>1.0.0</version>
+
+        <properties>
+    ${mavenProperties}    </properties>
+
+        <dependencies>
+    ${mavenDependencies}    </dependencies>
+    </project>
+    POM_EOF
+  '';
+
   # Combine all sub-modules
   combineModuleAttrs = attr:
     concatLists (catAttrs attr [
       grpcModule
       protovalidateModule
+      subprojectsModule
+      descriptorsModule
+      benchmarksModule
+      nativeImageModule
     ]);
 in {
   # Runtime dependencies for Java code generation
@@ -115,7 +256,7 @@ in {
   # Protoc plugin configuration for Java
   protocPlugins =
     [
-      "--java_out=${outputPath}"
+      "--java_out=${optionalString lite "lite:"}${outputPath}"
     ]
     ++ (optionals (javaOptions != []) (map (opt: "--java_opt=${opt}") javaOptions))
     ++ (combineModuleAttrs "protocPlugins");
@@ -123,52 +264,28 @@ in {
   # Initialization hook for Java
   initHooks =
     ''
-            # Create Java-specific directories
-            mkdir -p "${outputPath}"
-
-            # Generate build.gradle file for the Java project
-            cat > ${outputPath}/build.gradle <<'GRADLE_EOF'
-      plugins {
-          id 'java'
-          id 'application'
-      }
-
-      repositories {
-          mavenCentral()
-      }
-
-      dependencies {
-      ${gradleDependencies}}
-
-      java {
-          sourceCompatibility = JavaVersion.VERSION_17
-          targetCompatibility = JavaVersion.VERSION_17
-      }
-      GRADLE_EOF
-
-            # Generate Maven pom.xml as alternative
-            cat > ${outputPath}/pom.xml <<'POM_EOF'
-      <?xml version="1.0" encoding="UTF-8"?>
-      <project xmlns="http://maven.apache.org/POM/4.0.0"
-               xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
-               xsi:schemaLocation="http://maven.apache.org/POM/4.0.0
-               http://maven.apache.org/xsd/maven-4.0.0.xsd">
-          <modelVersion>4.0.0</modelVersion>
-
-          <groupId>com.example</groupId>
-          <artifactId>generated-protos</artifactId>
-          <version>1.0.0</version>
-
-          <properties>
-      ${mavenProperties}    </properties>
-
-          <dependencies>
-      ${mavenDependencies}    </dependencies>
-      </project>
-      POM_EOF
+      # Create Java-specific directories
+      mkdir -p "${outputPath}"
     ''
+    # With subprojects, the subprojects module writes the root build files after generation
+    + optionalString (!(cfg.subprojects.enable or false)) singleProjectBuildFiles
     + concatStrings (catAttrs "initHooks" [
       grpcModule
       protovalidateModule
     ]);
+
+  # Generation hook for Java
+  generateHooks = concatStrings (catAttrs "generateHooks" [
+    grpcModule
+    descriptorsModule
+    protovalidateModule
+    subprojectsModule
+    benchmarksModule
+    nativeImageModule
+  ]);
+
+  # Rewrites of protoc's output, run before write-if-changed compares it
+  outputHooks = concatStrings (catAttrs "outputHooks" [
+    grpcModule
+  ]);
 }
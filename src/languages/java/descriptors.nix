@@ -0,0 +1,91 @@
+/* Descriptor bootstrap class for generated Java code.
+
+   Writes `<package>/BufrnixDescriptors.java` (descriptors/BufrnixDescriptors.java
+   with the generated outer classes filled in) into the output directory. It
+   initializes every generated file descriptor in dependency order, either on
+   the calling thread or in parallel on an executor, and exposes one shared
+   ExtensionRegistry and TypeRegistry, so services can build all of them at
+   startup instead of on their first requests.
+
+   Outer classes are the generated files calling
+   `FileDescriptor.internalBuildGeneratedFileFrom`; their dependencies are
+   read from the descriptor array passed to it and ordered with tsort.
+
+   Type: descriptors :: { pkgs, lib, cfg } -> AttrSet
+*/
+{
+  pkgs,
+  lib,
+  cfg,
+  ...
+}:
+with lib; let
+  outputPath = cfg.outputPath;
+  packageDir = "${outputPath}/${replaceStrings ["."] ["/"] cfg.package}";
+in
+  if cfg.enable && (cfg.lite or false)
+  then {
+    runtimeInputs = [];
+    generateHooks = ''
+      echo "Skipping BufrnixDescriptors: lite messages have no descriptors"
+    '';
+  }
+  else if cfg.enable
+  then {
+    runtimeInputs = [
+      pkgs.gawk
+      pkgs.coreutils
+      pkgs.findutils
+    ];
+
+    generateHooks = ''
+      # Collect the generated outer classes and the descriptors they depend on
+      local descriptor_graph descriptor_classes
+      descriptor_graph=$(find "${outputPath}" -name '*.java' -not -path "${outputPath}/benchmarks/*" -print0 | sort -z |
+        xargs -0 -r awk '
+          FNR == 1 { pkg = ""; outer = ""; deps = 0 }
+          /^package [A-Za-z0-9_.]+;/ { pkg = $2; sub(/;.*/, "", pkg) }
+          /internalBuildGeneratedFileFrom/ {
+            n = split(FILENAME, path, "/")
+            outer = path[n]
+            sub(/\.java$/, "", outer)
+            if (pkg != "") outer = pkg "." outer
+            print "P", outer
+            deps = 1
+            next
+          }
+          deps && /\.getDescriptor\(\),$/ { dep = $1; sub(/\.getDescriptor\(\),$/, "", dep); print "D", dep, outer }
+          deps && /\}\);/ { deps = 0 }')
+
+      # Order generated files dependencies first; imports of other libraries are dropped
+      descriptor_classes=$(echo "$descriptor_graph" | awk '
+          $1 == "P" { known[$2] = 1; print $2, $2 }
+          $1 == "D" { edges[++n] = $2 " " $3 }
+          END { for (i = 1; i <= n; i++) { split(edges[i], e, " "); if (e[1] in known) print edges[i] } }' |
+        tsort)
+
+      if [ -z "$descriptor_classes" ]; then
+        echo "No generated Java descriptors found, skipping BufrnixDescriptors"
+      else
+        echo "Writing BufrnixDescriptors for $(echo "$descriptor_classes" | wc -l) files to ${packageDir}"
+        mkdir -p "${packageDir}"
+        awk -v classes="$descriptor_classes" -v package=${escapeShellArg cfg.package} '
+            BEGIN { n = split(classes, outer, "\n") }
+            /^package bufrnix;$/ { print "package " package ";"; next }
+            /\/\/ @descriptors@$/ || /\/\/ @extensions@$/ {
+              indent = $0
+              sub(/\/\/.*/, "", indent)
+              method = /@descriptors@/ ? "getDescriptor" : "registerAllExtensions"
+              for (i = 1; i <= n; i++) print indent outer[i] "::" method (i < n ? "," : ");")
+              close_list = 1
+              next
+            }
+            close_list { close_list = 0; next }
+            { print }' ${./descriptors/BufrnixDescriptors.java} | bufrnix_write_generated "${packageDir}/BufrnixDescriptors.java"
+      fi
+    '';
+  }
+  else {
+    runtimeInputs = [];
+    generateHooks = "";
+  }
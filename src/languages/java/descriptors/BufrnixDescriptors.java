@@ -0,0 +1,113 @@
+package bufrnix;
+
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.TypeRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Eager initialization of every file descriptor generated by bufrnix.
+ *
+ * <p>The outer class of each generated file builds its {@link FileDescriptor} from the embedded
+ * serialized descriptor on first use, which otherwise happens while serving the first request
+ * that touches it. Call {@link #warmUp()} (or {@link #warmUp(Executor)}) at startup to move that
+ * work, together with building a shared {@link ExtensionRegistry} and {@link TypeRegistry},
+ * before the service starts accepting traffic.
+ */
+public final class BufrnixDescriptors {
+  /** Descriptors of the generated files, dependencies before their dependents. */
+  private static final List<Supplier<FileDescriptor>> FILES =
+      List.<Supplier<FileDescriptor>>of(
+          // @descriptors@
+          );
+
+  /** Extension registration of the generated files, in the same order. */
+  private static final List<Consumer<ExtensionRegistry>> EXTENSIONS =
+      List.<Consumer<ExtensionRegistry>>of(
+          // @extensions@
+          );
+
+  private BufrnixDescriptors() {}
+
+  /** Initializes every generated file descriptor on the calling thread, in dependency order. */
+  public static List<FileDescriptor> initialize() {
+    List<FileDescriptor> descriptors = new ArrayList<>(FILES.size());
+    for (Supplier<FileDescriptor> file : FILES) {
+      descriptors.add(file.get());
+    }
+    return Collections.unmodifiableList(descriptors);
+  }
+
+  /**
+   * Initializes every generated file descriptor on the given executor and waits for all of them.
+   *
+   * <p>Files are submitted in dependency order. A file whose dependency is still being built on
+   * another thread waits for it in class initialization, which cannot deadlock because proto
+   * imports are acyclic.
+   */
+  public static List<FileDescriptor> initialize(Executor executor) {
+    List<CompletableFuture<FileDescriptor>> futures = new ArrayList<>(FILES.size());
+    for (Supplier<FileDescriptor> file : FILES) {
+      futures.add(CompletableFuture.supplyAsync(file, executor));
+    }
+    List<FileDescriptor> descriptors = new ArrayList<>(futures.size());
+    for (CompletableFuture<FileDescriptor> future : futures) {
+      descriptors.add(future.join());
+    }
+    return Collections.unmodifiableList(descriptors);
+  }
+
+  /** Returns an immutable registry holding the extensions of every generated file. */
+  public static ExtensionRegistry extensionRegistry() {
+    return Registries.EXTENSIONS;
+  }
+
+  /** Returns a registry of every generated message type, for {@code Any} and JSON handling. */
+  public static TypeRegistry typeRegistry() {
+    return Registries.TYPES;
+  }
+
+  /** Initializes every descriptor and builds both registries on the calling thread. */
+  public static void warmUp() {
+    initialize();
+    Registries.warmUp();
+  }
+
+  /** Initializes every descriptor on the given executor, then builds both registries. */
+  public static void warmUp(Executor executor) {
+    initialize(executor);
+    Registries.warmUp();
+  }
+
+  /** Registries built on first use, after the descriptors they are built from. */
+  private static final class Registries {
+    static final ExtensionRegistry EXTENSIONS = buildExtensionRegistry();
+    static final TypeRegistry TYPES = buildTypeRegistry();
+
+    private Registries() {}
+
+    static void warmUp() {}
+
+    private static ExtensionRegistry buildExtensionRegistry() {
+      ExtensionRegistry registry = ExtensionRegistry.newInstance();
+      for (Consumer<ExtensionRegistry> extensions : BufrnixDescriptors.EXTENSIONS) {
+        extensions.accept(registry);
+      }
+      return registry.getUnmodifiable();
+    }
+
+    private static TypeRegistry buildTypeRegistry() {
+      TypeRegistry.Builder registry = TypeRegistry.newBuilder();
+      for (Supplier<FileDescriptor> file : FILES) {
+        registry.add(file.get().getMessageTypes());
+      }
+      return registry.build();
+    }
+  }
+}
@@ -4,7 +4,9 @@
   cfg,
   ...
 }:
-with lib;
+with lib; let
+  helperDir = "${cfg.outputPath}/${replaceStrings ["."] ["/"] cfg.helperPackage}";
+in
   if cfg.enable
   then {
     # Runtime dependencies
@@ -13,7 +15,7 @@ with lib;
     # Protoc plugins configuration
     protocPlugins =
       [
-        "--grpc-java_out=${cfg.outputPath}"
+        "--grpc-java_out=${optionalString (cfg.lite or false) "lite:"}${cfg.outputPath}"
         "--plugin=protoc-gen-grpc-java=${cfg.package}/bin/protoc-gen-grpc-java"
       ]
       ++ (optionals (cfg.options != []) (map (opt: "--grpc-java_opt=${opt}") cfg.options));
@@ -23,9 +25,49 @@ with lib;
       # Ensure gRPC output directory exists
       mkdir -p "${cfg.outputPath}"
     '';
+
+    # BufrnixGrpcServer moves server calls from the default cached pool onto virtual threads;
+    # BufrnixServerStreams sends server streams only as fast as the client reads them;
+    # BufrnixGrpcMetrics records per-method metrics in a server and a client interceptor;
+    # BufrnixZeroCopyMarshaller replaces ProtoUtils.marshaller in the generated method descriptors
+    generateHooks =
+      optionalString (cfg.virtualThreads or false) ''
+        echo "Writing BufrnixGrpcServer to ${helperDir}"
+        mkdir -p "${helperDir}"
+        sed 's/^package bufrnix;$/package ${cfg.helperPackage};/' ${./grpc/BufrnixGrpcServer.java} | bufrnix_write_generated "${helperDir}/BufrnixGrpcServer.java"
+      ''
+      + optionalString (cfg.flowControl or false) ''
+        echo "Writing BufrnixServerStreams to ${helperDir}"
+        mkdir -p "${helperDir}"
+        sed 's/^package bufrnix;$/package ${cfg.helperPackage};/' ${./grpc/BufrnixServerStreams.java} | bufrnix_write_generated "${helperDir}/BufrnixServerStreams.java"
+      ''
+      + optionalString (cfg.metrics or false) ''
+        echo "Writing BufrnixGrpcMetrics to ${helperDir}"
+        mkdir -p "${helperDir}"
+        sed 's/^package bufrnix;$/package ${cfg.helperPackage};/' ${./grpc/BufrnixGrpcMetrics.java} | bufrnix_write_generated "${helperDir}/BufrnixGrpcMetrics.java"
+      ''
+      + optionalString (cfg.zeroCopy or false) ''
+        echo "Writing BufrnixZeroCopyMarshaller to ${helperDir}"
+        mkdir -p "${helperDir}"
+        sed 's/^package bufrnix;$/package ${cfg.helperPackage};/' ${./grpc/BufrnixZeroCopyMarshaller.java} | bufrnix_write_generated "${helperDir}/BufrnixZeroCopyMarshaller.java"
+      '';
+
+    # Point the request and response marshallers of every method at BufrnixZeroCopyMarshaller.
+    # Runs on protoc's output before write-if-changed compares it, and only edits the files
+    # still calling ProtoUtils, so unchanged stubs keep their mtime
+    outputHooks = optionalString (cfg.zeroCopy or false) ''
+      find "$bufrnix_protoc_out" -name '*Grpc.java' -not -path "$bufrnix_protoc_out/benchmarks/*" \
+        -exec grep -q -e 'io\.grpc\.protobuf\.ProtoUtils\.marshaller(' -e 'io\.grpc\.protobuf\.lite\.ProtoLiteUtils\.marshaller(' {} \; \
+        -exec sed -i \
+          -e 's/io\.grpc\.protobuf\.ProtoUtils\.marshaller(/${cfg.helperPackage}.BufrnixZeroCopyMarshaller.marshaller(/g' \
+          -e 's/io\.grpc\.protobuf\.lite\.ProtoLiteUtils\.marshaller(/${cfg.helperPackage}.BufrnixZeroCopyMarshaller.marshaller(/g' \
+          {} +
+    '';
   }
   else {
     runtimeInputs = [];
     protocPlugins = [];
     initHooks = "";
+    generateHooks = "";
+    outputHooks = "";
   }
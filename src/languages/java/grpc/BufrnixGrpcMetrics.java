@@ -0,0 +1,518 @@
+package bufrnix;
+
+import com.google.protobuf.MessageLite;
+import com.sun.net.httpserver.HttpServer;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Per-method metrics of gRPC calls, recorded by a server and a client interceptor.
+ *
+ * <p>For every method, on each side, it counts started and in-flight calls and completed calls by
+ * status code. It also keeps histograms of the call latency and of the serialized size of every
+ * request and response message. Recording only uses {@link LongAdder}s and atomic bucket
+ * counters, so calls never wait on a lock:
+ *
+ * <pre>{@code
+ * BufrnixGrpcMetrics metrics = BufrnixGrpcMetrics.global();
+ * Server server = metrics.install(ServerBuilder.forPort(8980)).addService(new GreeterServiceImpl()).build();
+ * ManagedChannel channel = metrics.install(ManagedChannelBuilder.forTarget(target)).usePlaintext().build();
+ * HttpServer endpoint = metrics.serve(new InetSocketAddress(9464)); // GET /metrics
+ * }</pre>
+ *
+ * <p>{@link #snapshot()} returns the current values in process, and {@link #toText()} (served by
+ * {@link #serve}) renders them in the Prometheus text format. Histograms use logarithmic buckets
+ * with eight sub-buckets per power of two, so percentiles are within 12.5% of the recorded
+ * values. Message sizes are only recorded for protobuf messages.
+ */
+public final class BufrnixGrpcMetrics {
+  /** The side of a call that recorded a metric. */
+  public enum Side {
+    SERVER,
+    CLIENT
+  }
+
+  private static final BufrnixGrpcMetrics GLOBAL = new BufrnixGrpcMetrics();
+
+  private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+  /** Creates metrics separate from {@link #global()}, for example one instance per server. */
+  public BufrnixGrpcMetrics() {}
+
+  /** Returns the instance shared by the whole process. */
+  public static BufrnixGrpcMetrics global() {
+    return GLOBAL;
+  }
+
+  /** Adds the server interceptor to {@code builder} and returns it. */
+  public ServerBuilder<?> install(ServerBuilder<?> builder) {
+    builder.intercept(serverInterceptor());
+    return builder;
+  }
+
+  /** Adds the client interceptor to {@code builder} and returns it. */
+  public ManagedChannelBuilder<?> install(ManagedChannelBuilder<?> builder) {
+    builder.intercept(clientInterceptor());
+    return builder;
+  }
+
+  /** Returns an interceptor recording the calls of a server. */
+  public ServerInterceptor serverInterceptor() {
+    return new ServerInterceptor() {
+      @Override
+      public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+          ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        MethodMetrics metrics = method(Side.SERVER, call.getMethodDescriptor().getFullMethodName());
+        CallRecorder recorder = new CallRecorder(metrics);
+        ServerCall<ReqT, RespT> recorded =
+            new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+              @Override
+              public void sendMessage(RespT message) {
+                metrics.responseBytes.record(serializedSize(message));
+                super.sendMessage(message);
+              }
+
+              @Override
+              public void close(Status status, Metadata trailers) {
+                recorder.complete(status.getCode());
+                super.close(status, trailers);
+              }
+            };
+
+        ServerCall.Listener<ReqT> listener;
+        try {
+          listener = next.startCall(recorded, headers);
+        } catch (RuntimeException e) {
+          recorder.complete(Status.Code.UNKNOWN);
+          throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+          @Override
+          public void onMessage(ReqT message) {
+            metrics.requestBytes.record(serializedSize(message));
+            super.onMessage(message);
+          }
+
+          @Override
+          public void onCancel() {
+            // Cancelled by the client or a deadline, without a close from the handler
+            recorder.complete(Status.Code.CANCELLED);
+            super.onCancel();
+          }
+        };
+      }
+    };
+  }
+
+  /** Returns an interceptor recording the calls of a client channel. */
+  public ClientInterceptor clientInterceptor() {
+    return new ClientInterceptor() {
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+          MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        MethodMetrics metrics = method(Side.CLIENT, method.getFullMethodName());
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+          @Override
+          public void start(Listener<RespT> responseListener, Metadata headers) {
+            CallRecorder recorder = new CallRecorder(metrics);
+            super.start(
+                new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                  @Override
+                  public void onMessage(RespT message) {
+                    metrics.responseBytes.record(serializedSize(message));
+                    super.onMessage(message);
+                  }
+
+                  @Override
+                  public void onClose(Status status, Metadata trailers) {
+                    recorder.complete(status.getCode());
+                    super.onClose(status, trailers);
+                  }
+                },
+                headers);
+          }
+
+          @Override
+          public void sendMessage(ReqT message) {
+            metrics.requestBytes.record(serializedSize(message));
+            super.sendMessage(message);
+          }
+        };
+      }
+    };
+  }
+
+  /** Returns the current metrics of every method, by method name and then side. */
+  public List<MethodSnapshot> snapshot() {
+    List<MethodSnapshot> snapshots = new ArrayList<>();
+    for (MethodMetrics metrics : methods.values()) {
+      snapshots.add(metrics.snapshot());
+    }
+    snapshots.sort(Comparator.comparing(MethodSnapshot::method).thenComparing(MethodSnapshot::side));
+    return Collections.unmodifiableList(snapshots);
+  }
+
+  /** Renders {@link #snapshot()} in the Prometheus text exposition format. */
+  public String toText() {
+    List<MethodSnapshot> snapshots = snapshot();
+    StringBuilder out = new StringBuilder();
+    out.append("# TYPE grpc_calls_started_total counter\n");
+    for (MethodSnapshot s : snapshots) {
+      out.append("grpc_calls_started_total").append(labels(s, null)).append(' ').append(s.started()).append('\n');
+    }
+    out.append("# TYPE grpc_calls_in_flight gauge\n");
+    for (MethodSnapshot s : snapshots) {
+      out.append("grpc_calls_in_flight").append(labels(s, null)).append(' ').append(s.inFlight()).append('\n');
+    }
+    out.append("# TYPE grpc_calls_completed_total counter\n");
+    for (MethodSnapshot s : snapshots) {
+      for (Map.Entry<Status.Code, Long> status : s.statuses().entrySet()) {
+        out.append("grpc_calls_completed_total")
+            .append(labels(s, "code=\"" + status.getKey() + "\""))
+            .append(' ')
+            .append(status.getValue())
+            .append('\n');
+      }
+    }
+    summary(out, "grpc_call_latency_seconds", snapshots, MethodSnapshot::latencyMicros, 1e-6);
+    summary(out, "grpc_request_message_bytes", snapshots, MethodSnapshot::requestBytes, 1);
+    summary(out, "grpc_response_message_bytes", snapshots, MethodSnapshot::responseBytes, 1);
+    return out.toString();
+  }
+
+  /**
+   * Serves {@link #toText()} at {@code GET /metrics} on {@code address} until the returned server
+   * is stopped.
+   */
+  public HttpServer serve(InetSocketAddress address) throws IOException {
+    HttpServer server = HttpServer.create(address, 0);
+    server.createContext(
+        "/metrics",
+        exchange -> {
+          try (exchange) {
+            byte[] body = toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+              out.write(body);
+            }
+          }
+        });
+    server.start();
+    return server;
+  }
+
+  private MethodMetrics method(Side side, String fullMethodName) {
+    String key = side + " " + fullMethodName;
+    MethodMetrics metrics = methods.get(key);
+    if (metrics == null) {
+      metrics = methods.computeIfAbsent(key, k -> new MethodMetrics(side, fullMethodName));
+    }
+    return metrics;
+  }
+
+  /** Serialized size of a protobuf message, computed once and cached by the message; else -1. */
+  private static long serializedSize(Object message) {
+    return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : -1;
+  }
+
+  private static String labels(MethodSnapshot s, String extra) {
+    String method = s.method().replace("\\", "\\\\").replace("\"", "\\\"");
+    return "{side=\"" + s.side().name().toLowerCase(Locale.ROOT) + "\",method=\"" + method + "\""
+        + (extra == null ? "" : "," + extra) + "}";
+  }
+
+  private static void summary(StringBuilder out, String name, List<MethodSnapshot> snapshots, Function<MethodSnapshot, HistogramSnapshot> histogram, double scale) {
+    out.append("# TYPE ").append(name).append(" summary\n");
+    for (MethodSnapshot s : snapshots) {
+      HistogramSnapshot h = histogram.apply(s);
+      if (h.count() == 0) {
+        continue;
+      }
+      for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+        out.append(name)
+            .append(labels(s, "quantile=\"" + quantile + "\""))
+            .append(' ')
+            .append(format(h.percentile(quantile * 100) * scale))
+            .append('\n');
+      }
+      out.append(name).append("_sum").append(labels(s, null)).append(' ').append(format(h.sum() * scale)).append('\n');
+      out.append(name).append("_count").append(labels(s, null)).append(' ').append(h.count()).append('\n');
+    }
+  }
+
+  private static String format(double value) {
+    return value == Math.rint(value) && Math.abs(value) < 1e15
+        ? Long.toString((long) value)
+        : String.format(Locale.ROOT, "%.9g", value);
+  }
+
+  /** Completes a call exactly once, even if both close and cancel report it. */
+  private static final class CallRecorder {
+    private final MethodMetrics metrics;
+    private final long start = System.nanoTime();
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    CallRecorder(MethodMetrics metrics) {
+      this.metrics = metrics;
+      metrics.started.increment();
+      metrics.inFlight.increment();
+    }
+
+    void complete(Status.Code code) {
+      if (done.compareAndSet(false, true)) {
+        metrics.inFlight.decrement();
+        metrics.statuses.incrementAndGet(code.value());
+        metrics.latencyMicros.record((System.nanoTime() - start) / 1000);
+      }
+    }
+  }
+
+  private static final class MethodMetrics {
+    final Side side;
+    final String method;
+    final LongAdder started = new LongAdder();
+    final LongAdder inFlight = new LongAdder();
+    final AtomicLongArray statuses = new AtomicLongArray(Status.Code.values().length);
+    final Histogram latencyMicros = new Histogram();
+    final Histogram requestBytes = new Histogram();
+    final Histogram responseBytes = new Histogram();
+
+    MethodMetrics(Side side, String method) {
+      this.side = side;
+      this.method = method;
+    }
+
+    MethodSnapshot snapshot() {
+      Map<Status.Code, Long> codes = new EnumMap<>(Status.Code.class);
+      for (Status.Code code : Status.Code.values()) {
+        long count = statuses.get(code.value());
+        if (count > 0) {
+          codes.put(code, count);
+        }
+      }
+      return new MethodSnapshot(
+          method,
+          side,
+          started.sum(),
+          inFlight.sum(),
+          Collections.unmodifiableMap(codes),
+          latencyMicros.snapshot(),
+          requestBytes.snapshot(),
+          responseBytes.snapshot());
+    }
+  }
+
+  /** Metrics of one method on one side at the time of {@link #snapshot()}. */
+  public static final class MethodSnapshot {
+    private final String method;
+    private final Side side;
+    private final long started;
+    private final long inFlight;
+    private final Map<Status.Code, Long> statuses;
+    private final HistogramSnapshot latencyMicros;
+    private final HistogramSnapshot requestBytes;
+    private final HistogramSnapshot responseBytes;
+
+    MethodSnapshot(
+        String method,
+        Side side,
+        long started,
+        long inFlight,
+        Map<Status.Code, Long> statuses,
+        HistogramSnapshot latencyMicros,
+        HistogramSnapshot requestBytes,
+        HistogramSnapshot responseBytes) {
+      this.method = method;
+      this.side = side;
+      this.started = started;
+      this.inFlight = inFlight;
+      this.statuses = statuses;
+      this.latencyMicros = latencyMicros;
+      this.requestBytes = requestBytes;
+      this.responseBytes = responseBytes;
+    }
+
+    /** Full method name, such as {@code example.v1.GreeterService/SayHello}. */
+    public String method() {
+      return method;
+    }
+
+    public Side side() {
+      return side;
+    }
+
+    /** Calls started since the metrics were created. */
+    public long started() {
+      return started;
+    }
+
+    /** Calls started but not yet completed. */
+    public long inFlight() {
+      return inFlight;
+    }
+
+    /** Completed calls by status code; codes without calls are left out. */
+    public Map<Status.Code, Long> statuses() {
+      return statuses;
+    }
+
+    /** Latency of completed calls in microseconds, from start to close on this side. */
+    public HistogramSnapshot latencyMicros() {
+      return latencyMicros;
+    }
+
+    /** Serialized size of every request message in bytes. */
+    public HistogramSnapshot requestBytes() {
+      return requestBytes;
+    }
+
+    /** Serialized size of every response message in bytes. */
+    public HistogramSnapshot responseBytes() {
+      return responseBytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%s %s: %d started, %d in flight, %s, latency p50 %.3f ms p99 %.3f ms, request p50 %d B, response p50 %d B",
+          side.name().toLowerCase(Locale.ROOT),
+          method,
+          started,
+          inFlight,
+          statuses,
+          latencyMicros.percentile(50) / 1e3,
+          latencyMicros.percentile(99) / 1e3,
+          requestBytes.percentile(50),
+          responseBytes.percentile(50));
+    }
+  }
+
+  /** Counts of a histogram at the time of {@link #snapshot()}. */
+  public static final class HistogramSnapshot {
+    private final long[] buckets;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] buckets, long count, long sum, long max) {
+      this.buckets = buckets;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    /** Number of recorded values. */
+    public long count() {
+      return count;
+    }
+
+    /** Sum of the recorded values. */
+    public long sum() {
+      return sum;
+    }
+
+    /** Largest recorded value, 0 if there is none. */
+    public long max() {
+      return max;
+    }
+
+    /**
+     * Returns an upper bound, within 12.5%, of the value below which {@code percentile} percent of
+     * the recorded values fall, or 0 if there is none.
+     */
+    public long percentile(double percentile) {
+      long rank = (long) Math.ceil(percentile / 100 * count);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= Math.max(rank, 1)) {
+          return Math.min(Histogram.upperBound(i), max);
+        }
+      }
+      return max;
+    }
+  }
+
+  /** Lock-free histogram of non-negative longs with eight logarithmic sub-buckets per power of two. */
+  private static final class Histogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long value) {
+      if (value < 0) {
+        return;
+      }
+      buckets.incrementAndGet(bucket(value));
+      sum.add(value);
+      max.accumulate(value);
+    }
+
+    HistogramSnapshot snapshot() {
+      long[] counts = new long[buckets.length()];
+      long count = 0;
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = buckets.get(i);
+        count += counts[i];
+      }
+      return new HistogramSnapshot(counts, count, sum.sum(), max.get());
+    }
+
+    /** Values below 8 have a bucket each; above, each power of two is split into 8 buckets. */
+    static int bucket(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+      return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest value that falls into {@code bucket}. */
+    static long upperBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+      long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+      long width = 1L << (exponent - SUB_BITS);
+      return ((SUB_BUCKETS + sub + 1) * width) - 1;
+    }
+  }
+}
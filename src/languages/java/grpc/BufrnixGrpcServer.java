@@ -0,0 +1,90 @@
+package bufrnix;
+
+import io.grpc.ServerBuilder;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Runs the calls of a gRPC server on virtual threads.
+ *
+ * <p>grpc-java dispatches the callbacks of every call to the executor of its server, by default
+ * an unbounded cached pool of platform threads. A handler that blocks, in {@code Thread.sleep}, a
+ * JDBC query or a blocking stub, holds its pool thread until it returns, so 10000 blocked
+ * streams hold 10000 platform threads and their stacks. A virtual thread instead unmounts from
+ * its carrier thread while it blocks:
+ *
+ * <pre>{@code
+ * Server server = BufrnixGrpcServer.configure(ServerBuilder.forPort(port))
+ *     .addService(new GreeterServiceImpl())
+ *     .build();
+ * }</pre>
+ *
+ * <p>Virtual threads need Java 21, while this class compiles for Java 17. On older JVMs, or with
+ * {@code -Dbufrnix.grpc.virtualThreads=false}, {@link #configure} leaves the builder on the
+ * default pool.
+ */
+public final class BufrnixGrpcServer {
+  /** System property that keeps servers on the default pool when set to {@code false}. */
+  public static final String VIRTUAL_THREADS_PROPERTY = "bufrnix.grpc.virtualThreads";
+
+  private static final Logger logger = Logger.getLogger(BufrnixGrpcServer.class.getName());
+
+  private BufrnixGrpcServer() {}
+
+  /** Whether the JVM supports virtual threads and {@link #VIRTUAL_THREADS_PROPERTY} allows them. */
+  public static boolean virtualThreads() {
+    return VirtualThreads.FACTORY != null
+        && !"false".equalsIgnoreCase(System.getProperty(VIRTUAL_THREADS_PROPERTY));
+  }
+
+  /**
+   * Makes {@code builder} run every call on virtual threads if {@link #virtualThreads()}, and
+   * returns it.
+   *
+   * <p>The executor starts a new thread per task and has no threads to shut down, so the server
+   * does not need to close it.
+   */
+  public static ServerBuilder<?> configure(ServerBuilder<?> builder) {
+    if (virtualThreads()) {
+      builder.executor(newVirtualThreadPerTaskExecutor());
+    } else {
+      logger.fine("Virtual threads unavailable or disabled, using the default gRPC executor");
+    }
+    return builder;
+  }
+
+  /**
+   * Returns {@code Executors.newVirtualThreadPerTaskExecutor()}.
+   *
+   * @throws UnsupportedOperationException before Java 21
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (VirtualThreads.FACTORY == null) {
+      throw new UnsupportedOperationException(
+          "Virtual threads need Java 21, running on " + System.getProperty("java.version"));
+    }
+    try {
+      return (ExecutorService) VirtualThreads.FACTORY.invoke(null);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("Cannot create a virtual thread executor", e);
+    }
+  }
+
+  /** The Java 21 executor factory, looked up on first use. */
+  private static final class VirtualThreads {
+    static final Method FACTORY = lookup();
+
+    private VirtualThreads() {}
+
+    private static Method lookup() {
+      try {
+        return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      } catch (NoSuchMethodException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package bufrnix;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server streaming that follows transport flow control.
+ *
+ * <p>A handler that calls {@code onNext} in a loop queues every message in the outbound buffers
+ * of the call, however slowly the client reads them. {@link #stream} instead sends the next
+ * message only while {@link ServerCallStreamObserver#isReady()}, and resumes from {@link
+ * ServerCallStreamObserver#setOnReadyHandler} when the client has read enough. At most about one
+ * flow-control window of messages per call is then buffered. Messages are taken from the iterator
+ * only when they can be sent, so a lazy iterator also keeps them out of the heap until then.
+ *
+ * <p>The handler returns right after the call to {@code stream}; no thread waits on a slow
+ * client. With an interval, messages are paced on a scheduler instead of with {@code
+ * Thread.sleep}:
+ *
+ * <pre>{@code
+ * public void sayHelloStream(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+ *   Iterator<HelloResponse> greetings = IntStream.rangeClosed(1, 5).mapToObj(i -> greeting(request, i)).iterator();
+ *   BufrnixServerStreams.stream(responseObserver, greetings, Duration.ofMillis(500));
+ * }
+ * }</pre>
+ *
+ * <p>The stream completes once the iterator has no more messages, one interval after the last
+ * one. It fails the call with {@code INTERNAL} if the iterator throws, and stops taking messages
+ * when the client cancels.
+ */
+public final class BufrnixServerStreams {
+  private BufrnixServerStreams() {}
+
+  /** Sends every message of {@code messages} as fast as the client reads them, then completes. */
+  public static <T> void stream(StreamObserver<T> responseObserver, Iterator<? extends T> messages) {
+    start(responseObserver, messages, 0, null);
+  }
+
+  /**
+   * Sends the messages of {@code messages} at least {@code interval} apart, then completes. The
+   * pauses run on a shared single-thread scheduler.
+   */
+  public static <T> void stream(StreamObserver<T> responseObserver, Iterator<? extends T> messages, Duration interval) {
+    stream(responseObserver, messages, interval, Shared.SCHEDULER);
+  }
+
+  /**
+   * Sends the messages of {@code messages} at least {@code interval} apart, then completes. The
+   * pauses, and the messages sent after them, run on {@code scheduler}.
+   *
+   * @throws IllegalArgumentException if {@code responseObserver} is not the observer of a server
+   *     call, or {@code interval} is negative
+   */
+  public static <T> void stream(
+      StreamObserver<T> responseObserver,
+      Iterator<? extends T> messages,
+      Duration interval,
+      ScheduledExecutorService scheduler) {
+    if (interval.isNegative()) {
+      throw new IllegalArgumentException("interval must not be negative: " + interval);
+    }
+    start(responseObserver, messages, interval.toNanos(), Objects.requireNonNull(scheduler, "scheduler"));
+  }
+
+  private static <T> void start(
+      StreamObserver<T> responseObserver,
+      Iterator<? extends T> messages,
+      long intervalNanos,
+      ScheduledExecutorService scheduler) {
+    if (!(responseObserver instanceof ServerCallStreamObserver)) {
+      throw new IllegalArgumentException(
+          "Flow control needs the ServerCallStreamObserver of a server call, got " + responseObserver.getClass().getName());
+    }
+    Sender<T> sender = new Sender<>((ServerCallStreamObserver<T>) responseObserver, messages, intervalNanos, scheduler);
+    sender.observer.setOnCancelHandler(sender::cancel);
+    sender.observer.setOnReadyHandler(sender::drain);
+    // The call may already be ready, in which case no onReady follows
+    sender.drain();
+  }
+
+  /**
+   * Sends the messages of one call. {@link #drain} runs from the handler, from onReady on the
+   * call's executor and from the scheduler; the work counter lets only one of them send at a time.
+   */
+  private static final class Sender<T> {
+    final ServerCallStreamObserver<T> observer;
+    private final Iterator<? extends T> messages;
+    private final long intervalNanos;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile boolean woken;
+    private boolean done;
+    private long nextSend;
+    private ScheduledFuture<?> wakeUp;
+
+    Sender(ServerCallStreamObserver<T> observer, Iterator<? extends T> messages, long intervalNanos, ScheduledExecutorService scheduler) {
+      this.observer = observer;
+      this.messages = messages;
+      this.intervalNanos = intervalNanos;
+      this.scheduler = scheduler;
+      this.nextSend = System.nanoTime();
+    }
+
+    void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    void drain() {
+      if (pending.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        send();
+        missed = pending.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void send() {
+      if (done) {
+        return;
+      }
+      if (cancelled) {
+        finish();
+        return;
+      }
+      if (woken) {
+        woken = false;
+        wakeUp = null;
+      }
+      while (observer.isReady()) {
+        // Wait before asking the iterator, which may build the next message in hasNext
+        long wait = nextSend - System.nanoTime();
+        if (wait > 0) {
+          if (wakeUp == null) {
+            wakeUp = scheduler.schedule(this::wakeUp, wait, TimeUnit.NANOSECONDS);
+          }
+          return;
+        }
+        T next = null;
+        boolean hasNext;
+        try {
+          hasNext = messages.hasNext();
+          if (hasNext) {
+            next = messages.next();
+          }
+        } catch (RuntimeException e) {
+          finish();
+          observer.onError(Status.INTERNAL.withDescription("Cannot produce the next message").withCause(e).asRuntimeException());
+          return;
+        }
+        if (!hasNext) {
+          finish();
+          observer.onCompleted();
+          return;
+        }
+        observer.onNext(next);
+        nextSend = System.nanoTime() + intervalNanos;
+      }
+    }
+
+    private void wakeUp() {
+      woken = true;
+      drain();
+    }
+
+    private void finish() {
+      done = true;
+      if (wakeUp != null) {
+        wakeUp.cancel(false);
+        wakeUp = null;
+      }
+    }
+  }
+
+  /** The scheduler of {@link #stream(StreamObserver, Iterator, Duration)}, started on first use. */
+  private static final class Shared {
+    static final ScheduledExecutorService SCHEDULER =
+        Executors.newSingleThreadScheduledExecutor(
+            task -> {
+              Thread thread = new Thread(task, "bufrnix-server-streams");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    private Shared() {}
+  }
+}
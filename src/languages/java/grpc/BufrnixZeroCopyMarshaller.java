@@ -0,0 +1,396 @@
+package bufrnix;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Context;
+import io.grpc.Detachable;
+import io.grpc.Drainable;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.HasByteBuffer;
+import io.grpc.KnownLength;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A protobuf marshaller for grpc-java that parses messages straight from the transport buffers.
+ *
+ * <p>{@code ProtoUtils.marshaller} copies every incoming message into a byte array before parsing
+ * it, so the content of a multi-megabyte message is copied twice: into the array, then into its
+ * {@code bytes} and {@code string} fields. This marshaller reads the {@link ByteBuffer}s of the
+ * transport through {@link HasByteBuffer} and parses them in place. With {@code grpc.zeroCopy},
+ * bufrnix rewrites the method descriptors of the generated {@code *Grpc} classes to use it.
+ *
+ * <p>Within an {@link Aliasing} scope, {@code bytes} fields are not copied at all but alias the
+ * transport buffers, which then stay with the call until the scope closes. {@link #install} opens
+ * one for every server call and closes it once the call has completed or was cancelled:
+ *
+ * <pre>{@code
+ * Server server = BufrnixZeroCopyMarshaller.install(ServerBuilder.forPort(8980))
+ *     .addService(new UploadService())
+ *     .build();
+ * }</pre>
+ *
+ * <p>Aliased {@link ByteString}s must not be used after the call ends; copy them with {@code
+ * ByteString.copyFrom(bytes.asReadOnlyByteBuffer())} to keep them longer. Outgoing messages are
+ * serialized straight into the output stream of the transport when it drains them, never into an
+ * intermediate byte array.
+ */
+public final class BufrnixZeroCopyMarshaller<T extends MessageLite>
+    implements MethodDescriptor.PrototypeMarshaller<T> {
+  // A rope copies neighbouring pieces shorter than this onto the heap, and protobuf parses a rope
+  // with heap pieces through a stream decoder that copies everything
+  private static final int MIN_PIECE = 128;
+
+  private final T defaultInstance;
+  private final Parser<T> parser;
+
+  @SuppressWarnings("unchecked")
+  private BufrnixZeroCopyMarshaller(T defaultInstance) {
+    this.defaultInstance = defaultInstance;
+    this.parser = (Parser<T>) defaultInstance.getParserForType();
+  }
+
+  /** Returns a marshaller for the messages of the type of {@code defaultInstance}. */
+  public static <T extends MessageLite> BufrnixZeroCopyMarshaller<T> marshaller(T defaultInstance) {
+    return new BufrnixZeroCopyMarshaller<>(defaultInstance);
+  }
+
+  /**
+   * Adds {@link #aliasingInterceptor()} to {@code builder} and returns it. Add other interceptors
+   * before calling this, so that it runs first and sees the context of the call.
+   */
+  public static ServerBuilder<?> install(ServerBuilder<?> builder) {
+    builder.intercept(aliasingInterceptor());
+    return builder;
+  }
+
+  /** Returns an interceptor that opens an {@link Aliasing} scope for the duration of each call. */
+  public static ServerInterceptor aliasingInterceptor() {
+    return new ServerInterceptor() {
+      @Override
+      public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+          ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        // Requests are parsed while the same context is current
+        Aliasing aliasing = Aliasing.open(Context.current());
+        ServerCall.Listener<ReqT> listener;
+        try {
+          listener = next.startCall(call, headers);
+        } catch (RuntimeException e) {
+          aliasing.close();
+          throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+          @Override
+          public void onComplete() {
+            try {
+              super.onComplete();
+            } finally {
+              aliasing.close();
+            }
+          }
+
+          @Override
+          public void onCancel() {
+            try {
+              super.onCancel();
+            } finally {
+              aliasing.close();
+            }
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Class<T> getMessageClass() {
+    return (Class<T>) defaultInstance.getClass();
+  }
+
+  @Override
+  public T getMessagePrototype() {
+    return defaultInstance;
+  }
+
+  @Override
+  public InputStream stream(T value) {
+    return new MessageStream<>(this, value);
+  }
+
+  @Override
+  public T parse(InputStream stream) {
+    if (stream instanceof MessageStream && ((MessageStream<?>) stream).marshaller == this) {
+      // In-process transport, the message was never serialized
+      @SuppressWarnings("unchecked")
+      T message = ((MessageStream<T>) stream).message;
+      if (message != null) {
+        return message;
+      }
+    }
+    try {
+      if (stream instanceof KnownLength
+          && stream instanceof HasByteBuffer
+          && ((HasByteBuffer) stream).byteBufferSupported()) {
+        int size = stream.available();
+        if (size == 0) {
+          return defaultInstance;
+        }
+        Aliasing aliasing = Aliasing.SCOPES.get(Context.current());
+        if (aliasing != null && stream instanceof Detachable) {
+          T message = aliasing.parse(this, (Detachable) stream, size);
+          if (message != null) {
+            return message;
+          }
+        }
+        ByteString buffers = wrap(stream, size);
+        if (buffers != null) {
+          return parseFrom(buffers.newCodedInput(), false);
+        }
+      }
+      return parseFrom(CodedInputStream.newInstance(stream), false);
+    } catch (IOException e) {
+      throw Status.INTERNAL
+          .withDescription("Invalid protobuf byte sequence")
+          .withCause(e)
+          .asRuntimeException();
+    }
+  }
+
+  private T parseFrom(CodedInputStream input, boolean alias) throws InvalidProtocolBufferException {
+    input.setSizeLimit(Integer.MAX_VALUE);
+    input.enableAliasing(alias);
+    T message = parser.parseFrom(input, ExtensionRegistryLite.getEmptyRegistry());
+    try {
+      input.checkLastTagWas(0);
+    } catch (InvalidProtocolBufferException e) {
+      e.setUnfinishedMessage(message);
+      throw e;
+    }
+    return message;
+  }
+
+  /**
+   * Wraps the next {@code size} bytes of {@code stream} without copying them, or returns null if
+   * they span several buffers that the stream would release as it skips over them.
+   */
+  private static ByteString wrap(InputStream stream, int size) throws IOException {
+    ByteBuffer first = ((HasByteBuffer) stream).getByteBuffer();
+    if (first.remaining() >= size) {
+      first.limit(first.position() + size);
+      return UnsafeByteOperations.unsafeWrap(first);
+    }
+    if (!stream.markSupported()) {
+      return null;
+    }
+    // A marked stream keeps the buffers it skipped until it is closed
+    stream.mark(size);
+    List<ByteString> pieces = new ArrayList<>();
+    ByteBuffer small = null;
+    for (int remaining = size; remaining > 0; ) {
+      ByteBuffer part = ((HasByteBuffer) stream).getByteBuffer();
+      int length = Math.min(part.remaining(), remaining);
+      if (length == 0) {
+        throw new IOException("Stream ended " + remaining + " bytes before its known length");
+      }
+      part.limit(part.position() + length);
+      if (length < MIN_PIECE) {
+        // Gather runs of small pieces into one direct buffer
+        if (small == null) {
+          small = ByteBuffer.allocateDirect(2 * MIN_PIECE);
+        }
+        small.put(part);
+        if (small.position() >= MIN_PIECE) {
+          pieces.add(UnsafeByteOperations.unsafeWrap(small.flip()));
+          small = null;
+        }
+      } else {
+        if (small != null) {
+          pieces.add(UnsafeByteOperations.unsafeWrap(small.flip()));
+          small = null;
+        }
+        pieces.add(UnsafeByteOperations.unsafeWrap(part));
+      }
+      if (stream.skip(length) != length) {
+        throw new IOException("Stream skipped fewer bytes than its buffer held");
+      }
+      remaining -= length;
+    }
+    if (small != null) {
+      pieces.add(UnsafeByteOperations.unsafeWrap(small.flip()));
+    }
+    return ByteString.copyFrom(pieces);
+  }
+
+  /**
+   * Lets the messages parsed while one {@link Context} is current alias the transport buffers, and
+   * releases those buffers when it is closed.
+   *
+   * <p>On the server, {@link #aliasingInterceptor()} opens one for each call. A client can alias
+   * responses by opening a scope for a context of its own and starting the call in it:
+   *
+   * <pre>{@code
+   * Context context = Context.current().fork();
+   * try (BufrnixZeroCopyMarshaller.Aliasing aliasing = BufrnixZeroCopyMarshaller.Aliasing.open(context)) {
+   *   Blob blob = context.call(() -> blobs.get(request));
+   *   store(blob.getData());
+   * }
+   * }</pre>
+   */
+  public static final class Aliasing implements AutoCloseable {
+    private static final Map<Context, Aliasing> SCOPES = new ConcurrentHashMap<>();
+
+    private final Context context;
+    private final List<InputStream> retained = new ArrayList<>();
+    private boolean closed;
+
+    private Aliasing(Context context) {
+      this.context = context;
+    }
+
+    /**
+     * Lets messages parsed while {@code context} is current alias the transport buffers until the
+     * returned scope is closed.
+     *
+     * @throws IllegalStateException if a scope is already open for {@code context}
+     */
+    public static Aliasing open(Context context) {
+      Aliasing aliasing = new Aliasing(context);
+      if (SCOPES.putIfAbsent(context, aliasing) != null) {
+        throw new IllegalStateException("An aliasing scope is already open for this context");
+      }
+      return aliasing;
+    }
+
+    /**
+     * Takes {@code stream} over from the transport and parses it with aliasing, or returns null
+     * once the scope is closed. Holding the lock keeps close from releasing buffers mid-parse.
+     */
+    synchronized <T extends MessageLite> T parse(
+        BufrnixZeroCopyMarshaller<T> marshaller, Detachable stream, int size) throws IOException {
+      if (closed) {
+        return null;
+      }
+      InputStream detached = stream.detach();
+      retained.add(detached);
+      ByteString buffers = wrap(detached, size);
+      if (buffers == null) {
+        return marshaller.parseFrom(CodedInputStream.newInstance(detached), false);
+      }
+      return marshaller.parseFrom(buffers.newCodedInput(), true);
+    }
+
+    /** Releases the buffers of every message parsed in this scope; they must not be used after. */
+    @Override
+    public void close() {
+      List<InputStream> released;
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        released = new ArrayList<>(retained);
+        retained.clear();
+      }
+      SCOPES.remove(context, this);
+      for (InputStream stream : released) {
+        try {
+          stream.close();
+        } catch (IOException e) {
+          // Releasing a transport buffer does not fail
+        }
+      }
+    }
+  }
+
+  /**
+   * A message on its way out. The transport drains it into its own output stream, which
+   * serializes the message directly into the outbound buffers.
+   */
+  private static final class MessageStream<T extends MessageLite> extends InputStream
+      implements Drainable, KnownLength {
+    final BufrnixZeroCopyMarshaller<T> marshaller;
+    T message;
+    private ByteArrayInputStream partial;
+
+    MessageStream(BufrnixZeroCopyMarshaller<T> marshaller, T message) {
+      this.marshaller = marshaller;
+      this.message = message;
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+      if (message != null) {
+        int size = message.getSerializedSize();
+        message.writeTo(target);
+        message = null;
+        return size;
+      }
+      if (partial != null) {
+        int written = (int) partial.transferTo(target);
+        partial = null;
+        return written;
+      }
+      return 0;
+    }
+
+    @Override
+    public int read() {
+      if (message != null) {
+        partial = new ByteArrayInputStream(message.toByteArray());
+        message = null;
+      }
+      return partial != null ? partial.read() : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (message != null) {
+        int size = message.getSerializedSize();
+        if (size == 0) {
+          message = null;
+          return -1;
+        }
+        if (len >= size) {
+          CodedOutputStream output = CodedOutputStream.newInstance(b, off, size);
+          message.writeTo(output);
+          output.flush();
+          output.checkNoSpaceLeft();
+          message = null;
+          return size;
+        }
+        partial = new ByteArrayInputStream(message.toByteArray());
+        message = null;
+      }
+      return partial != null ? partial.read(b, off, len) : -1;
+    }
+
+    @Override
+    public int available() {
+      if (message != null) {
+        return message.getSerializedSize();
+      }
+      return partial != null ? partial.available() : 0;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/* Compile generated Java code into a jar derivation.
+
+   Runs javac over the Java sources of a generated tree (the java output of
+   mkBufrnixDerivations) against pinned protobuf-java (protobuf-javalite in
+   lite mode) and, with gRPC or protovalidate enabled, the grpc-java or
+   protovalidate-java jars. The JMH project under benchmarks/ is not part
+   of the jar. The result is an ordinary store path, so consumers
+   substitute the compiled classes from a binary cache instead of
+   compiling the generated sources themselves.
+
+   Outputs:
+   - $out/share/java/<name>-<version>.jar: Compiled classes and META-INF resources
+   - $out/share/java/<name>-<version>-sources.jar: Generated sources
+   - passthru.classpath: The jar followed by its runtime dependencies
+   - passthru.appCds: AppCDS archive of the jar (with jar.appCds, see appcds.nix)
+
+   Type: jar :: { pkgs, lib, cfg, generated } -> Derivation
+*/
+{
+  pkgs,
+  lib,
+  cfg,
+  generated,
+  ...
+}:
+with lib; let
+  mavenDeps = import ./maven-deps.nix {inherit (pkgs) fetchurl lib;};
+
+  lite = cfg.lite or false;
+  grpc = cfg.grpc.enable or false;
+  protovalidate = cfg.protovalidate.enable or false;
+
+  grpcDependencies =
+    (
+      if protovalidate
+      then remove mavenDeps.grpcGuava
+      else id
+    ) (
+      if lite
+      then mavenDeps.grpcLite
+      else mavenDeps.grpc
+    );
+
+  dependencies =
+    if cfg.jar.classpath != null
+    then cfg.jar.classpath
+    else
+      (
+        if lite
+        then mavenDeps.protobufLite
+        else mavenDeps.protobuf
+      )
+      ++ optionals grpc grpcDependencies
+      ++ optionals protovalidate mavenDeps.protovalidate;
+
+  sourceRoot = head (toList cfg.outputPath);
+  jarName = "${cfg.jar.name}-${cfg.jar.version}";
+in
+  pkgs.stdenvNoCC.mkDerivation (finalAttrs: {
+    pname = cfg.jar.name;
+    inherit (cfg.jar) version;
+    src = generated;
+
+    nativeBuildInputs = [
+      cfg.jdk
+      pkgs.stripJavaArchivesHook
+    ];
+
+    buildPhase = ''
+      runHook preBuild
+
+      # The JMH project needs JMH on its classpath and is built on its own
+      (cd "${sourceRoot}" && find . -path ./benchmarks -prune -o -name '*.java' -print | sort) > "$TMPDIR/sources"
+      if [ ! -s "$TMPDIR/sources" ]; then
+        echo "bufrnix: no generated Java sources found in ${sourceRoot}" >&2
+        exit 1
+      fi
+
+      mkdir -p "$TMPDIR/classes"
+      (cd "${sourceRoot}" && javac \
+        --release ${toString cfg.jar.release} \
+        -encoding UTF-8 \
+        -proc:none \
+        -nowarn \
+        -classpath ${escapeShellArg (concatStringsSep ":" dependencies)} \
+        -d "$TMPDIR/classes" \
+        @"$TMPDIR/sources")
+
+      # Ship generated resources such as native-image metadata with the classes
+      if [ -d "${sourceRoot}/META-INF" ]; then
+        cp -r "${sourceRoot}/META-INF" "$TMPDIR/classes/"
+      fi
+
+      jar --create --file "${jarName}.jar" -C "$TMPDIR/classes" .
+      (cd "${sourceRoot}" && jar --create --file "$NIX_BUILD_TOP/${jarName}-sources.jar" @"$TMPDIR/sources")
+
+      runHook postBuild
+    '';
+
+    installPhase = ''
+      runHook preInstall
+
+      install -Dm644 "${jarName}.jar" "$out/share/java/${jarName}.jar"
+      install -Dm644 "$NIX_BUILD_TOP/${jarName}-sources.jar" "$out/share/java/${jarName}-sources.jar"
+
+      runHook postInstall
+    '';
+
+    passthru = {
+      inherit dependencies;
+      classpath = ["${finalAttrs.finalPackage}/share/java/${jarName}.jar"] ++ dependencies;
+      appCds =
+        if cfg.jar.appCds
+        then
+          import ./appcds.nix {
+            inherit pkgs lib cfg;
+            jar = finalAttrs.finalPackage;
+          }
+        else null;
+    };
+
+    meta = {
+      description = "Java classes compiled from protobuf code generated by bufrnix";
+    };
+  })
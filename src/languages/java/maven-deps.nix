@@ -0,0 +1,159 @@
+/* Pinned Maven Central artifacts for compiling generated Java code.
+
+   The versions match the dependencies written to the generated
+   build.gradle and pom.xml. Every jar is a fixed-output fetchurl, so
+   machines sharing a binary cache substitute them instead of resolving
+   them through Gradle or Maven.
+
+   Type: MavenDeps :: { protobuf, protobufLite, grpc, grpcLite, protovalidate :: [Derivation]; grpcGuava :: Derivation; }
+*/
+{
+  fetchurl,
+  lib,
+  ...
+}:
+with lib; let
+  /* Fetch a jar from Maven Central.
+
+     Type: mavenJar :: { group :: String; artifact :: String; version :: String; hash :: String; } -> Derivation
+  */
+  mavenJar = {
+    group,
+    artifact,
+    version,
+    hash,
+  }:
+    fetchurl {
+      url = "https://repo1.maven.org/maven2/${replaceStrings ["."] ["/"] group}/${artifact}/${version}/${artifact}-${version}.jar";
+      inherit hash;
+    };
+
+  # Guava of grpc-java; protovalidate needs the newer guava of its own list instead
+  grpcGuava = mavenJar {
+    group = "com.google.guava";
+    artifact = "guava";
+    version = "32.1.3-android";
+    hash = "sha256-IOasiQLd9J54Bsxw8wVMjZGsy17v3BDzIH6A4KM2smM=";
+  };
+
+  # Libraries referenced by both the full and the lite gRPC stubs
+  grpcCommon = [
+    (mavenJar {
+      group = "io.grpc";
+      artifact = "grpc-api";
+      version = "1.60.0";
+      hash = "sha256-nd9zUa7fA1MlZ2ZgWQ5ywISYPTH778Jnxg6g8bz/wDU=";
+    })
+    (mavenJar {
+      group = "io.grpc";
+      artifact = "grpc-stub";
+      version = "1.60.0";
+      hash = "sha256-eP6u7z680YpDdfMXFlGSyYeb135UzuIegmI5h6NWz+A=";
+    })
+    grpcGuava
+    (mavenJar {
+      group = "javax.annotation";
+      artifact = "javax.annotation-api";
+      version = "1.3.2";
+      hash = "sha256-4EulGVvNVV3JVlD3zGFNFR5LzVLSmhC4qiGX86uJq5s=";
+    })
+  ];
+
+  grpcProtobufLite = mavenJar {
+    group = "io.grpc";
+    artifact = "grpc-protobuf-lite";
+    version = "1.60.0";
+    hash = "sha256-ibDbeLVOM1+K/CDH8dUH9nDppIJ2b+Xh25oVMnlGkr8=";
+  };
+in {
+  inherit grpcGuava;
+
+  # Runtime of the messages generated by protoc --java_out
+  protobuf = [
+    (mavenJar {
+      group = "com.google.protobuf";
+      artifact = "protobuf-java";
+      version = "4.31.1";
+      hash = "sha256-1g3+fGig04okjMqWkk8oncfhlmqIfufK45dwGvCFda4=";
+    })
+  ];
+
+  # Runtime of the messages generated by protoc --java_out=lite:
+  protobufLite = [
+    (mavenJar {
+      group = "com.google.protobuf";
+      artifact = "protobuf-javalite";
+      version = "4.31.1";
+      hash = "sha256-VoGqeCkmKycsveKk/Kw4BwsGPvfZq74aDREtDfgZPLM=";
+    })
+  ];
+
+  # Libraries referenced by the stubs of protoc-gen-grpc-java 1.60.0
+  grpc =
+    grpcCommon
+    ++ [
+      (mavenJar {
+        group = "io.grpc";
+        artifact = "grpc-protobuf";
+        version = "1.60.0";
+        hash = "sha256-HN0XoWsBH/xCGYy87I5Xgsq/LqV2o9XUugYcTfX+Vxw=";
+      })
+      grpcProtobufLite
+    ];
+
+  # Libraries referenced by the lite stubs of protoc-gen-grpc-java 1.60.0
+  grpcLite = grpcCommon ++ [grpcProtobufLite];
+
+  # protovalidate-java 0.13.0 with its runtime dependencies, used by the buf.validate
+  # classes the generated messages import and by the protovalidate helpers
+  protovalidate = [
+    (mavenJar {
+      group = "build.buf";
+      artifact = "protovalidate";
+      version = "0.13.0";
+      hash = "sha256-ueB3loATt9nv7QVVmBslz0Qn9A0nnOrtlNk9L/Rrl6E=";
+    })
+    (mavenJar {
+      group = "org.jspecify";
+      artifact = "jspecify";
+      version = "1.0.0";
+      hash = "sha256-H61ua+dVd4Hk0zcp1Jrhzcj92m/kd7sMxozjUer9+6s=";
+    })
+    (mavenJar {
+      group = "dev.cel";
+      artifact = "cel";
+      version = "0.10.1";
+      hash = "sha256-xB8yxM8AFzmMB9vD8OnTWj6Kh3Y+gx75RITX19VSyCs=";
+    })
+    (mavenJar {
+      group = "com.google.re2j";
+      artifact = "re2j";
+      version = "1.8";
+      hash = "sha256-e1LHIVbdf5izI3pbNcHTT7o4GyEEjIkgiROtgKRd+9c=";
+    })
+    (mavenJar {
+      group = "org.antlr";
+      artifact = "antlr4-runtime";
+      version = "4.13.2";
+      hash = "sha256-3T6KE6LWab+E+42DTeNc5IdfJxV2mNIGJB7ISIqtyvc=";
+    })
+    (mavenJar {
+      group = "com.google.guava";
+      artifact = "guava";
+      version = "33.4.8-jre";
+      hash = "sha256-89f1f2f9Yi9NRo391pKzpeOQkkbCgBesMmNAXw/mF+0=";
+    })
+    (mavenJar {
+      group = "com.google.guava";
+      artifact = "failureaccess";
+      version = "1.0.3";
+      hash = "sha256-y/w5BrGbj1XdfP1t/gqkUy6DQlDX8IC9jSEaPiRrWcs=";
+    })
+    (mavenJar {
+      group = "org.threeten";
+      artifact = "threeten-extra";
+      version = "1.8.0";
+      hash = "sha256-UeTSHtxOlEf3dgwFDguu5119lz84e6YFoXq9xNJP1tg=";
+    })
+  ];
+}
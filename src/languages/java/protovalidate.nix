@@ -4,21 +4,29 @@
   cfg,
   ...
 }:
-with lib;
+with lib; let
+  descriptorsDir = "${cfg.outputPath}/${replaceStrings ["."] ["/"] cfg.descriptorsPackage}";
+in
   if cfg.enable
   then {
     # Runtime dependencies
     runtimeInputs = [cfg.package];
 
-    # Note: protovalidate-java uses runtime validation, not code generation
-    # We'll still generate standard Java protobuf code and include validation at runtime
-    protocPlugins = [];
+    # protovalidate-java validates at runtime; with compile, the rules are also
+    # compiled into <Message>Validator classes next to the generated messages
+    protocPlugins = optionals (cfg.compile or false) (
+      [
+        "--plugin=protoc-gen-validate-java=${cfg.package}/bin/protoc-gen-validate-java"
+        "--validate-java_out=${cfg.outputPath}"
+      ]
+      ++ (map (opt: "--validate-java_opt=${opt}") (cfg.options or []))
+    );
 
     # Additional initialization steps to add protovalidate dependency info
     initHooks = ''
           # Create a note about protovalidate-java runtime dependency
           mkdir -p "${cfg.outputPath}"
-          cat > ${cfg.outputPath}/PROTOVALIDATE_README.txt << 'EOF'
+          bufrnix_write_generated "${cfg.outputPath}/PROTOVALIDATE_README.txt" << 'EOF'
       This project uses protovalidate-java for runtime validation.
 
       To use validation in your Java project, add this dependency:
@@ -27,18 +35,38 @@ with lib;
       <dependency>
           <groupId>build.buf</groupId>
           <artifactId>protovalidate</artifactId>
-          <version>0.1.8</version>
+          <version>0.13.0</version>
       </dependency>
 
       Gradle:
-      implementation 'build.buf:protovalidate:0.1.8'
+      implementation 'build.buf:protovalidate:0.13.0'
 
       Then use the Validator class to validate your protobuf messages at runtime.
-      EOF
+      ${optionalString (cfg.compile or false) ''
+
+        Messages with buf.validate rules also have a generated <Message>Validator
+        class that checks the same rules without reflection or CEL evaluation.
+      ''}EOF
     '';
+
+    # BufrnixValidation precompiles the rules of every generated message at startup;
+    # it walks the descriptors listed by BufrnixDescriptors in the same package.
+    # BufrnixBatchValidation validates batches of messages in parallel.
+    generateHooks =
+      optionalString (cfg.warmup or false) ''
+        echo "Writing BufrnixValidation to ${descriptorsDir}"
+        mkdir -p "${descriptorsDir}"
+        sed 's/^package bufrnix;$/package ${cfg.descriptorsPackage};/' ${./protovalidate/BufrnixValidation.java} | bufrnix_write_generated "${descriptorsDir}/BufrnixValidation.java"
+      ''
+      + optionalString (cfg.batch or false) ''
+        echo "Writing BufrnixBatchValidation to ${descriptorsDir}"
+        mkdir -p "${descriptorsDir}"
+        sed 's/^package bufrnix;$/package ${cfg.descriptorsPackage};/' ${./protovalidate/BufrnixBatchValidation.java} | bufrnix_write_generated "${descriptorsDir}/BufrnixBatchValidation.java"
+      '';
   }
   else {
     runtimeInputs = [];
     protocPlugins = [];
     initHooks = "";
+    generateHooks = "";
   }
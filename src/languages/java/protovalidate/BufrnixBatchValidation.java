@@ -0,0 +1,264 @@
+package bufrnix;
+
+import build.buf.protovalidate.Validator;
+import build.buf.protovalidate.Violation;
+import com.google.protobuf.Message;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Validates batches of messages in parallel, reporting violations by element index.
+ *
+ * <p>Batches are split into chunks that run on an {@link Executor}: the common {@link
+ * ForkJoinPool} by default, or for example {@code Executors.newVirtualThreadPerTaskExecutor()} on
+ * Java 21 and later. Elements are checked either by a protovalidate {@link Validator} or by any
+ * {@link ElementValidator}, such as a method reference to a {@code <Message>Validator} compiled
+ * by protoc-gen-validate-java:
+ *
+ * <pre>{@code
+ * BufrnixBatchValidation batch = BufrnixBatchValidation.newBuilder().failFast(100).build();
+ * Result<Violation> runtime = batch.validate(validator, users);
+ * Result<bufrnix.protovalidate.Violation> compiled = batch.validate(users, UserValidator::validate);
+ * }</pre>
+ *
+ * <p>Instances are immutable and can be shared.
+ */
+public final class BufrnixBatchValidation {
+  /** Default number of elements validated by one task. */
+  public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+  /** Validates one message, returning its violations or an empty list if it is valid. */
+  @FunctionalInterface
+  public interface ElementValidator<M, V> {
+    List<V> validate(M message) throws Exception;
+  }
+
+  /** Violations of a batch, keyed by the index of the element they belong to. */
+  public static final class Result<V> {
+    private final int size;
+    private final SortedMap<Integer, List<V>> violations;
+    private final int violationCount;
+    private final boolean stoppedEarly;
+
+    Result(int size, SortedMap<Integer, List<V>> violations, int violationCount, boolean stoppedEarly) {
+      this.size = size;
+      this.violations = Collections.unmodifiableSortedMap(violations);
+      this.violationCount = violationCount;
+      this.stoppedEarly = stoppedEarly;
+    }
+
+    /** Number of elements in the batch. */
+    public int size() {
+      return size;
+    }
+
+    /** Whether no violation was found. With fail-fast, only the checked elements count. */
+    public boolean isValid() {
+      return violations.isEmpty();
+    }
+
+    /** Violations of the invalid elements, by ascending element index. */
+    public SortedMap<Integer, List<V>> violations() {
+      return violations;
+    }
+
+    /** Violations of the element at {@code index}, empty if it is valid or was not checked. */
+    public List<V> violations(int index) {
+      return violations.getOrDefault(index, Collections.emptyList());
+    }
+
+    /** Total number of violations found. */
+    public int violationCount() {
+      return violationCount;
+    }
+
+    /**
+     * Whether fail-fast stopped the batch before every element was checked. Elements without
+     * violations in the result may then be invalid.
+     */
+    public boolean stoppedEarly() {
+      return stoppedEarly;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d of %d elements invalid, %d violations%s",
+          violations.size(), size, violationCount, stoppedEarly ? " (stopped early)" : "");
+    }
+  }
+
+  private final Executor executor;
+  private final int chunkSize;
+  private final int maxViolations;
+
+  private BufrnixBatchValidation(Builder builder) {
+    this.executor = builder.executor;
+    this.chunkSize = builder.chunkSize;
+    this.maxViolations = builder.maxViolations;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Validates every message of {@code messages} with a protovalidate validator. */
+  public Result<Violation> validate(Validator validator, List<? extends Message> messages) {
+    return validate(messages, message -> validator.validate(message).getViolations());
+  }
+
+  /** Validates every message of {@code messages}, in encounter order, with a protovalidate validator. */
+  public Result<Violation> validate(Validator validator, Stream<? extends Message> messages) {
+    return validate(messages, message -> validator.validate(message).getViolations());
+  }
+
+  /** Validates every element of {@code messages} with {@code validator}. */
+  public <M, V> Result<V> validate(List<? extends M> messages, ElementValidator<? super M, V> validator) {
+    Batch<M, V> batch = new Batch<>(validator);
+    List<CompletableFuture<Void>> chunks = new ArrayList<>();
+    for (int start = 0; start < messages.size() && !batch.stop(); start += chunkSize) {
+      List<? extends M> chunk = messages.subList(start, Math.min(start + chunkSize, messages.size()));
+      int offset = start;
+      chunks.add(CompletableFuture.runAsync(() -> batch.run(chunk, offset), executor));
+    }
+    join(chunks);
+    return batch.result(messages.size());
+  }
+
+  /**
+   * Validates every element of {@code messages} with {@code validator}; indexes follow the
+   * encounter order. The stream is consumed one chunk at a time, with at most two chunks per
+   * available processor in flight, so it is never materialized as a whole.
+   */
+  public <M, V> Result<V> validate(Stream<? extends M> messages, ElementValidator<? super M, V> validator) {
+    Batch<M, V> batch = new Batch<>(validator);
+    Semaphore inFlight = new Semaphore(2 * Runtime.getRuntime().availableProcessors());
+    List<CompletableFuture<Void>> chunks = new ArrayList<>();
+    int size = 0;
+    Iterator<? extends M> elements = messages.iterator();
+    while (elements.hasNext() && !batch.stop()) {
+      List<M> chunk = new ArrayList<>(chunkSize);
+      while (chunk.size() < chunkSize && elements.hasNext()) {
+        chunk.add(elements.next());
+      }
+      int offset = size;
+      size += chunk.size();
+      inFlight.acquireUninterruptibly();
+      chunks.add(CompletableFuture.runAsync(() -> batch.run(chunk, offset), executor)
+          .whenComplete((ignored, failure) -> inFlight.release()));
+    }
+    join(chunks);
+    return batch.result(size);
+  }
+
+  private static void join(List<CompletableFuture<Void>> chunks) {
+    try {
+      CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /** State shared by the chunks of one batch. */
+  private final class Batch<M, V> {
+    private final ElementValidator<? super M, V> validator;
+    private final Map<Integer, List<V>> violations = new ConcurrentHashMap<>();
+    private final AtomicInteger violationCount = new AtomicInteger();
+    private final AtomicInteger checked = new AtomicInteger();
+    private volatile boolean stoppedEarly;
+
+    Batch(ElementValidator<? super M, V> validator) {
+      this.validator = validator;
+    }
+
+    /** Whether fail-fast triggered, so no further chunks need to be submitted. */
+    boolean stop() {
+      return stoppedEarly;
+    }
+
+    void run(List<? extends M> chunk, int offset) {
+      int i = 0;
+      for (; i < chunk.size() && !stoppedEarly; i++) {
+        List<V> found;
+        try {
+          found = validator.validate(chunk.get(i));
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IllegalStateException("Cannot validate element " + (offset + i), e);
+        }
+        if (!found.isEmpty()) {
+          violations.put(offset + i, found);
+          if (violationCount.addAndGet(found.size()) >= maxViolations) {
+            stoppedEarly = true;
+          }
+        }
+      }
+      checked.addAndGet(i);
+    }
+
+    Result<V> result(int size) {
+      return new Result<>(size, new TreeMap<>(violations), violationCount.get(), checked.get() < size);
+    }
+  }
+
+  /** Builder of {@link BufrnixBatchValidation}. */
+  public static final class Builder {
+    private Executor executor = ForkJoinPool.commonPool();
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int maxViolations = Integer.MAX_VALUE;
+
+    private Builder() {}
+
+    /** Runs the chunks on {@code executor} instead of the common ForkJoinPool. */
+    public Builder executor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /** Validates {@code chunkSize} elements per task; defaults to {@value BufrnixBatchValidation#DEFAULT_CHUNK_SIZE}. */
+    public Builder chunkSize(int chunkSize) {
+      if (chunkSize < 1) {
+        throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+      }
+      this.chunkSize = chunkSize;
+      return this;
+    }
+
+    /**
+     * Stops validating once {@code maxViolations} violations were found, instead of checking
+     * every element. Chunks already running finish their current element, so the result may hold
+     * slightly more violations.
+     */
+    public Builder failFast(int maxViolations) {
+      if (maxViolations < 1) {
+        throw new IllegalArgumentException("maxViolations must be positive: " + maxViolations);
+      }
+      this.maxViolations = maxViolations;
+      return this;
+    }
+
+    public BufrnixBatchValidation build() {
+      return new BufrnixBatchValidation(this);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package bufrnix;
+
+import build.buf.protovalidate.Validator;
+import build.buf.protovalidate.ValidatorFactory;
+import build.buf.protovalidate.exceptions.ValidationException;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DynamicMessage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Startup warmup of buf.validate rules for every message generated by bufrnix.
+ *
+ * <p>protovalidate-java compiles the CEL programs and regular expressions of a message type the
+ * first time a message of that type is validated, and caches them per descriptor in the {@link
+ * Validator}. Call {@link #warmUp()} at startup and validate with {@link #validator()} so that
+ * this compilation happens before the service starts accepting traffic rather than on the first
+ * request of each type.
+ *
+ * <p>When protoc-gen-validate-java compiled the rules into {@code <Message>Validator} classes,
+ * the warmup also initializes those classes, which builds their patterns and constant sets.
+ */
+public final class BufrnixValidation {
+  private BufrnixValidation() {}
+
+  /** Time spent preparing the rules of one message type. */
+  public static final class Timing {
+    private final String messageType;
+    private final Duration runtime;
+    private final Duration compiled;
+
+    Timing(String messageType, Duration runtime, Duration compiled) {
+      this.messageType = messageType;
+      this.runtime = runtime;
+      this.compiled = compiled;
+    }
+
+    /** Full proto name of the message type. */
+    public String messageType() {
+      return messageType;
+    }
+
+    /** Time the runtime validator took to compile and first evaluate the type's rules. */
+    public Duration runtime() {
+      return runtime;
+    }
+
+    /** Time to load and initialize the type's generated validator, null if it has none. */
+    public Duration compiled() {
+      return compiled;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: runtime %.3f ms%s",
+          messageType,
+          runtime.toNanos() / 1e6,
+          compiled == null ? "" : String.format(", compiled %.3f ms", compiled.toNanos() / 1e6));
+    }
+  }
+
+  /** Returns the validator shared by the application and warmed up by {@link #warmUp()}. */
+  public static Validator validator() {
+    return Shared.VALIDATOR;
+  }
+
+  /** Compiles the rules of every generated message type into the shared validator. */
+  public static List<Timing> warmUp() {
+    return warmUp(validator());
+  }
+
+  /**
+   * Compiles the rules of every generated message type into {@code validator}.
+   *
+   * <p>Each type is validated once as a default instance, after the message types of its fields,
+   * so its timing covers its own rules rather than those of the types it contains. Returns the
+   * timings in that order.
+   */
+  public static List<Timing> warmUp(Validator validator) {
+    List<Timing> timings = new ArrayList<>();
+    Set<Descriptor> visited = new HashSet<>();
+    for (FileDescriptor file : BufrnixDescriptors.initialize()) {
+      for (Descriptor message : file.getMessageTypes()) {
+        warmUp(validator, message, visited, timings);
+      }
+    }
+    return Collections.unmodifiableList(timings);
+  }
+
+  /** Formats timings one type per line, slowest first, followed by the total. */
+  public static String format(List<Timing> timings) {
+    List<Timing> sorted = new ArrayList<>(timings);
+    sorted.sort(Comparator.comparing(Timing::runtime).reversed());
+    StringBuilder out = new StringBuilder();
+    Duration total = Duration.ZERO;
+    for (Timing timing : sorted) {
+      out.append(timing).append('\n');
+      total = total.plus(timing.runtime());
+      if (timing.compiled() != null) {
+        total = total.plus(timing.compiled());
+      }
+    }
+    out.append(String.format("%d message types warmed up in %.3f ms", timings.size(), total.toNanos() / 1e6));
+    return out.toString();
+  }
+
+  private static void warmUp(Validator validator, Descriptor message, Set<Descriptor> visited, List<Timing> timings) {
+    if (!visited.add(message)) {
+      return;
+    }
+    for (FieldDescriptor field : message.getFields()) {
+      if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+        warmUp(validator, field.getMessageType(), visited, timings);
+      }
+    }
+    for (Descriptor nested : message.getNestedTypes()) {
+      warmUp(validator, nested, visited, timings);
+    }
+    if (message.getOptions().getMapEntry()) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    try {
+      validator.validate(DynamicMessage.getDefaultInstance(message));
+    } catch (ValidationException e) {
+      throw new IllegalStateException("Cannot compile the rules of " + message.getFullName(), e);
+    }
+    Duration runtime = Duration.ofNanos(System.nanoTime() - start);
+
+    Duration compiled = null;
+    start = System.nanoTime();
+    if (initializeCompiledValidator(message)) {
+      compiled = Duration.ofNanos(System.nanoTime() - start);
+    }
+    timings.add(new Timing(message.getFullName(), runtime, compiled));
+  }
+
+  /** Loads and initializes the protoc-gen-validate-java validator of {@code message}, if any. */
+  private static boolean initializeCompiledValidator(Descriptor message) {
+    String name = message.getName();
+    for (Descriptor parent = message.getContainingType(); parent != null; parent = parent.getContainingType()) {
+      name = parent.getName() + "_" + name;
+    }
+    FileDescriptor file = message.getFile();
+    String javaPackage = file.getOptions().hasJavaPackage() ? file.getOptions().getJavaPackage() : file.getPackage();
+    try {
+      Class.forName(
+          (javaPackage.isEmpty() ? "" : javaPackage + ".") + name + "Validator",
+          true,
+          BufrnixValidation.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /** The shared validator, built on first use. */
+  private static final class Shared {
+    static final Validator VALIDATOR = ValidatorFactory.newBuilder().build();
+
+    private Shared() {}
+  }
+}
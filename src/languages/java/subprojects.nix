@@ -0,0 +1,312 @@
+/* Multi-project build layout for generated Java code.
+
+   Replaces the single build.gradle/pom.xml of the Java output path with one
+   subproject per Java package. Each subproject compiles only the files of
+   its package from the shared generated tree, and depends on the
+   subprojects of the packages its proto files import, so Gradle compiles
+   independent packages in parallel and skips untouched ones through
+   compile avoidance.
+
+   The helper classes bufrnix writes into the tree get two subprojects of
+   their own: bufrnix-runtime holds the ones the generated code calls (the
+   gRPC helpers and the runtime of the compiled validators) and is a
+   dependency of every package subproject; bufrnix-helpers holds the ones
+   calling the generated code (BufrnixDescriptors, BufrnixValidation) and
+   depends on every package subproject.
+
+   The generated files stay where protoc writes them; only the build files
+   below are written after generation, each only when its content changed,
+   and the directories of subprojects no longer generated are removed:
+   - settings.gradle, build.gradle, pom.xml: Root project and aggregator
+   - subprojects/<package>/build.gradle, subprojects/<package>/pom.xml
+   - subprojects/bufrnix-runtime/, subprojects/bufrnix-helpers/: Helper subprojects
+
+   Import cycles between packages cannot be expressed as project
+   dependencies; in that case the single-project build files are written
+   instead.
+
+   Type: subprojects :: { pkgs, lib, cfg, gradleDependencies, mavenDependencies, mavenProperties, singleProjectBuildFiles } -> AttrSet
+*/
+{
+  pkgs,
+  lib,
+  cfg,
+  gradleDependencies,
+  mavenDependencies,
+  mavenProperties,
+  singleProjectBuildFiles,
+  ...
+}:
+with lib; let
+  outputPath = cfg.outputPath;
+  subprojectsDir = "${outputPath}/subprojects";
+
+  # Helper sources, relative to the output path, kept out of the package subprojects
+  helperSources = cfg.runtimeSources ++ cfg.helperSources;
+  runtimeProject = optionalString (cfg.runtimeSources != []) "bufrnix-runtime";
+  helpersProject = optionalString (cfg.helperSources != []) "bufrnix-helpers";
+
+  gradleIncludes = concatMapStrings (source: "sourceSets.main.java.include '${source}'\n");
+  gradleExcludes = concatMapStrings (source: "sourceSets.main.java.exclude '${source}'\n") helperSources;
+  mavenSources = element: sources:
+    optionalString (sources != []) (
+      "                    <${element}s>\n"
+      + concatMapStrings (source: "                        <${element}>${source}</${element}>\n") sources
+      + "                    </${element}s>\n"
+    );
+
+  # Start and end of a subproject pom.xml compiling `sources` out of the shared tree
+  pomHead = name: ''
+    <?xml version="1.0" encoding="UTF-8"?>
+    <project xmlns="http://maven.apache.org/POM/4.0.0"
+             xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+             xsi:schemaLocation="http://maven.apache.org/POM/4.0.0
+             http://maven.apache.org/xsd/maven-4.0.0.xsd">
+        <modelVersion>4.0.0</modelVersion>
+
+        <parent>
+            <groupId>${cfg.groupId}</groupId>
+            <artifactId>${cfg.artifactId}</artifactId>
+            <version>${cfg.version}</version>
+            <relativePath>../../pom.xml</relativePath>
+        </parent>
+
+        <artifactId>${name}</artifactId>
+
+        <dependencies>
+  '';
+  pomTail = includes: excludes: ''
+        </dependencies>
+
+        <build>
+            <sourceDirectory>../..</sourceDirectory>
+            <plugins>
+                <plugin>
+                    <groupId>org.apache.maven.plugins</groupId>
+                    <artifactId>maven-compiler-plugin</artifactId>
+                    <configuration>
+    ${mavenSources "include" includes}${mavenSources "exclude" excludes}                    <compilerArgs>
+                            <arg>-implicit:none</arg>
+                        </compilerArgs>
+                    </configuration>
+                </plugin>
+            </plugins>
+        </build>
+    </project>
+  '';
+  pomDependency = name:
+    "        <dependency>\n"
+    + "            <groupId>${cfg.groupId}</groupId>\n"
+    + "            <artifactId>${name}</artifactId>\n"
+    + "            <version>\\\${project.version}</version>\n"
+    + "        </dependency>\n";
+in
+  if cfg.enable
+  then {
+    runtimeInputs = [
+      pkgs.gawk
+      pkgs.gnugrep
+      pkgs.coreutils
+    ];
+
+    generateHooks = ''
+      # Derive the package graph of the generated Java code from the protos
+      local java_protos java_layout java_unit java_dep java_name java_dir java_names=()
+      read -r -d "" -a java_protos <<< "$lang_proto_files" || true
+      java_layout=$(awk '
+        FNR == 1 { files[++n] = FILENAME }
+        /^[ \t]*package[ \t]/ {
+          v = $0; sub(/^[ \t]*package[ \t]+/, "", v); sub(/[ \t]*;.*$/, "", v); pkg[FILENAME] = v
+        }
+        /^[ \t]*option[ \t]+java_package[ \t]*=/ {
+          v = $0; sub(/^[^"]*"/, "", v); sub(/".*$/, "", v); jpkg[FILENAME] = v
+        }
+        /^[ \t]*import[ \t]/ {
+          v = $0; sub(/^[^"]*"/, "", v); sub(/".*$/, "", v); imports[FILENAME, ++ni[FILENAME]] = v
+        }
+        END {
+          for (i = 1; i <= n; i++) {
+            f = files[i]
+            unit[f] = (jpkg[f] != "") ? jpkg[f] : pkg[f]
+            if (unit[f] == "") unit[f] = "_"
+            print "P\t" unit[f]
+          }
+          for (i = 1; i <= n; i++) {
+            f = files[i]
+            for (j = 1; j <= ni[f]; j++) {
+              imp = imports[f, j]
+              for (k = 1; k <= n; k++) {
+                g = files[k]
+                if (g == imp || substr(g, length(g) - length(imp)) == "/" imp) {
+                  if (unit[g] != unit[f]) print "D\t" unit[f] "\t" unit[g]
+                  break
+                }
+              }
+            }
+          }
+        }' "''${java_protos[@]}" < /dev/null | sort -u)
+
+      if ! printf '%s\n' "$java_layout" | awk -F '\t' '$1 == "D" { print $3, $2 }' | tsort > /dev/null 2>&1; then
+        echo "Warning: proto imports form a cycle between Java packages; writing the single-project build to ${outputPath}" >&2
+        rm -rf "${subprojectsDir}" "${outputPath}/settings.gradle"
+      ${singleProjectBuildFiles}
+      else
+        echo "Writing per-package Gradle/Maven subprojects to ${subprojectsDir}"
+
+        while IFS=$'\t' read -r _ java_unit; do
+          if [ "$java_unit" = "_" ]; then
+            java_name=default
+            java_dir=""
+          else
+            java_name=''${java_unit//./-}
+            java_dir="''${java_unit//.//}/"
+          fi
+          java_names+=("$java_name")
+          mkdir -p "${subprojectsDir}/$java_name"
+
+          {
+            printf "sourceSets.main.java.include '%s*.java'\n" "$java_dir"
+            cat <<'GRADLE_EOF'
+      ${gradleExcludes}
+      dependencies {
+      ${optionalString (runtimeProject != "") "    api project(':${runtimeProject}')\n"}GRADLE_EOF
+            printf '%s\n' "$java_layout" | awk -F '\t' -v unit="$java_unit" '$1 == "D" && $2 == unit { print $3 }' |
+              while read -r java_dep; do
+                [ "$java_dep" = "_" ] && java_dep=default
+                printf "    api project(':%s')\n" "''${java_dep//./-}"
+              done
+            printf "}\n"
+          } | bufrnix_write_generated "${subprojectsDir}/$java_name/build.gradle"
+
+          {
+            cat <<POM_EOF
+      ${pomHead "$java_name"}${optionalString (runtimeProject != "") (pomDependency runtimeProject)}POM_EOF
+            printf '%s\n' "$java_layout" | awk -F '\t' -v unit="$java_unit" '$1 == "D" && $2 == unit { print $3 }' |
+              while read -r java_dep; do
+                [ "$java_dep" = "_" ] && java_dep=default
+                printf '        <dependency>\n            <groupId>%s</groupId>\n            <artifactId>%s</artifactId>\n            <version>''${project.version}</version>\n        </dependency>\n' \
+                  "${cfg.groupId}" "''${java_dep//./-}"
+              done
+            cat <<POM_EOF
+      ${pomTail ["\${java_dir}*.java"] helperSources}POM_EOF
+          } | bufrnix_write_generated "${subprojectsDir}/$java_name/pom.xml"
+        done < <(printf '%s\n' "$java_layout" | grep '^P')
+      ${optionalString (runtimeProject != "") ''
+
+        # Helpers called by the generated code, such as the zero-copy marshaller
+        java_names+=("${runtimeProject}")
+        mkdir -p "${subprojectsDir}/${runtimeProject}"
+        bufrnix_write_generated "${subprojectsDir}/${runtimeProject}/build.gradle" <<'GRADLE_EOF'
+        ${gradleIncludes cfg.runtimeSources}GRADLE_EOF
+        bufrnix_write_generated "${subprojectsDir}/${runtimeProject}/pom.xml" <<POM_EOF
+        ${pomHead runtimeProject}${pomTail cfg.runtimeSources []}POM_EOF
+      ''}
+      ${optionalString (helpersProject != "") ''
+
+        # Helpers calling the generated code of every package, such as BufrnixDescriptors
+        mkdir -p "${subprojectsDir}/${helpersProject}"
+        {
+          cat <<'GRADLE_EOF'
+        ${gradleIncludes cfg.helperSources}
+        dependencies {
+        ${optionalString (runtimeProject != "") "    api project(':${runtimeProject}')\n"}GRADLE_EOF
+          for java_name in "''${java_names[@]}"; do
+            [ "$java_name" = "${runtimeProject}" ] || printf "    api project(':%s')\n" "$java_name"
+          done
+          printf "}\n"
+        } | bufrnix_write_generated "${subprojectsDir}/${helpersProject}/build.gradle"
+        {
+          cat <<POM_EOF
+        ${pomHead helpersProject}${optionalString (runtimeProject != "") (pomDependency runtimeProject)}POM_EOF
+          for java_name in "''${java_names[@]}"; do
+            [ "$java_name" = "${runtimeProject}" ] ||
+              printf '        <dependency>\n            <groupId>%s</groupId>\n            <artifactId>%s</artifactId>\n            <version>''${project.version}</version>\n        </dependency>\n' \
+                "${cfg.groupId}" "$java_name"
+          done
+          cat <<POM_EOF
+        ${pomTail cfg.helperSources []}POM_EOF
+        } | bufrnix_write_generated "${subprojectsDir}/${helpersProject}/pom.xml"
+        java_names+=("${helpersProject}")
+      ''}
+
+        # Subprojects of packages no longer generated
+        for java_dir in "${subprojectsDir}"/*/; do
+          [ -d "$java_dir" ] || continue
+          java_name=$(basename "$java_dir")
+          if ! printf '%s\n' "''${java_names[@]}" | grep -qxF -- "$java_name"; then
+            echo "Removing stale subproject $java_name"
+            rm -rf "$java_dir"
+          fi
+        done
+
+        {
+          cat <<'GRADLE_EOF'
+      rootProject.name = '${cfg.artifactId}'
+      GRADLE_EOF
+          for java_name in "''${java_names[@]}"; do
+            printf "include '%s'\nproject(':%s').projectDir = file('subprojects/%s')\n" \
+              "$java_name" "$java_name" "$java_name"
+          done
+        } | bufrnix_write_generated "${outputPath}/settings.gradle"
+
+        bufrnix_write_generated "${outputPath}/build.gradle" <<'GRADLE_EOF'
+      subprojects {
+          apply plugin: 'java-library'
+
+          group = '${cfg.groupId}'
+          version = '${cfg.version}'
+
+          repositories {
+              mavenCentral()
+          }
+
+          dependencies {
+      ${replaceStrings ["implementation "] ["api "] gradleDependencies}    }
+
+          java {
+              sourceCompatibility = JavaVersion.VERSION_17
+              targetCompatibility = JavaVersion.VERSION_17
+          }
+
+          // Every subproject compiles its own package out of the shared generated tree
+          sourceSets.main.java.srcDir rootProject.projectDir
+      }
+      GRADLE_EOF
+
+        {
+          cat <<'POM_EOF'
+      <?xml version="1.0" encoding="UTF-8"?>
+      <project xmlns="http://maven.apache.org/POM/4.0.0"
+               xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+               xsi:schemaLocation="http://maven.apache.org/POM/4.0.0
+               http://maven.apache.org/xsd/maven-4.0.0.xsd">
+          <modelVersion>4.0.0</modelVersion>
+
+          <groupId>${cfg.groupId}</groupId>
+          <artifactId>${cfg.artifactId}</artifactId>
+          <version>${cfg.version}</version>
+          <packaging>pom</packaging>
+
+          <properties>
+      ${mavenProperties}    </properties>
+
+          <dependencies>
+      ${mavenDependencies}    </dependencies>
+
+          <modules>
+      POM_EOF
+          for java_name in "''${java_names[@]}"; do
+            printf '        <module>subprojects/%s</module>\n' "$java_name"
+          done
+          cat <<'POM_EOF'
+          </modules>
+      </project>
+      POM_EOF
+        } | bufrnix_write_generated "${outputPath}/pom.xml"
+      fi
+    '';
+  }
+  else {
+    runtimeInputs = [];
+    generateHooks = "";
+  }
@@ -0,0 +1,122 @@
+/* Build test of the per-package Gradle/Maven subprojects.
+
+   Generates two packages, one importing the other, with every helper that
+   writes classes next to the messages: the gRPC helpers (zero-copy stubs
+   included), BufrnixDescriptors, compiled validators and the protovalidate
+   helpers. Then compiles every subproject the way Gradle would: in
+   dependency order, each from the sources its build.gradle includes and
+   excludes, against the classes of the subprojects it depends on only.
+   The build fails if a class lands in no subproject, or in one that
+   cannot see what it uses.
+
+   Type: { pkgs } -> Derivation
+*/
+{pkgs, ...}:
+with pkgs.lib; let
+  outputPath = "gen/java";
+
+  generated = import ../../../lib/mkBufrnixDerivations.nix {
+    inherit pkgs;
+    # Only the .proto files of the tree are taken from it
+    src = ../../../..;
+    config = {
+      protoc = {
+        sourceDirectories = ["./src/languages/java/test/proto"];
+        includeDirectories = [
+          "./src/languages/java/test/proto"
+          "./examples/java-protovalidate/proto"
+        ];
+        files = [
+          "./src/languages/java/test/proto/subprojects/common/v1/common.proto"
+          "./src/languages/java/test/proto/subprojects/user/v1/user.proto"
+        ];
+      };
+      languages.java = {
+        enable = true;
+        inherit outputPath;
+        subprojects.enable = true;
+        descriptors.enable = true;
+        grpc = {
+          enable = true;
+          virtualThreads = true;
+          flowControl = true;
+          metrics = true;
+          zeroCopy = true;
+        };
+        protovalidate = {
+          enable = true;
+          compile = true;
+          warmup = true;
+          batch = true;
+        };
+        # Only for the classpath of the generated code
+        jar.enable = true;
+      };
+    };
+  };
+
+  classpath = concatStringsSep ":" generated.jars.java.dependencies;
+in
+  pkgs.stdenvNoCC.mkDerivation {
+    name = "bufrnix-java-subprojects-test";
+    src = generated.languages.java;
+
+    nativeBuildInputs = [pkgs.jdk];
+
+    buildPhase = ''
+      runHook preBuild
+
+      cd ${outputPath}
+      grep -q 'BufrnixZeroCopyMarshaller.marshaller(' com/example/subprojects/user/v1/UserServiceGrpc.java
+
+      projects=$(sed -n "s/^include '\(.*\)'$/\1/p" settings.gradle)
+      for project in bufrnix-runtime bufrnix-helpers com-example-subprojects-common-v1 com-example-subprojects-user-v1; do
+        if ! grep -qx "$project" <<< "$projects"; then
+          echo "settings.gradle does not include $project" >&2
+          exit 1
+        fi
+      done
+
+      dependencies() {
+        sed -n "s/^    api project(':\(.*\)')$/\1/p" "subprojects/$1/build.gradle"
+      }
+
+      mkdir -p "$NIX_BUILD_TOP/classpath"
+      for project in $(for project in $projects; do
+        echo "$project $project"
+        dependencies "$project" | sed "s/$/ $project/"
+      done | tsort); do
+        declare -A excluded=()
+        for file in $(sed -n "s/^sourceSets.main.java.exclude '\(.*\)'$/\1/p" "subprojects/$project/build.gradle"); do
+          excluded[$file]=1
+        done
+        sources=()
+        for file in $(sed -n "s/^sourceSets.main.java.include '\(.*\)'$/\1/p" "subprojects/$project/build.gradle"); do
+          [ -f "$file" ] && [ -z "''${excluded[$file]:-}" ] && sources+=("$file")
+        done
+        unset excluded
+
+        # api dependencies are transitive
+        project_classpath="$NIX_BUILD_TOP/classes/$project"
+        for dependency in $(dependencies "$project"); do
+          project_classpath="$project_classpath:$(cat "$NIX_BUILD_TOP/classpath/$dependency")"
+        done
+        echo "$project_classpath" > "$NIX_BUILD_TOP/classpath/$project"
+
+        echo "Compiling subproject $project (''${#sources[@]} files)"
+        if [ ''${#sources[@]} -eq 0 ]; then
+          echo "Subproject $project has no sources" >&2
+          exit 1
+        fi
+        javac --release 17 -encoding UTF-8 -proc:none -nowarn -implicit:none \
+          -classpath "$project_classpath:${classpath}" \
+          -d "$NIX_BUILD_TOP/classes/$project" "''${sources[@]}"
+      done
+
+      runHook postBuild
+    '';
+
+    installPhase = ''
+      touch $out
+    '';
+  }
@@ -18,13 +18,13 @@ with lib; let
         #!/usr/bin/env sh
         # Wrapper script for Connect Kotlin plugin
         if [ -n "$CONNECT_KOTLIN_JAR" ]; then
-          ${cfg.jdk}/bin/java -jar "$CONNECT_KOTLIN_JAR" "$@"
+          ${cfg.pluginHost.runJar ''"$CONNECT_KOTLIN_JAR"''}
         else
-          ${cfg.jdk}/bin/java -jar ${
+          ${cfg.pluginHost.runJar (
           if cfg.connectKotlinJar != null
           then cfg.connectKotlinJar
           else ".bufrnix-cache/protoc-gen-connect-kotlin.jar"
-        } "$@"
+        )}
         fi
       ''
     else null;
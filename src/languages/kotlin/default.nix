@@ -11,6 +11,22 @@ with lib; let
   kotlinOutputPath = cfg.kotlinOutputPath;
   kotlinOptions = cfg.options;
 
+  # Warm JVM host shared by the JAR-based plugins
+  pluginHostCfg = cfg.pluginHost or {enable = false;};
+  pluginHostPackage = pkgs.callPackage ../../packages/bufrnix-plugin-host {jdk = cfg.jdk;};
+  pluginHost = {
+    # Shell command running a plugin JAR, through the host when enabled
+    runJar = jar:
+      if pluginHostCfg.enable
+      then ''
+        ${optionalString ((pluginHostCfg.socket or null) != null) ''
+          export BUFRNIX_PLUGIN_HOST_SOCKET="''${BUFRNIX_PLUGIN_HOST_SOCKET:-${pluginHostCfg.socket}}"
+        ''}
+        export BUFRNIX_PLUGIN_HOST_IDLE_TIMEOUT="''${BUFRNIX_PLUGIN_HOST_IDLE_TIMEOUT:-${toString (pluginHostCfg.idleTimeout or 300)}}"
+        exec ${pluginHostPackage}/bin/bufrnix-plugin-client ${cfg.jdk}/bin/java ${jar}''
+      else ''${cfg.jdk}/bin/java -jar ${jar} "$@"'';
+  };
+
   # Import Kotlin-specific sub-modules
   grpcModule = import ./grpc.nix {
     inherit pkgs lib;
@@ -20,6 +36,7 @@ with lib; let
         javaOutputPath = javaOutputPath;
         kotlinOutputPath = kotlinOutputPath;
         jdk = cfg.jdk;
+        inherit pluginHost;
         grpcKotlinJar = cfg.grpc.grpcKotlinJar or null;
         grpcKotlinVersion = cfg.grpc.grpcKotlinVersion or "1.4.2";
         grpcJavaJar = cfg.grpc.grpcJavaJar or null;
@@ -35,16 +52,30 @@ with lib; let
         javaOutputPath = javaOutputPath;
         kotlinOutputPath = kotlinOutputPath;
         jdk = cfg.jdk;
+        inherit pluginHost;
         connectKotlinJar = cfg.connect.connectKotlinJar or null;
         connectVersion = cfg.connect.connectVersion or "0.7.3";
       };
   };
 
+  # Native-image metadata for the generated Java classes
+  nativeImageModule = import ../java/native-image.nix {
+    inherit pkgs lib;
+    cfg =
+      (cfg.nativeImage or {enable = false;})
+      // {
+        outputPath = javaOutputPath;
+        name = "kotlin";
+        grpc = cfg.grpc.enable or false;
+      };
+  };
+
   # Combine all sub-modules
   combineModuleAttrs = attr:
     concatLists (catAttrs attr [
       grpcModule
       connectModule
+      nativeImageModule
     ]);
 in {
   # Runtime dependencies for Kotlin code generation
@@ -191,5 +222,6 @@ in {
     + concatStrings (catAttrs "generateHooks" [
       grpcModule
       connectModule
+      nativeImageModule
     ]);
 }
@@ -18,13 +18,13 @@ with lib; let
         #!/usr/bin/env sh
         # Wrapper script for gRPC Kotlin plugin JAR
         if [ -n "$GRPC_KOTLIN_JAR" ]; then
-          ${cfg.jdk}/bin/java -jar "$GRPC_KOTLIN_JAR" "$@"
+          ${cfg.pluginHost.runJar ''"$GRPC_KOTLIN_JAR"''}
         else
-          ${cfg.jdk}/bin/java -jar ${
+          ${cfg.pluginHost.runJar (
           if cfg.grpcKotlinJar != null
           then cfg.grpcKotlinJar
           else ".bufrnix-cache/protoc-gen-grpc-kotlin.jar"
-        } "$@"
+        )}
         fi
       ''
     else null;
@@ -51,6 +51,32 @@ with lib; {
         default = "";
         description = "Path to debug log file. If empty, logs to stdout";
       };
+
+      timing = {
+        enable = mkOption {
+          type = types.bool;
+          default = false;
+          description = ''
+            Write a JSON timing report after each run with the wall time of file
+            discovery, initHooks, protoc, generateHooks and the other stages, plus
+            proto and output file counts, for every language and output path.
+            Also enabled by debug verbosity 3 (TRACE).
+          '';
+        };
+
+        reportFile = mkOption {
+          type = types.str;
+          default = ".bufrnix-cache/timing.json";
+          description = "Path of the JSON timing report";
+        };
+
+        foldedFile = mkOption {
+          type = types.nullOr types.str;
+          default = null;
+          description = "Also write the stage timings as folded stacks (for flamegraph.pl or speedscope) to this path";
+          example = ".bufrnix-cache/timing.folded";
+        };
+      };
     };
 
     # protoc options
@@ -72,6 +98,116 @@ with lib; {
         default = [];
         description = "Specific proto files to compile (leave empty to compile all)";
       };
+
+      jobs = mkOption {
+        type = types.ints.positive;
+        default = 1;
+        description = ''
+          Maximum number of language/outputPath protoc jobs to run at the same time.
+          With 1, jobs run sequentially and log to the console. With more than 1,
+          each job logs to its own file in protoc.logDirectory and the first
+          failing job stops the whole run.
+        '';
+        example = 4;
+      };
+
+      logDirectory = mkOption {
+        type = types.str;
+        default = ".bufrnix-cache/logs";
+        description = "Directory receiving one log file per job when protoc.jobs is greater than 1";
+      };
+
+      multiOutputMode = mkOption {
+        type = types.enum ["regenerate" "copy" "hardlink" "reflink" "symlink"];
+        default = "regenerate";
+        description = ''
+          How languages with a list of output paths populate them. "regenerate" runs
+          protoc once per output path. The other modes run protoc once into the first
+          output path and fill the remaining paths from it by copying, hardlinking,
+          reflinking (copy-on-write where supported) or symlinking the generated files.
+          Only the files protoc wrote and the sources hooks register are mirrored;
+          files that are no longer generated are removed from the remaining paths.
+        '';
+        example = "hardlink";
+      };
+
+      descriptorSet = {
+        enable = mkOption {
+          type = types.bool;
+          default = false;
+          description = ''
+            Parse all proto files once into a FileDescriptorSet (written with
+            --include_imports to protoc.cache.directory) and let every language
+            job read it through --descriptor_set_in instead of re-parsing the sources.
+          '';
+        };
+      };
+
+      mergeInvocations = {
+        enable = mkOption {
+          type = types.bool;
+          default = false;
+          description = ''
+            Run languages (and output paths) that compile the same proto files in a
+            single protoc invocation with all of their --*_out flags, so the files
+            are parsed once and protoc drives the plugins concurrently. Jobs are only
+            merged when their plugins cannot interfere: a generator shared by two jobs
+            must get identical --*_opt flags and the same --plugin executable.
+          '';
+        };
+      };
+
+      writeIfChanged = {
+        enable = mkOption {
+          type = types.bool;
+          default = false;
+          description = ''
+            Let protoc generate into a staging directory under protoc.cache.directory
+            and only move files whose bytes changed into the output paths, so unchanged
+            files keep their mtimes and incremental Java/Kotlin builds only recompile
+            real changes. Files generated by the previous run but no longer produced
+            are deleted; files bufrnix never generated are left alone.
+          '';
+        };
+      };
+
+      selective = {
+        enable = mkOption {
+          type = types.bool;
+          default = false;
+          description = ''
+            When a job's cache entry is stale only because proto files changed,
+            regenerate just the changed files and the files that transitively
+            import them instead of the whole file set. Requires protoc.cache.enable.
+            Changing plugins or options still regenerates everything.
+          '';
+        };
+
+        excludeLanguages = mkOption {
+          type = types.listOf types.str;
+          default = ["doc" "svg"];
+          description = "Languages always regenerated in full because their plugins combine all files into shared outputs";
+        };
+      };
+
+      cache = {
+        enable = mkOption {
+          type = types.bool;
+          default = false;
+          description = ''
+            Skip protoc jobs whose inputs are unchanged since the last successful run.
+            The hash covers the proto files and everything they transitively import,
+            the include directories, the plugin store paths and the language options.
+            Set BUFRNIX_NO_CACHE=1 to force a full regeneration.
+          '';
+        };
+
+        directory = mkOption {
+          type = types.str;
+          default = ".bufrnix-cache";
+          description = "Directory holding the cache manifest (manifest.json) and per-job state";
+        };
+      };
     };
 
     # Language options
@@ -1136,6 +1272,12 @@ with lib; {
           description = "JDK package to use";
         };
 
+        lite = mkOption {
+          type = types.bool;
+          default = false;
+          description = "Generate code for the protobuf-javalite runtime (--java_out=lite:) and use the lite runtime and gRPC stubs in the generated build files";
+        };
+
         grpc = {
           enable = mkOption {
             type = types.bool;
@@ -1154,6 +1296,52 @@ with lib; {
             default = [];
             description = "Options to pass to the gRPC Java plugin";
           };
+
+          virtualThreads = mkOption {
+            type = types.bool;
+            default = false;
+            description = ''
+              Generate BufrnixGrpcServer, whose configure(ServerBuilder) runs every server call
+              on a virtual thread (Java 21) instead of grpc-java's default cached thread pool,
+              so blocking handlers do not hold a platform thread each. Falls back to the
+              default pool on older JVMs or with -Dbufrnix.grpc.virtualThreads=false.
+            '';
+          };
+
+          flowControl = mkOption {
+            type = types.bool;
+            default = false;
+            description = ''
+              Generate BufrnixServerStreams, which sends the messages of a server stream from
+              an iterator only while the call is ready (ServerCallStreamObserver.isReady and
+              setOnReadyHandler), optionally paced on a scheduler, so slow clients do not make
+              outbound buffers grow and no handler thread sleeps between messages.
+            '';
+          };
+
+          metrics = mkOption {
+            type = types.bool;
+            default = false;
+            description = ''
+              Generate BufrnixGrpcMetrics, with a server and a client interceptor that record
+              per-method latency and message-size histograms, in-flight calls and status codes
+              without locks. Snapshots are available in process and as Prometheus text from
+              an optional /metrics endpoint.
+            '';
+          };
+
+          zeroCopy = mkOption {
+            type = types.bool;
+            default = false;
+            description = ''
+              Generate BufrnixZeroCopyMarshaller and make the generated *Grpc method
+              descriptors use it instead of ProtoUtils.marshaller. It parses messages from the
+              transport's ByteBuffers (HasByteBuffer) without first copying them into a byte
+              array, and with its server interceptor lets bytes fields alias those buffers for
+              the duration of the call. With benchmarks.enable, MarshallerBenchmark compares
+              it against ProtoUtils.marshaller.
+            '';
+          };
         };
 
         protovalidate = {
@@ -1174,6 +1362,121 @@ with lib; {
             default = [];
             description = "Options to pass to the protovalidate Java plugin";
           };
+
+          compile = mkOption {
+            type = types.bool;
+            default = false;
+            description = ''
+              Compile buf.validate rules into a <Message>Validator class per message, with
+              no reflection or CEL evaluation at runtime. Supports the standard scalar,
+              string, bytes, enum, repeated, map, oneof and message rules and CEL rules on
+              plain fields; any other rule fails the generation.
+            '';
+          };
+
+          warmup = mkOption {
+            type = types.bool;
+            default = false;
+            description = ''
+              Generate BufrnixValidation, whose warmUp() compiles the rules of every generated
+              message into a shared protovalidate Validator at startup and reports the time
+              taken per message type. Enables the BufrnixDescriptors bootstrap it builds on.
+            '';
+          };
+
+          batch = mkOption {
+            type = types.bool;
+            default = false;
+            description = ''
+              Generate BufrnixBatchValidation, which validates lists and streams of messages
+              in parallel on an Executor (the common ForkJoinPool by default), reports
+              violations by element index and can stop after a number of violations.
+            '';
+          };
+        };
+
+        subprojects = {
+          enable = mkOption {
+            type = types.bool;
+            default = false;
+            description = "Write a multi-project Gradle/Maven build with one subproject per Java package, depending on each other along proto imports";
+          };
+        };
+
+        nativeImage = {
+          enable = mkOption {
+            type = types.bool;
+            default = false;
+            description = "Write GraalVM native-image reflection (and, with gRPC, resource) metadata for the generated classes to META-INF/native-image/bufrnix/java in the output path";
+          };
+        };
+
+        descriptors = {
+          enable = mkOption {
+            type = types.bool;
+            default = false;
+            description = "Generate a BufrnixDescriptors class that eagerly initializes every generated file descriptor and exposes shared ExtensionRegistry and TypeRegistry instances";
+          };
+
+          package = mkOption {
+            type = types.str;
+            default = "bufrnix";
+            description = "Java package of the generated BufrnixDescriptors class";
+          };
+        };
+
+        benchmarks = {
+          enable = mkOption {
+            type = types.bool;
+            default = false;
+            description = "Write a JMH benchmark project to <outputPath>/benchmarks with codec benchmarks for every generated message";
+          };
+        };
+
+        jar = {
+          enable = mkOption {
+            type = types.bool;
+            default = false;
+            description = "Compile the generated Java code into a jar derivation (mkBufrnixDerivations only, exposed as `jars.java`)";
+          };
+
+          name = mkOption {
+            type = types.str;
+            default = "generated-protos";
+            description = "Base name of the compiled jar";
+          };
+
+          version = mkOption {
+            type = types.str;
+            default = "1.0.0";
+            description = "Version of the compiled jar, part of its file name";
+          };
+
+          release = mkOption {
+            type = types.int;
+            default = 17;
+            description = "Java release to compile for (javac --release)";
+          };
+
+          appCds = mkOption {
+            type = types.bool;
+            default = false;
+            description = "Also dump an AppCDS archive of the jar after a training run over every generated class (exposed as `jars.java.appCds`)";
+          };
+
+          classpath = mkOption {
+            type = types.nullOr (types.listOf (types.either types.package types.path));
+            default = null;
+            description = "Jars to compile against. If null, uses pinned protobuf-java 4.31.1 (protobuf-javalite with lite), grpc-java 1.60.0 with gRPC enabled and protovalidate-java 0.13.0 with protovalidate enabled from Maven Central.";
+            example = literalExpression ''
+              [
+                (pkgs.fetchurl {
+                  url = "https://repo1.maven.org/maven2/com/google/protobuf/protobuf-java/4.31.1/protobuf-java-4.31.1.jar";
+                  hash = "sha256-1g3+fGig04okjMqWkk8oncfhlmqIfufK45dwGvCFda4=";
+                })
+              ]
+            '';
+          };
         };
       };
 
@@ -1996,6 +2299,45 @@ with lib; {
             description = "Generate Connect client configuration helper";
           };
         };
+
+        nativeImage = {
+          enable = mkOption {
+            type = types.bool;
+            default = false;
+            description = "Write GraalVM native-image reflection (and, with gRPC, resource) metadata for the generated classes to META-INF/native-image/bufrnix/kotlin in javaOutputPath";
+          };
+        };
+
+        # Warm JVM host for the JAR-based plugins
+        pluginHost = {
+          enable = mkOption {
+            type = types.bool;
+            default = false;
+            description = ''
+              Run the gRPC and Connect Kotlin plugin JARs inside a long-lived JVM instead
+              of starting `java -jar` for every protoc invocation. protoc calls a thin
+              client that forwards the CodeGeneratorRequest over a Unix socket; the host
+              is started on first use and falls back to `java -jar` if it is unavailable.
+            '';
+          };
+
+          idleTimeout = mkOption {
+            type = types.ints.positive;
+            default = 300;
+            description = "Seconds without plugin requests after which the host exits";
+          };
+
+          socket = mkOption {
+            type = types.nullOr types.str;
+            default = null;
+            description = ''
+              Unix socket path of the host. Defaults to a per-JDK socket in $XDG_RUNTIME_DIR,
+              or in a directory /tmp/bufrnix-plugin-host-<uid> only the user can enter. The
+              directory must belong to the user and be closed to writes by other users.
+            '';
+            example = ".bufrnix-cache/plugin-host.sock";
+          };
+        };
       };
 
       # C language options
@@ -8,6 +8,12 @@ with pkgs.lib; let
   # Import our modules
   optionsDef = import ./bufrnix-options.nix {inherit (pkgs) lib;};
   debug = import ./utils/debug.nix {inherit (pkgs) lib;};
+  jobs = import ./utils/jobs.nix {inherit (pkgs) lib;};
+  cache = import ./utils/cache.nix {inherit (pkgs) lib;};
+  outputs = import ./utils/outputs.nix {inherit (pkgs) lib;};
+  descriptors = import ./utils/descriptors.nix {inherit (pkgs) lib;};
+  selective = import ./utils/selective.nix {inherit (pkgs) lib;};
+  timing = import ./utils/timing.nix {inherit (pkgs) lib;};
 
   /* Extract default values from option definitions recursively.
   
@@ -233,6 +239,13 @@ with pkgs.lib; let
        * protocPlugins: protoc command-line plugin arguments
        * initHooks: Shell commands run before generation
        * generateHooks: Shell commands run after generation
+       * outputHooks: Shell commands run on protoc's output before it is synced,
+         with $bufrnix_protoc_out set to the directory protoc wrote outputPath into
+       * fanOutPaths: Additional output paths populated from outputPath
+     
+     When protoc.multiOutputMode is not "regenerate", only the first output
+     path gets a command; the remaining paths are listed in its fanOutPaths
+     and filled from the generated tree instead of running protoc again.
      
      Type: generateProtocCommands :: [{ language :: String; commands :: [Command]; }]
   */
@@ -246,8 +259,9 @@ with pkgs.lib; let
           langCfg = cfg.languages.${language};
           module = loadLanguageModule language;
           outputPaths = normalizeOutputPath langCfg.outputPath;
+          fanOut = cfg.protoc.multiOutputMode != "regenerate";
 
-          # Generate a command for each output path
+          # Generate a command for each output path (or only the first when fanning out)
           pathCommands =
             map (
               outputPath: let
@@ -276,9 +290,21 @@ with pkgs.lib; let
                 protocPlugins = modifiedModule.protocPlugins or [];
                 initHooks = modifiedModule.initHooks or "";
                 generateHooks = modifiedModule.generateHooks or "";
+                outputHooks = let
+                  hook = modifiedModule.outputHooks or "";
+                in
+                  optional (hook != "") {inherit outputPath hook;};
+                fanOutPaths =
+                  if fanOut
+                  then tail outputPaths
+                  else [];
               }
             )
-            outputPaths;
+            (
+              if fanOut
+              then [(head outputPaths)]
+              else outputPaths
+            );
         in {
           inherit language;
           commands = pathCommands;
@@ -287,6 +313,556 @@ with pkgs.lib; let
       enabledLanguages;
   in
     languageCommands;
+
+  /* Flatten the language commands into independent, named protoc jobs.
+
+     Every language/outputPath pair becomes one job whose name is a valid
+     shell identifier, so it can be rendered as a shell function and
+     scheduled sequentially or in parallel.
+
+     Besides the command attributes, every job carries:
+     - languages: Languages generated by the job
+     - fileLanguage: Language whose file selection the job uses
+     - outputPaths: Directories protoc writes into
+     - fanOuts: Additional output paths populated from each generated tree
+
+     Type: languageJobs :: [Command // { language :: String; name :: String; ... }]
+
+     Example:
+       map (job: job.name) languageJobs
+       => ["go_0" "java_0" "java_1"]
+  */
+  languageJobs =
+    concatMap (
+      langCmd:
+        imap0 (index: pathCmd:
+          pathCmd
+          // {
+            inherit (langCmd) language;
+            name = "${replaceStrings ["-"] ["_"] langCmd.language}_${toString index}";
+            languages = [langCmd.language];
+            fileLanguage = langCmd.language;
+            outputPaths = [pathCmd.outputPath];
+            fanOuts = [
+              {
+                source = pathCmd.outputPath;
+                targets = pathCmd.fanOutPaths;
+              }
+            ];
+          })
+        langCmd.commands
+    )
+    generateProtocCommands;
+
+  /* Collect the generator outputs, option flags and plugin paths of a job.
+
+     Type: pluginFlags :: Job -> { outputs :: [[String]]; options :: [[String]]; plugins :: [[String]]; }
+
+     Example:
+       pluginFlags { protocPlugins = ["--java_out=gen/java" "--java_opt=lite"]; }
+       => { outputs = [["java" null "gen/java"]]; options = [["java" "lite"]]; plugins = []; }
+  */
+  pluginFlags = job: let
+    matching = regex:
+      concatMap (plugin: let
+        parsed = builtins.match regex plugin;
+      in
+        optional (parsed != null) parsed)
+      job.protocPlugins;
+  in {
+    outputs = matching "--([A-Za-z0-9_-]+)_out=([^:]*:)?(.*)";
+    options = matching "--([A-Za-z0-9_-]+)_opt=(.*)";
+    plugins = matching "--plugin=protoc-gen-([^=]+)=(.*)";
+  };
+
+  /* Whether two jobs can share one protoc invocation.
+
+     protoc applies --X_opt flags to every --X_out of generator X and maps
+     each generator name to a single plugin executable. Jobs sharing a
+     generator must therefore pass it the same options and name the same
+     plugin, and must not send it into the same directory with different
+     flags.
+
+     Type: jobsCompatible :: Job -> Job -> Bool
+  */
+  jobsCompatible = a: b: let
+    flagsA = pluginFlags a;
+    flagsB = pluginFlags b;
+    valuesFor = flags: generator: sort lessThan (map last (filter (flag: head flag == generator) flags));
+    generatorsOf = flags: unique (map head flags.outputs);
+    shared = filter (generator: elem generator (generatorsOf flagsB)) (generatorsOf flagsA);
+    outputsClash =
+      any (outA:
+        any (outB: head outA == head outB && last outA == last outB && outA != outB) flagsB.outputs)
+      flagsA.outputs;
+  in
+    all (generator: valuesFor flagsA.options generator == valuesFor flagsB.options generator) shared
+    && all (plugin: let
+      pathsB = valuesFor flagsB.plugins (head plugin);
+    in
+      pathsB == [] || pathsB == [(last plugin)])
+    flagsA.plugins
+    && !outputsClash;
+
+  /* Combine compatible jobs into a single job running one protoc invocation.
+
+     Init hooks of all members run before protoc and generate hooks after
+     it, in job order. The merged job is named after its members.
+
+     Type: mergeJobs :: [Job] -> Job
+  */
+  mergeJobs = members: let
+    languages = unique (concatMap (job: job.languages) members);
+    outputPaths = concatMap (job: job.outputPaths) members;
+  in
+    if length members == 1
+    then head members
+    else {
+      name = concatMapStringsSep "__" (job: job.name) members;
+      language = concatStringsSep "+" languages;
+      inherit languages outputPaths;
+      fileLanguage = (head members).fileLanguage;
+      outputPath = concatStringsSep "," outputPaths;
+      fanOuts = concatMap (job: job.fanOuts) members;
+      runtimeInputs = concatMap (job: job.runtimeInputs) members;
+      protocPlugins = unique (concatMap (job: job.protocPlugins) members);
+      initHooks = concatMapStringsSep "\n" (job: job.initHooks) members;
+      generateHooks = concatMapStringsSep "\n" (job: job.generateHooks) members;
+      outputHooks = concatMap (job: job.outputHooks) members;
+    };
+
+  /* Group the language jobs into the protoc invocations to run.
+
+     With protoc.mergeInvocations.enable, jobs over the same proto files
+     (and with the same selective regeneration setting) are merged into one
+     invocation whenever jobsCompatible allows it, so the files are parsed
+     once and protoc runs the plugins of the group concurrently. Otherwise
+     every language job runs its own protoc.
+
+     Type: protocJobs :: [Job]
+
+     Example:
+       map (job: job.name) protocJobs
+       => ["go_0" "java_0__kotlin_0"]
+  */
+  protocJobs = let
+    groupKey = job:
+      builtins.toJSON {
+        files = sort lessThan (unique (getFilesForLanguage job.fileLanguage cfg.languages.${job.fileLanguage} cfg));
+        selective = all selectiveFor job.languages;
+      };
+    place = groups: job:
+      if groups == []
+      then [
+        {
+          key = groupKey job;
+          members = [job];
+        }
+      ]
+      else let
+        group = head groups;
+      in
+        if group.key == groupKey job && all (jobsCompatible job) group.members
+        then [(group // {members = group.members ++ [job];})] ++ tail groups
+        else [group] ++ place (tail groups) job;
+  in
+    if cfg.protoc.mergeInvocations.enable
+    then map (group: mergeJobs group.members) (foldl' place [] languageJobs)
+    else languageJobs;
+
+  /* Render the shell code collecting a language's proto files into lang_proto_files.
+
+     Uses the language's files/additionalFiles when set, otherwise falls back
+     to searching protoc.sourceDirectories (or the root) for .proto files.
+
+     Type: renderFileDiscovery :: String -> String
+  */
+  renderFileDiscovery = language: let
+    # Get the language configuration
+    langConfig = cfg.languages.${language};
+    # Compute files for this language
+    languageFiles = getFilesForLanguage language langConfig cfg;
+  in
+    if (languageFiles == [])
+    then
+      # Fallback to finding files from source directories
+      if (cfg.protoc.sourceDirectories == [])
+      then ''
+        # Find all proto files from root
+        lang_proto_files=$(find "${cfg.root}" -name "*.proto" -type f)
+      ''
+      else ''
+        # Find proto files from specified directories
+        ${concatMapStrings (dir: ''
+            lang_proto_files="$lang_proto_files $(find "${dir}" -name "*.proto" -type f)"
+          '')
+          cfg.protoc.sourceDirectories}
+      ''
+    else ''
+      # Use computed language-specific files
+      lang_proto_files="${concatStringsSep " " languageFiles}"
+    '';
+
+  # Per-stage timing report, also produced at TRACE verbosity
+  timingEnabled = cfg.debug.timing.enable || (cfg.debug.enable && cfg.debug.verbosity >= 3);
+
+  /* Shell code closing a timing stage of a job, or nothing without timing.
+
+     Type: timingMark :: String -> String -> String
+  */
+  timingMark = name: stage: optionalString timingEnabled ''
+    bufrnix_timing_mark "${name}" ${stage}
+  '';
+
+  # Shared descriptor set written by the first pipeline stage
+  useDescriptorSet = cfg.protoc.descriptorSet.enable;
+  descriptorSetPath = "${cfg.protoc.cache.directory}/descriptors.binpb";
+
+  /* Render the pipeline stage that parses every proto file once.
+
+     Collects the files of all enabled languages, writes them (with their
+     imports) into a single FileDescriptorSet and reports how long parsing
+     took. With the cache enabled the set is only rebuilt when one of its
+     inputs changed.
+
+     Type: renderDescriptorStage :: [String] -> String
+  */
+  renderDescriptorStage = enabledLanguages: let
+    staticHash = cache.staticHash {
+      inherit (cfg.protoc) includeDirectories sourceDirectories;
+      protoc = "${pkgs.protobuf}";
+    };
+  in ''
+    local lang_proto_files all_proto_files="" stage_started
+    ${optionalString timingEnabled "bufrnix_timing_start"}
+    ${concatMapStrings (language: ''
+        lang_proto_files=""
+        ${renderFileDiscovery language}
+        all_proto_files="$all_proto_files $lang_proto_files"
+      '')
+      enabledLanguages}
+    all_proto_files=$(tr -s ' ' '\n' <<< "$all_proto_files" | sed '/^$/d' | sort -u | tr '\n' ' ')
+    ${timingMark "descriptors" "discovery"}
+    ${optionalString cfg.protoc.cache.enable ''
+
+      local cache_hash
+      cache_hash=$(bufrnix_cache_hash descriptors "${staticHash}" "$all_proto_files")
+      if bufrnix_cache_fresh descriptors "$cache_hash"; then
+        echo "Reusing descriptor set ${descriptorSetPath}: inputs unchanged"
+        ${optionalString timingEnabled ''
+        bufrnix_timing_mark descriptors cacheCheck
+        bufrnix_timing_value descriptors status cached
+      ''}
+        return 0
+      fi
+      ${timingMark "descriptors" "cacheCheck"}
+    ''}
+
+    echo "Building descriptor set ${descriptorSetPath}"
+    mkdir -p "$(dirname "${descriptorSetPath}")"
+    stage_started=''${EPOCHREALTIME/[.,]/}
+    eval "$protoc_cmd $base_protoc_args ${descriptors.outArgs descriptorSetPath}${optionalString cfg.protoc.cache.enable " --dependency_out=$bufrnix_cache_dir/jobs/descriptors.d.tmp"} $all_proto_files"
+    echo "Descriptor set built in $(( (''${EPOCHREALTIME/[.,]/} - stage_started) / 1000 )) ms"
+    ${timingMark "descriptors" "protoc"}
+    ${optionalString cfg.protoc.cache.enable ''
+
+      bufrnix_cache_record descriptors "$bufrnix_cache_dir/jobs/descriptors.d.tmp"
+      cache_hash=$(bufrnix_cache_hash descriptors "${staticHash}" "$all_proto_files")
+      bufrnix_cache_store descriptors descriptors "${descriptorSetPath}" "$cache_hash" "${staticHash}"
+      ${timingMark "descriptors" "cacheStore"}
+    ''}
+    ${optionalString timingEnabled ''
+      bufrnix_timing_value descriptors protos "$(wc -w <<< "$all_proto_files")"
+    ''}
+  '';
+
+  /* Whether a language's jobs may regenerate only the affected proto files.
+
+     Requires the cache, whose recorded inputs seed the import graph, and
+     skips languages listed in protoc.selective.excludeLanguages because
+     their plugins aggregate all files into shared outputs.
+
+     Type: selectiveFor :: String -> Bool
+  */
+  selectiveFor = language:
+    cfg.protoc.selective.enable
+    && (
+      if cfg.protoc.cache.enable
+      then true
+      else throw "bufrnix: protoc.selective.enable requires protoc.cache.enable"
+    )
+    && !(elem language cfg.protoc.selective.excludeLanguages);
+
+  /* Compute the part of a job's cache fingerprint known at evaluation time.
+
+     Covers everything baked into the generated script for this job: the
+     protoc and plugin store paths, the runtime inputs (plugins such as
+     protoc-gen-go are found on PATH rather than passed with --plugin),
+     plugin flags (and therefore language options), hooks, file selection
+     and include directories. Proto file contents are hashed at runtime by
+     the cache helpers.
+
+     Type: jobStaticHash :: Job -> String
+  */
+  jobStaticHash = job:
+    cache.staticHash {
+      inherit (job) language outputPaths fanOuts protocPlugins initHooks generateHooks outputHooks;
+      runtimeInputs = map toString job.runtimeInputs;
+      inherit (cfg.protoc) includeDirectories sourceDirectories multiOutputMode;
+      files = getFilesForLanguage job.fileLanguage cfg.languages.${job.fileLanguage} cfg;
+      descriptorSet = useDescriptorSet;
+      inherit writeIfChanged;
+      protoc = "${pkgs.protobuf}";
+    };
+
+  # Generate into a staging directory and only replace changed files
+  writeIfChanged = cfg.protoc.writeIfChanged.enable;
+
+  /* Render the shell code executed by a single protoc job.
+
+     Discovers the proto files for the job's language, runs the init hooks,
+     invokes protoc with the job's plugins, runs the output hooks on what
+     protoc wrote and finally runs the generate hooks. The code runs inside
+     the job's shell function, so all scratch variables are declared local.
+
+     Type: renderJob :: Job -> String
+  */
+  renderJob = job: let
+    staged = outputs.stagePlugins job.protocPlugins;
+    protocPlugins =
+      if writeIfChanged
+      then staged.plugins
+      else job.protocPlugins;
+    writtenManifest = "$bufrnix_stage_state/written/${job.name}.files";
+    mark = timingMark job.name;
+    selectiveJob = all selectiveFor job.languages;
+    fanOutTargets = concatMap (fanOut: fanOut.targets) job.fanOuts;
+    quotedOutputPaths = concatMapStringsSep " " (path: ''"${path}"'') job.outputPaths;
+  in ''
+    echo "Generating ${job.language} code for output path: ${job.outputPath}"
+    ${optionalString timingEnabled "bufrnix_timing_start"}
+
+    # Compute proto files for this specific language
+    local lang_proto_files=""
+    local protoc_files=""
+    local protoc_args=""
+    local protoc_started
+    local partial_run=false
+    ${renderFileDiscovery job.fileLanguage}
+
+    echo "Proto files for ${job.language}: $lang_proto_files"
+    ${mark "discovery"}
+    ${optionalString cfg.protoc.cache.enable ''
+
+      # Skip this job when its inputs match the cache manifest
+      local cache_hash
+      cache_hash=$(bufrnix_cache_hash "${job.name}" "${jobStaticHash job}" "$lang_proto_files")
+      if bufrnix_cache_fresh "${job.name}" "$cache_hash"${concatMapStrings (path: '' && [ -d "${path}" ]'') fanOutTargets}; then
+        echo "Skipping ${job.language} for ${job.outputPath}: inputs unchanged"
+        ${optionalString timingEnabled ''
+        bufrnix_timing_mark "${job.name}" cacheCheck
+        bufrnix_timing_value "${job.name}" status cached
+      ''}
+        return 0
+      fi
+      ${mark "cacheCheck"}
+    ''}
+    ${optionalString selectiveJob ''
+
+      # Only regenerate the changed protos and the files importing them
+      local affected_files=""
+      if [ -z "''${BUFRNIX_NO_CACHE:-}" ] && [ "$(bufrnix_cache_static "${job.name}")" = "${jobStaticHash job}" ] && [ -f "$bufrnix_cache_dir/jobs/${job.name}.outputs" ]; then
+        affected_files=$(bufrnix_selective_files "${job.name}" "$lang_proto_files")
+      fi
+      if [ -n "$affected_files" ]; then
+        echo "Regenerating ${job.language} only for affected files: $affected_files"
+        partial_run=true
+        ${optionalString timingEnabled ''bufrnix_timing_value "${job.name}" status partial''}
+      fi
+      ${mark "selective"}
+    ''}
+
+    ${optionalString (fanOutTargets != []) ''
+      # Collect the generated files to mirror into the additional output paths
+      local bufrnix_generated_files
+      bufrnix_generated_files=$(mktemp)
+    ''}
+    # Run initialization hooks for this path
+    ${job.initHooks}
+    ${mark "initHooks"}
+
+    # Create directory for this output path
+    mkdir -p ${quotedOutputPaths}
+
+    # Build protoc command for this specific output path
+    ${
+      if useDescriptorSet
+      then ''
+        # Read the shared descriptor set instead of parsing the sources again
+        protoc_args="--descriptor_set_in=${descriptorSetPath} $nanopb_opts"
+        protoc_files=$(bufrnix_import_paths "$lang_proto_files")
+        if [ "$partial_run" = true ]; then
+          protoc_files=$(bufrnix_import_paths "$affected_files")
+        fi
+      ''
+      else ''
+        protoc_args="$base_protoc_args $nanopb_opts"
+        protoc_files="$lang_proto_files"
+        if [ "$partial_run" = true ]; then
+          protoc_files="$affected_files"
+        fi
+      ''
+    }
+    ${optionalString writeIfChanged ''
+      # Let protoc write into staging directories, synced below
+      local bufrnix_stage_root="$bufrnix_stage_state/staging/${job.name}"
+      rm -rf "$bufrnix_stage_root"
+      ${concatMapStrings (dir: ''
+          mkdir -p "${dir}"
+        '')
+        (attrValues staged.targets)}
+    ''}
+    ${concatMapStrings (plugin: ''
+        protoc_args="$protoc_args ${plugin}"
+      '')
+      protocPlugins}
+
+    ${optionalString cfg.protoc.cache.enable (
+      if useDescriptorSet
+      then ''
+        # protoc cannot write --dependency_out with --descriptor_set_in; track outputs by mtime
+        touch "$bufrnix_cache_dir/jobs/${job.name}.started"
+      ''
+      else ''
+        # Record the transitive inputs and the outputs of this invocation
+        protoc_args="$protoc_args --dependency_out=$bufrnix_cache_dir/jobs/${job.name}.d.tmp"
+      ''
+    )}
+
+    ${optionalString (fanOutTargets != [] && !writeIfChanged) ''
+      local protoc_marker
+      protoc_marker=$(mktemp)
+    ''}
+    # Execute protoc for this output path with language-specific files
+    protoc_started=''${EPOCHREALTIME/[.,]/}
+    eval "$protoc_cmd $protoc_args $protoc_files"
+    echo "protoc for ${job.language} (${job.outputPath}) finished in $(( (''${EPOCHREALTIME/[.,]/} - protoc_started) / 1000 )) ms"
+    ${optionalString (fanOutTargets != [] && !writeIfChanged) ''
+      # protoc wrote straight into the output paths; its files are the ones newer than the marker
+      find ${concatMapStringsSep " " (fanOut: ''"${fanOut.source}"'') job.fanOuts} -type f -newer "$protoc_marker" >> "$bufrnix_generated_files"
+      rm -f "$protoc_marker"
+    ''}
+    ${mark "protoc"}
+    ${optionalString (job.outputHooks != []) ''
+
+      # Post-process protoc's output before it is synced, so rewritten files compare equal
+      local bufrnix_protoc_out
+      ${concatMapStrings (outputHook: ''
+          bufrnix_protoc_out="${
+            if writeIfChanged && hasAttr outputHook.outputPath staged.targets
+            then staged.targets.${outputHook.outputPath}
+            else outputHook.outputPath
+          }"
+          ${outputHook.hook}
+        '')
+        job.outputHooks}
+      ${mark "outputHooks"}
+    ''}
+    ${optionalString writeIfChanged ''
+
+      # Replace only the files whose content changed
+      local staged_files
+      staged_files=$(mktemp)
+      ${concatStrings (mapAttrsToList (target: dir: ''
+          bufrnix_stage_sync "${dir}" "${target}" "$staged_files"
+        '')
+        staged.targets)}
+      bufrnix_stage_finish "${job.name}" "$staged_files" "$partial_run"
+      ${optionalString (fanOutTargets != []) ''
+        cat "${writtenManifest}" >> "$bufrnix_generated_files"
+      ''}
+      ${mark "sync"}
+    ''}
+
+    # Run generation hooks for this path
+    ${job.generateHooks}
+    ${mark "generateHooks"}
+    ${optionalString (fanOutTargets != []) ''
+
+      # Mirror the generated files into the additional output paths
+      ${concatMapStrings (fanOut:
+        concatMapStrings (target: ''
+          bufrnix_fan_out "${fanOut.source}" "${target}" "${job.name}/${substring 0 16 (builtins.hashString "sha256" target)}" "$partial_run"
+        '')
+        fanOut.targets)
+      job.fanOuts}
+      rm -f "$bufrnix_generated_files"
+      ${mark "fanOut"}
+    ''}
+    ${optionalString cfg.protoc.cache.enable ''
+
+      # Store the hash of the inputs protoc actually read
+      ${optionalString selectiveJob ''
+        if [ "$partial_run" = true ]; then
+          bufrnix_selective_keep "${job.name}"
+        fi
+      ''}
+      ${
+        if useDescriptorSet
+        then ''
+          cp "$bufrnix_cache_dir/jobs/descriptors.inputs" "$bufrnix_cache_dir/jobs/${job.name}.inputs"
+          ${optionalString (!writeIfChanged) ''
+            find ${quotedOutputPaths} -type f -newer "$bufrnix_cache_dir/jobs/${job.name}.started" > "$bufrnix_cache_dir/jobs/${job.name}.outputs"
+          ''}
+        ''
+        else ''
+          bufrnix_cache_record "${job.name}" "$bufrnix_cache_dir/jobs/${job.name}.d.tmp"
+        ''
+      }
+      ${optionalString writeIfChanged ''
+        # protoc only saw the staging paths; record the synced output files
+        cp "${writtenManifest}" "$bufrnix_cache_dir/jobs/${job.name}.outputs"
+      ''}
+      ${optionalString selectiveJob ''
+        if [ "$partial_run" = true ]; then
+          bufrnix_selective_merge "${job.name}"
+        fi
+      ''}
+      cache_hash=$(bufrnix_cache_hash "${job.name}" "${jobStaticHash job}" "$lang_proto_files")
+      bufrnix_cache_store "${job.name}" "${job.language}" "${job.outputPath}" "$cache_hash" "${jobStaticHash job}"
+      ${optionalString selectiveJob ''
+        bufrnix_selective_snapshot "${job.name}" "$lang_proto_files"
+      ''}
+      ${mark "cacheStore"}
+    ''}
+    ${optionalString timingEnabled ''
+      bufrnix_timing_value "${job.name}" protos "$(wc -w <<< "$protoc_files")"
+      bufrnix_timing_value "${job.name}" outputs "$(find ${quotedOutputPaths} -type f 2>/dev/null | wc -l)"
+    ''}
+  '';
+
+  # Job metadata included in the timing report
+  timingJobs =
+    optionalAttrs useDescriptorSet {
+      descriptors = {
+        language = "descriptors";
+        outputPath = descriptorSetPath;
+        plugins = [];
+      };
+    }
+    // listToAttrs (map (job:
+      nameValuePair job.name {
+        inherit (job) language outputPath;
+        plugins = concatMap (plugin: let
+          parsed = builtins.match "--([A-Za-z0-9_-]+)_out=.*" plugin;
+        in
+          optional (parsed != null) (head parsed))
+        job.protocPlugins;
+      })
+    protocJobs);
+
+  # Names of all cache entries written by this configuration
+  cacheEntryNames = optional useDescriptorSet "descriptors" ++ map (job: job.name) protocJobs;
 in
   pkgs.writeShellApplication {
     name = "bufrnix";
@@ -296,6 +872,22 @@ in
         bash
         protobuf
       ]
+      ++ optionals (cfg.protoc.cache.enable || useDescriptorSet || writeIfChanged || cfg.protoc.multiOutputMode != "regenerate") [
+        coreutils
+      ]
+      ++ optionals (writeIfChanged || cfg.protoc.multiOutputMode != "regenerate") [
+        diffutils
+        findutils
+      ]
+      ++ optionals cfg.protoc.cache.enable [
+        gawk
+        jq
+      ]
+      ++ optionals timingEnabled [
+        coreutils
+        findutils
+        jq
+      ]
       ++ languageRuntimeInputs;
 
     text = ''
@@ -315,67 +907,59 @@ in
         fi
       ''}
 
-      # Generate protoc commands for each unique output path combination
-      ${concatMapStrings (
-          langCmd:
-            concatMapStrings (pathCmd: ''
-              echo "Generating ${langCmd.language} code for output path: ${pathCmd.outputPath}"
-
-              # Compute proto files for this specific language
-              lang_proto_files=""
-              ${
-                let
-                  # Get the language configuration
-                  langConfig = cfg.languages.${langCmd.language};
-                  # Compute files for this language
-                  languageFiles = getFilesForLanguage langCmd.language langConfig cfg;
-                in
-                  if (languageFiles == [])
-                  then
-                    # Fallback to finding files from source directories
-                    if (cfg.protoc.sourceDirectories == [])
-                    then ''
-                      # Find all proto files from root
-                      lang_proto_files=$(find "${cfg.root}" -name "*.proto" -type f)
-                    ''
-                    else ''
-                      # Find proto files from specified directories
-                      ${concatMapStrings (dir: ''
-                          lang_proto_files="$lang_proto_files $(find "${dir}" -name "*.proto" -type f)"
-                        '')
-                        cfg.protoc.sourceDirectories}
-                    ''
-                  else ''
-                    # Use computed language-specific files
-                    lang_proto_files="${concatStringsSep " " languageFiles}"
-                  ''
-              }
-
-              echo "Proto files for ${langCmd.language}: $lang_proto_files"
-
-              # Run initialization hooks for this path
-              ${pathCmd.initHooks}
-
-              # Create directory for this output path
-              mkdir -p "${pathCmd.outputPath}"
+      ${optionalString cfg.protoc.cache.enable ''
+        # Initialize the incremental generation cache
+        ${cache.init cfg.protoc.cache.directory}
+      ''}
+      ${optionalString timingEnabled ''
+        # Measure the stages of every job for the timing report
+        ${timing.init cfg.debug.timing.reportFile}
+      ''}
+      ${optionalString writeIfChanged ''
+        # Stage generated files and only replace the ones that changed
+        ${outputs.stagingInit cfg.protoc.cache.directory}
+      ''}
+      # Let hooks register the source files they write
+      ${outputs.generatedInit}
+      ${optionalString (cfg.protoc.multiOutputMode != "regenerate") ''
+        # Mirror generated files into additional output paths
+        ${outputs.fanOutInit cfg.protoc.multiOutputMode cfg.protoc.cache.directory}
+      ''}
+      ${optionalString cfg.protoc.selective.enable ''
+        # Selective regeneration of changed protos and their importers
+        ${selective.init cfg.protoc.includeDirectories}
+      ''}
 
-              # Build protoc command for this specific output path
-              protoc_args="$base_protoc_args $nanopb_opts"
-              ${concatMapStrings (plugin: ''
-                  protoc_args="$protoc_args ${plugin}"
-                '')
-                pathCmd.protocPlugins}
+      ${optionalString useDescriptorSet ''
+        # Parse every proto file once into a shared descriptor set
+        ${descriptors.importPathFunction cfg.protoc.includeDirectories}
+        ${jobs.mkFunction "descriptors" (renderDescriptorStage (unique (map (job: job.fileLanguage) protocJobs)))}
+        bufrnix_job_descriptors
+      ''}
 
-              # Execute protoc for this output path with language-specific files
-              eval "$protoc_cmd $protoc_args $lang_proto_files"
+      # Define one job per language and output path
+      ${concatMapStrings (job: jobs.mkFunction job.name (renderJob job)) protocJobs}
 
-              # Run generation hooks for this path
-              ${pathCmd.generateHooks}
+      ${
+        if cfg.protoc.jobs > 1
+        then ''
+          # Run jobs in parallel (protoc.jobs = ${toString cfg.protoc.jobs})
+          ${jobs.runParallel (map (job: job.name) protocJobs) cfg.protoc.jobs cfg.protoc.logDirectory}
+        ''
+        else ''
+          # Run jobs sequentially
+          ${jobs.runSequential (map (job: job.name) protocJobs)}
+        ''
+      }
 
-            '')
-            langCmd.commands
-        )
-        generateProtocCommands}
+      ${optionalString cfg.protoc.cache.enable ''
+        # Record the hashes of this run in the cache manifest
+        ${cache.writeManifest cacheEntryNames}
+      ''}
+      ${optionalString timingEnabled ''
+        # Write the timing report of this run
+        ${timing.report timingJobs cfg.debug.timing.reportFile cfg.debug.timing.foldedFile}
+      ''}
 
       ${debug.log 1 "Multiple output path code generation completed successfully" cfg}
     '';
@@ -0,0 +1,175 @@
+/* Bufrnix Derivation Output Mode
+
+   Alternative to mkBufrnix that generates code inside the Nix store instead
+   of the working tree. Every enabled language becomes its own derivation
+   over the proto sources only, so `nix build` can run languages in parallel
+   (locally or on remote builders) and substitute unchanged generated code
+   from a binary cache.
+
+   Each language derivation runs the regular bufrnix generator with only
+   that language enabled and installs everything the run created, keeping
+   the relative layout of the working tree (e.g. `$out/gen/java/...`).
+
+   Returns a symlinkJoin of all languages; the individual derivations are
+   available as `passthru.languages.<language>`. With
+   `languages.java.jar.enable`, the generated Java code is also compiled
+   into a jar available as `passthru.jars.java`.
+
+   Type: mkBufrnixDerivations :: { pkgs, self ?, config ?, src } -> Derivation
+
+   Example:
+     generated = mkBufrnixDerivations {
+       inherit pkgs;
+       src = ./.;
+       config.languages = { java.enable = true; go.enable = true; };
+     };
+     => generated.languages.java  # /nix/store/...-bufrnix-java/gen/java/...
+*/
+{
+  pkgs,
+  self ? null,
+  config ? {},
+  src ? null,
+  ...
+}:
+with pkgs.lib; let
+  optionsDef = import ./bufrnix-options.nix {inherit (pkgs) lib;};
+
+  enabledLanguages = attrNames (filterAttrs (_: langCfg: langCfg.enable or false) (config.languages or {}));
+
+  isSourceFile = name: hasSuffix ".proto" name || hasSuffix ".options" name;
+
+  # Only the inputs protoc reads, so unrelated changes keep store paths stable
+  protoSources =
+    if builtins.isPath src
+    then
+      fileset.toSource {
+        root = src;
+        fileset = fileset.fileFilter (file: isSourceFile file.name) src;
+      }
+    else if src != null && (builtins.isString src || src ? outPath)
+    then
+      # Sources already in the store, such as a flake's `self`
+      cleanSourceWith {
+        inherit src;
+        filter = name: type: type == "directory" || isSourceFile name;
+      }
+    else throw "bufrnix: mkBufrnixDerivations requires `src` to be a path (e.g. src = ./.;)";
+
+  /* Turn a directory given as a Nix path into a path relative to `src`.
+
+     The generator runs inside the unpacked sources, and interpolating a
+     Nix path would copy that directory, or the whole working tree, into
+     the store as an input of every language derivation.
+
+     Type: relativeToSrc :: (Path | String) -> String
+  */
+  relativeToSrc = dir:
+    if builtins.isPath dir
+    then let
+      base = toString src;
+      path = toString dir;
+    in
+      if path == base
+      then "."
+      else if hasPrefix "${base}/" path
+      then "./${removePrefix "${base}/" path}"
+      else throw "bufrnix: ${path} is outside of the mkBufrnixDerivations src ${base}"
+    else dir;
+
+  /* Configuration generating a single language.
+
+     The working-tree helpers (cache, staging, timing) are turned off since
+     every build starts from a clean copy of the sources. Debug verbosity
+     is capped below TRACE, which would turn the timing report back on, and
+     directories given as Nix paths are made relative to the sources.
+
+     Type: languageConfig :: String -> AttrSet
+  */
+  languageConfig = language:
+    recursiveUpdate config ({
+        languages = mapAttrs (name: _: {enable = name == language;}) (config.languages or {});
+        protoc =
+          {
+            cache.enable = false;
+            writeIfChanged.enable = false;
+          }
+          // optionalAttrs (config ? protoc.sourceDirectories) {
+            sourceDirectories = map relativeToSrc config.protoc.sourceDirectories;
+          }
+          // optionalAttrs (config ? protoc.includeDirectories) {
+            includeDirectories = map relativeToSrc config.protoc.includeDirectories;
+          };
+        debug = {
+          timing.enable = false;
+          verbosity = min 2 (config.debug.verbosity or 1);
+        };
+      }
+      // optionalAttrs (config ? root) {
+        root = relativeToSrc config.root;
+      });
+
+  mkLanguage = language:
+    pkgs.stdenvNoCC.mkDerivation {
+      pname = "bufrnix-${language}";
+      version = "generated";
+      src = protoSources;
+
+      nativeBuildInputs = [
+        (import ./mkBufrnix.nix {
+          inherit pkgs self;
+          config = languageConfig language;
+        })
+      ];
+
+      buildPhase = ''
+        runHook preBuild
+
+        find . -type f | sort > "$TMPDIR/sources"
+        bufrnix
+
+        runHook postBuild
+      '';
+
+      installPhase = ''
+        runHook preInstall
+
+        # Install everything the generator created, keeping its relative path
+        mkdir -p $out
+        find . -type f -not -path "./.bufrnix-cache/*" | sort | comm -13 "$TMPDIR/sources" - |
+          while read -r file; do
+            cp --parents "$file" $out/
+          done
+
+        runHook postInstall
+      '';
+
+      meta = {
+        description = "Protobuf code generated by bufrnix for ${language}";
+      };
+    };
+
+  languages = genAttrs enabledLanguages mkLanguage;
+
+  # Java settings the jar build reads, with the defaults mkBufrnix applies
+  javaConfig =
+    recursiveUpdate {
+      outputPath = optionsDef.options.languages.java.outputPath.default;
+      jar = mapAttrs (_: option: option.default) optionsDef.options.languages.java.jar;
+    } (config.languages.java or {})
+    // {jdk = config.languages.java.jdk or pkgs.jdk17;};
+
+  jars = optionalAttrs (languages ? java && javaConfig.jar.enable) {
+    java = import ../languages/java/jar.nix {
+      inherit pkgs;
+      inherit (pkgs) lib;
+      cfg = javaConfig;
+      generated = languages.java;
+    };
+  };
+in
+  pkgs.symlinkJoin {
+    name = "bufrnix-generated";
+    paths = attrValues languages;
+    passthru = {inherit languages jars;};
+  }
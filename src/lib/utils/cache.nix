@@ -0,0 +1,141 @@
+/* Bufrnix Incremental Generation Cache
+
+   Shell generators implementing the content-hash cache used to skip protoc
+   jobs whose inputs did not change since the last successful run.
+
+   Every job has a fingerprint made of two parts:
+   - A static part computed by Nix from everything baked into the script:
+     protoc and plugin store paths, plugin flags and options, hooks,
+     include/source directories and the output path.
+   - A runtime part hashing the job's proto file list and the content of
+     every input recorded for the job on the previous run (normally taken
+     from protoc --dependency_out), which covers transitively imported protos.
+
+   Per-job state lives in `<cacheDir>/jobs/`:
+   - `<job>.inputs`: proto files read by the last successful run
+   - `<job>.outputs`: files generated by the last successful run
+   - `<job>.json`: manifest entry of the last successful run
+
+   The resulting hashes are recorded in `<cacheDir>/manifest.json`:
+
+     {
+       "version": 1,
+       "jobs": {
+         "java_0": { "language": "java", "outputPath": "gen/java", "hash": "...", "static": "..." }
+       }
+     }
+
+   Environment Variables:
+   - BUFRNIX_NO_CACHE: Ignore the manifest and regenerate every job
+
+   Type: CacheUtils :: AttrSet
+*/
+{lib, ...}:
+with lib; {
+  /* Compute the static fingerprint of a job at evaluation time.
+
+     Arguments:
+       attrs: Attribute set of everything that affects the job's output
+
+     Type: staticHash :: AttrSet -> String
+
+     Example:
+       staticHash { language = "java"; protocPlugins = ["--java_out=gen/java"]; }
+       => "3f1c..."
+  */
+  staticHash = attrs: builtins.hashString "sha256" (builtins.toJSON attrs);
+
+  /* Shell code initializing the cache and defining its helper functions.
+
+     Arguments:
+       cacheDir: Directory holding manifest.json and per-job state
+
+     Type: init :: String -> String
+  */
+  init = cacheDir: ''
+    bufrnix_cache_dir="${cacheDir}"
+    bufrnix_cache_manifest="$bufrnix_cache_dir/manifest.json"
+    mkdir -p "$bufrnix_cache_dir/jobs"
+    if [ -n "''${BUFRNIX_NO_CACHE:-}" ] || ! jq -e '.version == 1' "$bufrnix_cache_manifest" >/dev/null 2>&1; then
+      echo '{"version": 1, "jobs": {}}' > "$bufrnix_cache_manifest"
+    fi
+
+    # Print the inputs (or outputs) recorded in a protoc --dependency_out file
+    bufrnix_cache_deps() {
+      awk -v side="$2" 'BEGIN { RS = "^$" } {
+        gsub(/\\\n/, " ")
+        split_at = index($0, ": ")
+        part = side == "outputs" ? substr($0, 1, split_at - 1) : substr($0, split_at + 2)
+        count = split(part, items, /[ \t\n]+/)
+        for (i = 1; i <= count; i++) if (items[i] != "") print items[i]
+      }' "$1"
+    }
+
+    # Record a job's inputs and outputs from a protoc --dependency_out file
+    bufrnix_cache_record() {
+      bufrnix_cache_deps "$2" inputs > "$bufrnix_cache_dir/jobs/$1.inputs"
+      bufrnix_cache_deps "$2" outputs > "$bufrnix_cache_dir/jobs/$1.outputs"
+      rm -f "$2"
+    }
+
+    # Hash a job's static fingerprint, its proto files and their recorded inputs
+    bufrnix_cache_hash() {
+      local static_hash="$2" files="$3" inputs="$bufrnix_cache_dir/jobs/$1.inputs"
+      {
+        echo "$static_hash"
+        echo "$nanopb_opts"
+        printf '%s\n' "$files" | tr ' ' '\n' | sed '/^$/d' | sort
+        if [ -f "$inputs" ]; then
+          sort -u "$inputs" | while read -r input; do
+            if [ -f "$input" ]; then
+              sha256sum "$input"
+            else
+              echo "missing $input"
+            fi
+          done
+        fi
+      } | sha256sum | cut -d' ' -f1
+    }
+
+    # Succeed when the manifest hash matches and every recorded output exists
+    bufrnix_cache_fresh() {
+      local job="$1" hash="$2" outputs="$bufrnix_cache_dir/jobs/$1.outputs" output
+      [ -f "$outputs" ] || return 1
+      [ "$(jq -r --arg job "$job" '.jobs[$job].hash // ""' "$bufrnix_cache_manifest")" = "$hash" ] || return 1
+      while read -r output; do
+        [ -e "$output" ] || return 1
+      done < "$outputs"
+    }
+
+    # Print the static fingerprint recorded for a job by the last successful run
+    bufrnix_cache_static() {
+      jq -r --arg job "$1" '.jobs[$job].static // ""' "$bufrnix_cache_manifest"
+    }
+
+    # Record the hashes of a successfully generated job
+    bufrnix_cache_store() {
+      local job="$1" language="$2" output_path="$3" hash="$4" static_hash="$5"
+      jq -n --arg language "$language" --arg outputPath "$output_path" --arg hash "$hash" --arg static "$static_hash" \
+        '{language: $language, outputPath: $outputPath, hash: $hash, static: $static}' > "$bufrnix_cache_dir/jobs/$job.json"
+    }
+  '';
+
+  /* Shell code that rewrites manifest.json from the per-job entries.
+
+     Only the jobs of the current configuration are kept, so removed
+     languages and output paths drop out of the manifest.
+
+     Arguments:
+       names: Job names of the current configuration
+
+     Type: writeManifest :: [String] -> String
+  */
+  writeManifest = names: ''
+    for bufrnix_job in ${concatStringsSep " " names}; do
+      if [ -f "$bufrnix_cache_dir/jobs/$bufrnix_job.json" ]; then
+        jq --arg job "$bufrnix_job" '{($job): .}' "$bufrnix_cache_dir/jobs/$bufrnix_job.json"
+      fi
+    done | jq -s '{version: 1, jobs: (add // {})}' > "$bufrnix_cache_manifest.tmp"
+    mv "$bufrnix_cache_manifest.tmp" "$bufrnix_cache_manifest"
+  '';
+}
@@ -0,0 +1,76 @@
+/* Bufrnix Shared Descriptor Set Utilities
+
+   Shell generators for the optional first pipeline stage that parses the
+   whole proto graph once into a FileDescriptorSet. Later protoc jobs read
+   that set through --descriptor_set_in instead of parsing the sources again.
+
+   protoc identifies files inside a descriptor set by their import path
+   (e.g. "example/v1/user.proto"), so on-disk file names are translated
+   using the configured include directories.
+
+   Type: DescriptorUtils :: AttrSet
+*/
+{lib, ...}:
+with lib; let
+  # Strip a leading "./" and trailing "/" so prefixes compare reliably
+  normalizeDir = dir: let
+    withoutDot =
+      if hasPrefix "./" dir
+      then removePrefix "./" dir
+      else dir;
+  in
+    removeSuffix "/" withoutDot;
+in {
+  /* Shell function translating on-disk proto paths into import paths.
+
+     The first include directory containing a file wins, mirroring how
+     protoc maps files passed on the command line onto --proto_path.
+
+     Arguments:
+       includeDirs: protoc.includeDirectories
+
+     Type: importPathFunction :: [String] -> String
+
+     Example:
+       bufrnix_import_paths "./proto/example/v1/user.proto ./proto/common/v1/types.proto"
+       => "example/v1/user.proto common/v1/types.proto"
+  */
+  importPathFunction = includeDirs: ''
+    bufrnix_import_paths() {
+      local file files import_paths=()
+      read -r -d "" -a files <<< "$1" || true
+      for file in "''${files[@]}"; do
+        file="''${file#./}"
+        ${concatMapStrings (dir: let
+        normalized = normalizeDir dir;
+      in
+        if normalized == "" || normalized == "."
+        then ''
+          import_paths+=("$file")
+          continue
+        ''
+        else ''
+          if [[ "$file" == "${normalized}/"* ]]; then
+            import_paths+=("''${file#"${normalized}/"}")
+            continue
+          fi
+        '')
+      includeDirs}
+        import_paths+=("$file")
+      done
+      echo "''${import_paths[*]}"
+    }
+  '';
+
+  /* protoc arguments that write the shared descriptor set.
+
+     Source info and source-retention options are kept so plugins emit the
+     same comments and option-dependent code as when parsing sources.
+
+     Arguments:
+       path: Output file of the descriptor set
+
+     Type: outArgs :: String -> String
+  */
+  outArgs = path: "--include_imports --include_source_info --retain_options --descriptor_set_out=${path}";
+}
@@ -0,0 +1,125 @@
+/* Bufrnix Job Utilities
+
+   Shell generators for running the per-language/per-outputPath protoc jobs
+   produced by mkBufrnix. Each job is rendered as a shell function and then
+   executed either one after another or through a bounded parallel scheduler.
+
+   Features:
+   - Sequential execution (the historical behaviour, output on the console)
+   - Parallel execution with a configurable job limit
+   - One log file per job when running in parallel
+   - Fail-fast: the first failing job stops the whole run with a non-zero exit
+
+   Type: JobUtils :: AttrSet
+*/
+{lib, ...}:
+with lib; {
+  /* Convert a job name into the shell function that implements it.
+
+     Type: functionName :: String -> String
+
+     Example:
+       functionName "java_0"
+       => "bufrnix_job_java_0"
+  */
+  functionName = name: "bufrnix_job_${name}";
+
+  /* Render a job as a shell function definition.
+
+     Arguments:
+       name: Job name (must be a valid shell identifier fragment)
+       body: Shell code executed by the job
+
+     Type: mkFunction :: String -> String -> String
+  */
+  mkFunction = name: body: ''
+    bufrnix_job_${name}() {
+    ${body}
+    }
+  '';
+
+  /* Generate shell code that runs the given jobs one after another.
+
+     Output stays on the console and the first failing job aborts the
+     script through errexit, exactly like the historical inline script.
+
+     Type: runSequential :: [String] -> String
+  */
+  runSequential = names:
+    concatMapStrings (name: ''
+      bufrnix_job_${name}
+    '')
+    names;
+
+  /* Generate shell code that runs the given jobs with at most `maxJobs`
+     running at the same time.
+
+     Every job runs in its own background subshell with stdout and stderr
+     redirected to `<logDir>/<job>.log`. Job control is enabled while the
+     subshell is forked, so each job leads its own process group together
+     with the protoc and plugin processes it starts. When a job fails, or
+     the run is interrupted, the process groups of the remaining jobs are
+     terminated, the tail of the failing job's log is printed and the
+     script exits with status 1.
+
+     Arguments:
+       names: Job names in submission order
+       maxJobs: Maximum number of concurrently running jobs
+       logDir: Directory receiving one log file per job
+
+     Type: runParallel :: [String] -> Int -> String -> String
+  */
+  runParallel = names: maxJobs: logDir: ''
+    bufrnix_log_dir="${logDir}"
+    mkdir -p "$bufrnix_log_dir"
+
+    declare -A bufrnix_running=()
+
+    # Terminate the process group of every running job, including the
+    # protoc and plugin processes it started, and wait for them to exit
+    bufrnix_stop() {
+      local pid
+      for pid in "''${!bufrnix_running[@]}"; do
+        kill -TERM -- "-$pid" 2>/dev/null || true
+      done
+      wait || true
+      bufrnix_running=()
+    }
+    trap 'echo "Interrupted, stopping jobs" >&2; bufrnix_stop; exit 130' INT TERM
+
+    # Wait for any running job and abort the whole run if it failed
+    bufrnix_reap() {
+      local pid="" job status=0
+      wait -n -p pid || status=$?
+      job="''${bufrnix_running[$pid]}"
+      unset "bufrnix_running[$pid]"
+      if [ "$status" -ne 0 ]; then
+        echo "Job $job failed with status $status (log: $bufrnix_log_dir/$job.log)" >&2
+        tail -n 20 "$bufrnix_log_dir/$job.log" >&2 || true
+        if [ "''${#bufrnix_running[@]}" -gt 0 ]; then
+          echo "Stopping remaining jobs: ''${bufrnix_running[*]}" >&2
+          bufrnix_stop
+        fi
+        exit 1
+      fi
+      echo "Job $job finished (log: $bufrnix_log_dir/$job.log)"
+    }
+
+    for bufrnix_job in ${concatStringsSep " " names}; do
+      while [ "''${#bufrnix_running[@]}" -ge ${toString maxJobs} ]; do
+        bufrnix_reap
+      done
+      echo "Starting job $bufrnix_job"
+      # With job control on, the subshell gets a process group of its own
+      set -m
+      ( "bufrnix_job_$bufrnix_job" ) >"$bufrnix_log_dir/$bufrnix_job.log" 2>&1 &
+      bufrnix_running[$!]="$bufrnix_job"
+      set +m
+    done
+
+    while [ "''${#bufrnix_running[@]}" -gt 0 ]; do
+      bufrnix_reap
+    done
+    trap - INT TERM
+  '';
+}
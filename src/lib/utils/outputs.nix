@@ -0,0 +1,217 @@
+/* Bufrnix Output Utilities
+
+   Shell generators for populating output directories after protoc has run.
+
+   Features:
+   - Fan-out of the generated files into additional output paths by copy,
+     hardlink, reflink or symlink, removing files no longer generated
+   - Write-if-changed staging: protoc writes into a staging directory and
+     only files whose bytes changed replace the files in the output path
+
+   Type: OutputUtils :: AttrSet
+*/
+{lib, ...}:
+with lib; {
+  /* Shell code defining the fan-out helper functions.
+
+     A job collects the files it generated in $bufrnix_generated_files:
+     the output files of protoc, plus whatever its hooks register with
+     `bufrnix_generated`. Only these files are mirrored into the additional
+     output paths, so hand-written sources, project files and anything
+     else living in the first path stay where they are. The files mirrored
+     into every target are listed in `<stateDir>/fanout/<job>/<target>.files`,
+     and files of the previous run that were not generated again are
+     removed from the target.
+
+     Modes:
+       copy: copy the generated files
+       hardlink: hardlink the generated files, copying across filesystems
+       reflink: copy-on-write clones where supported, plain copies otherwise
+       symlink: symlink every generated file back to the source tree
+
+     Arguments:
+       mode: protoc.multiOutputMode (any value but "regenerate")
+       stateDir: protoc.cache.directory
+
+     Type: fanOutInit :: String -> String -> String
+  */
+  fanOutInit = mode: stateDir: let
+    copy = ''cp --remove-destination "$1" "$2"'';
+  in ''
+    bufrnix_fanout_state="${stateDir}/fanout"
+
+    # Mirror one generated file, leaving it alone when it is already up to date
+    bufrnix_fan_out_file() {
+      ${
+      if mode == "copy"
+      then ''cmp -s "$1" "$2" || ${copy}''
+      else if mode == "hardlink"
+      then ''[ "$1" -ef "$2" ] || ln -f "$1" "$2" 2>/dev/null || ${copy}''
+      else if mode == "reflink"
+      then ''cmp -s "$1" "$2" || cp --reflink=auto --remove-destination "$1" "$2"''
+      else if mode == "symlink"
+      then ''[ -L "$2" ] && [ "$1" -ef "$2" ] || ln -sfn "$(realpath "$1")" "$2"''
+      else throw "bufrnix: unsupported multiOutputMode '${mode}'"
+    }
+    }
+
+    # Mirror the generated files below a source tree into a target and drop stale ones
+    bufrnix_fan_out() {
+      local source="$1" target="$2" manifest="$bufrnix_fanout_state/$3.files" partial_run="$4" file files stale
+      echo "Populating $target from $source (${mode})"
+      files=$(mktemp)
+      while IFS= read -r file; do
+        case "$file" in
+          "$source"/*) printf '%s\n' "''${file#"$source"/}" ;;
+        esac
+      done < "$bufrnix_generated_files" | sort -u > "$files"
+      while IFS= read -r file; do
+        [ -f "$source/$file" ] || continue
+        mkdir -p "$(dirname "$target/$file")"
+        bufrnix_fan_out_file "$source/$file" "$target/$file"
+      done < "$files"
+      if [ -f "$manifest" ]; then
+        if [ "$partial_run" = true ]; then
+          # Only part of the files were generated; keep the rest
+          sort -u "$manifest" "$files" -o "$files"
+        else
+          comm -23 <(sort -u "$manifest") "$files" | while IFS= read -r stale; do
+            echo "Removing stale generated file $target/$stale"
+            rm -f "$target/$stale"
+          done
+        fi
+      fi
+      mkdir -p "$(dirname "$manifest")"
+      mv "$files" "$manifest"
+    }
+  '';
+
+  /* Shell code defining `bufrnix_generated`, which hooks call with the
+     paths of the source files they write into an output path so that they
+     are mirrored along with the protoc output. Outside of a job that fans
+     out it does nothing.
+
+     `bufrnix_write_generated <file>` writes its standard input to the file
+     only when the content differs, keeping the mtime of unchanged helpers
+     so incremental builds skip them, and then registers the file with
+     `bufrnix_generated`.
+
+     Type: generatedInit :: String
+  */
+  generatedInit = ''
+    bufrnix_generated() {
+      if [ -n "''${bufrnix_generated_files:-}" ]; then
+        printf '%s\n' "$@" >> "$bufrnix_generated_files"
+      fi
+    }
+
+    bufrnix_write_generated() {
+      local content
+      content=$(mktemp)
+      cat > "$content"
+      if ! cmp -s "$content" "$1"; then
+        cat "$content" > "$1"
+      fi
+      rm -f "$content"
+      bufrnix_generated "$1"
+    }
+  '';
+
+  /* Rewrite the --X_out flags of a job's plugins to point at staging directories.
+
+     Every distinct output directory gets its own staging directory below
+     $bufrnix_stage_root (set per job), so plugins sharing an output
+     directory also share a staging directory. Outputs written directly to
+     archives (.jar, .srcjar, .zip) are not staged.
+
+     Arguments:
+       plugins: The job's protocPlugins
+
+     Type: stagePlugins :: [String] -> { plugins :: [String]; targets :: AttrSet; }
+
+     Example:
+       stagePlugins ["--java_out=lite:gen/java" "--plugin=protoc-gen-x=/nix/store/..."]
+       => {
+         plugins = ["--java_out=lite:$bufrnix_stage_root/0" "--plugin=protoc-gen-x=/nix/store/..."];
+         targets = { "gen/java" = "$bufrnix_stage_root/0"; };
+       }
+  */
+  stagePlugins = plugins: let
+    parse = plugin: builtins.match "(--[A-Za-z0-9_-]+_out=)([^:]*:)?(.*)" plugin;
+    isStaged = plugin: let
+      parsed = parse plugin;
+      target = elemAt parsed 2;
+    in
+      parsed
+      != null
+      && !(elem (elemAt parsed 0) ["--descriptor_set_out=" "--dependency_out="])
+      && !(any (suffix: hasSuffix suffix target) [".jar" ".srcjar" ".zip"]);
+    targetList = unique (map (plugin: elemAt (parse plugin) 2) (filter isStaged plugins));
+    targets = listToAttrs (imap0 (index: target: nameValuePair target "$bufrnix_stage_root/${toString index}") targetList);
+  in {
+    inherit targets;
+    plugins =
+      map (
+        plugin:
+          if isStaged plugin
+          then let
+            parsed = parse plugin;
+            options = elemAt parsed 1;
+          in "${elemAt parsed 0}${optionalString (options != null) options}${targets.${elemAt parsed 2}}"
+          else plugin
+      )
+      plugins;
+  };
+
+  /* Shell code defining the write-if-changed helper functions.
+
+     Per-job state lives in `<stateDir>/`:
+     - `staging/<job>/`: scratch output of the running job
+     - `written/<job>.files`: output files written by the last successful run
+
+     Arguments:
+       stateDir: protoc.cache.directory
+
+     Type: stagingInit :: String -> String
+  */
+  stagingInit = stateDir: ''
+    bufrnix_stage_state="${stateDir}"
+
+    # Move the changed files of a staged tree into its target and list all of them
+    bufrnix_stage_sync() {
+      local staged="$1" target="$2" written="$3" file updated=0 unchanged=0
+      while IFS= read -r -d "" file; do
+        file="''${file#"$staged"/}"
+        if cmp -s "$staged/$file" "$target/$file"; then
+          unchanged=$((unchanged + 1))
+        else
+          mkdir -p "$(dirname "$target/$file")"
+          mv -f "$staged/$file" "$target/$file"
+          updated=$((updated + 1))
+        fi
+        echo "$target/$file" >> "$written"
+      done < <(find "$staged" -type f -print0)
+      echo "Synced $target: $updated updated, $unchanged unchanged"
+    }
+
+    # Delete files of the previous run that were not generated again
+    bufrnix_stage_finish() {
+      local job="$1" written="$2" partial_run="$3" manifest="$bufrnix_stage_state/written/$1.files" stale
+      mkdir -p "$bufrnix_stage_state/written"
+      sort -u "$written" -o "$written"
+      if [ -f "$manifest" ]; then
+        if [ "$partial_run" = true ]; then
+          # Only part of the files were generated; keep the rest
+          sort -u "$manifest" "$written" -o "$written"
+        else
+          comm -23 <(sort -u "$manifest") "$written" | while read -r stale; do
+            echo "Removing stale generated file $stale"
+            rm -f "$stale"
+          done
+        fi
+      fi
+      mv "$written" "$manifest"
+      rm -rf "''${bufrnix_stage_state:?}/staging/$job"
+    }
+  '';
+}
@@ -0,0 +1,118 @@
+/* Bufrnix Selective Regeneration Utilities
+
+   Shell generators that narrow a cache miss down to the proto files that
+   actually need regenerating. The import graph of a job's files is read
+   from their `import` statements; when some protos changed since the last
+   run, only those files and the files transitively importing them are
+   passed to protoc.
+
+   Builds on the incremental cache (see cache.nix) and keeps one extra file
+   per job in `<cacheDir>/jobs/`:
+   - `<job>.filehashes`: sha256sum of every proto the job read last time
+
+   Type: SelectiveUtils :: AttrSet
+*/
+{lib, ...}:
+with lib; {
+  /* Shell code defining the selective regeneration helper functions.
+
+     Arguments:
+       includeDirs: protoc.includeDirectories, used to resolve imports
+
+     Type: init :: [String] -> String
+  */
+  init = includeDirs: ''
+    # Print the given proto paths normalized relative to the working directory
+    bufrnix_selective_normalize() {
+      local files
+      read -r -d "" -a files <<< "$1" || true
+      if [ "''${#files[@]}" -gt 0 ]; then
+        realpath -ms --relative-base=. "''${files[@]}"
+      fi
+    }
+
+    # Print every proto known to a job: its own files and its recorded inputs
+    bufrnix_selective_candidates() {
+      {
+        bufrnix_selective_normalize "$2"
+        if [ -f "$bufrnix_cache_dir/jobs/$1.inputs" ]; then
+          bufrnix_selective_normalize "$(cat "$bufrnix_cache_dir/jobs/$1.inputs")"
+        fi
+      } | sort -u
+    }
+
+    # Resolve the imports of a proto file against the include directories
+    bufrnix_selective_imports() {
+      local import_path
+      sed -nE 's/^[[:space:]]*import[[:space:]]+(public[[:space:]]+|weak[[:space:]]+)?"([^"]+)".*/\2/p' "$1" |
+        while read -r import_path; do
+          ${concatMapStrings (dir: ''
+        if [ -f "${dir}/$import_path" ]; then
+          realpath -ms --relative-base=. "${dir}/$import_path"
+          continue
+        fi
+      '')
+      includeDirs}
+        done
+    }
+
+    # Record the content hash of every proto a job depends on
+    bufrnix_selective_snapshot() {
+      bufrnix_selective_candidates "$1" "$2" | while read -r file; do
+        if [ -f "$file" ]; then
+          sha256sum "$file"
+        fi
+      done > "$bufrnix_cache_dir/jobs/$1.filehashes"
+    }
+
+    # Keep the inputs and outputs of earlier runs across a partial run
+    bufrnix_selective_keep() {
+      local state="$bufrnix_cache_dir/jobs/$1" kind
+      for kind in inputs outputs; do
+        cp "$state.$kind" "$state.$kind.previous" 2>/dev/null || touch "$state.$kind.previous"
+      done
+    }
+
+    bufrnix_selective_merge() {
+      local state="$bufrnix_cache_dir/jobs/$1" kind
+      for kind in inputs outputs; do
+        sort -u "$state.$kind.previous" "$state.$kind" -o "$state.$kind"
+        rm -f "$state.$kind.previous"
+      done
+    }
+
+    # Print the job files affected by changed protos, or nothing when unknown
+    bufrnix_selective_files() {
+      local job="$1" state="$bufrnix_cache_dir/jobs/$1" file
+      [ -f "$state.filehashes" ] || return 0
+      local edges changed
+      edges=$(mktemp)
+      changed=$(mktemp)
+      while read -r file; do
+        if [ -f "$file" ]; then
+          bufrnix_selective_imports "$file" | sed "s|$| $file|" >> "$edges"
+          if ! grep -qxF "$(sha256sum "$file")" "$state.filehashes"; then
+            echo "$file" >> "$changed"
+          fi
+        fi
+      done < <(bufrnix_selective_candidates "$job" "$2")
+
+      # Walk the reverse import graph from the changed files
+      awk -v changed="$changed" '
+        BEGIN {
+          while ((getline file < changed) > 0) { affected[file] = 1; queue[++tail] = file }
+        }
+        { importers[$1] = importers[$1] " " $2 }
+        END {
+          for (head = 1; head <= tail; head++) {
+            count = split(importers[queue[head]], next_files, " ")
+            for (i = 1; i <= count; i++) {
+              if (!(next_files[i] in affected)) { affected[next_files[i]] = 1; queue[++tail] = next_files[i] }
+            }
+          }
+          for (file in affected) print file
+        }' "$edges" | sort -u | comm -12 - <(bufrnix_selective_normalize "$2" | sort -u) | tr '\n' ' '
+      rm -f "$edges" "$changed"
+    }
+  '';
+}
@@ -0,0 +1,118 @@
+/* Bufrnix Timing Utilities
+
+   Shell generators for the machine-readable timing report written after
+   each run. Every job appends its measurements to its own TSV file, so
+   jobs running in parallel never write to the same file; the report is
+   assembled from those files with jq once all jobs finished.
+
+   Measurements (one per line in `<reportDir>/.timing/<job>.tsv`):
+   - `stage <name> <microseconds>`: wall time of a pipeline stage
+   - `value <name> <value>`: job metadata such as status or file counts
+
+   Report layout:
+
+     {
+       "version": 1,
+       "startedAt": "2024-01-15T10:30:45+00:00",
+       "totalMs": 5123.4,
+       "jobs": {
+         "java_0": {
+           "language": "java",
+           "outputPath": "gen/java",
+           "plugins": ["java", "grpc-java"],
+           "status": "generated",
+           "stages": { "discovery": 2.1, "initHooks": 40.3, "protoc": 812.5, "generateHooks": 3.2 },
+           "files": { "protos": 12, "outputs": 57 }
+         }
+       }
+     }
+
+   Type: TimingUtils :: AttrSet
+*/
+{lib, ...}:
+with lib; {
+  /* Shell code starting the run clock and defining the timing helpers.
+
+     Arguments:
+       reportFile: Path of the JSON report
+
+     Type: init :: String -> String
+  */
+  init = reportFile: ''
+    bufrnix_timing_dir="$(dirname "${reportFile}")/.timing"
+    rm -rf "$bufrnix_timing_dir"
+    mkdir -p "$bufrnix_timing_dir"
+    bufrnix_timing_started_at=$(date -Iseconds)
+    bufrnix_timing_run_started=''${EPOCHREALTIME/[.,]/}
+    bufrnix_timing_last=$bufrnix_timing_run_started
+
+    # Start timing the stages of a job
+    bufrnix_timing_start() {
+      bufrnix_timing_last=''${EPOCHREALTIME/[.,]/}
+    }
+
+    # Record the time since the previous mark as a stage of a job
+    bufrnix_timing_mark() {
+      local now=''${EPOCHREALTIME/[.,]/}
+      printf 'stage\t%s\t%s\n' "$2" "$((now - bufrnix_timing_last))" >> "$bufrnix_timing_dir/$1.tsv"
+      bufrnix_timing_last=$now
+    }
+
+    # Record a value of a job, e.g. its status or a file count
+    bufrnix_timing_value() {
+      printf 'value\t%s\t%s\n' "$2" "$3" >> "$bufrnix_timing_dir/$1.tsv"
+    }
+  '';
+
+  /* Shell code assembling the JSON report (and optionally folded stacks).
+
+     Arguments:
+       jobs: Attribute set of job name => { language, outputPath, plugins }
+       reportFile: Path of the JSON report
+       foldedFile: Path of the folded-stack output, or null
+
+     The folded output has one `bufrnix;<language>;<outputPath>;<stage> <microseconds>`
+     line per stage and can be fed to flamegraph.pl or speedscope directly.
+
+     Type: report :: AttrSet -> String -> (String | Null) -> String
+  */
+  report = jobs: reportFile: foldedFile: ''
+    bufrnix_timing_total=$(( ''${EPOCHREALTIME/[.,]/} - bufrnix_timing_run_started ))
+    for bufrnix_timing_file in "$bufrnix_timing_dir"/*.tsv; do
+      [ -f "$bufrnix_timing_file" ] || continue
+      jq -R -s --arg job "$(basename "$bufrnix_timing_file" .tsv)" '
+        split("\n") | map(select(length > 0) | split("\t"))
+        | reduce .[] as $line ({stages: {}, values: {}};
+            if $line[0] == "stage"
+            then .stages[$line[1]] += ($line[2] | tonumber)
+            else .values[$line[1]] = ($line[2] | tonumber? // $line[2])
+            end)
+        | {($job): .}' "$bufrnix_timing_file"
+    done | jq -s \
+      --argjson meta ${escapeShellArg (builtins.toJSON jobs)} \
+      --arg startedAt "$bufrnix_timing_started_at" \
+      --argjson total "$bufrnix_timing_total" '
+      (add // {}) as $measured
+      | {
+          version: 1,
+          startedAt: $startedAt,
+          totalMs: ($total / 1000),
+          jobs: ($measured | with_entries(
+            .key as $job
+            | .value as $m
+            | .value = (($meta[$job] // {}) + {
+                status: ($m.values.status // "generated"),
+                stages: ($m.stages | map_values(. / 1000)),
+                files: ($m.values | del(.status))
+              })))
+        }' > "${reportFile}"
+    ${optionalString (foldedFile != null) ''
+      jq -r '.jobs | to_entries[] | .key as $job | .value as $j
+        | $j.stages | to_entries[]
+        | "bufrnix;\($j.language // $job);\($j.outputPath // $job);\(.key) \(.value * 1000 | round)"' \
+        "${reportFile}" > "${foldedFile}"
+    ''}
+    rm -rf "$bufrnix_timing_dir"
+    echo "Timing report written to ${reportFile}"
+  '';
+}
@@ -0,0 +1,330 @@
+package bufrnix.pluginhost;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.StandardProtocolFamily;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+/**
+ * Long-lived host for JVM-based protoc plugins.
+ *
+ * <p>protoc starts plugins as fresh processes, so every invocation of a JVM plugin pays for
+ * JVM startup, class loading and JIT warmup. The host keeps plugin class loaders alive and
+ * serves plugin invocations forwarded by {@code bufrnix-plugin-client} over a Unix domain
+ * socket. It exits once no request arrived for the configured idle timeout.
+ *
+ * <p>Protocol, one invocation per connection:
+ *
+ * <pre>
+ * request:  classpath '\t' mainClass '\n' CodeGeneratorRequest bytes (until EOF)
+ * response: status byte ('0' = success, '1' = failure) followed by the plugin's stdout
+ *           on success or an error report on failure
+ * </pre>
+ *
+ * <p>An empty main class means "use the Main-Class of the first classpath entry", which
+ * matches {@code java -jar}.
+ *
+ * <p>Requests name the classpath to run, so only the user running the host may connect: the
+ * socket must live in a directory of that user that no one else can write to, it is made
+ * readable and writable by its owner only, and connections from other users are refused
+ * through their {@code SO_PEERCRED} credentials where the platform provides them.
+ */
+public final class PluginHost {
+    private static final ThreadLocal<InputStream> STDIN = new ThreadLocal<>();
+    private static final ThreadLocal<PrintStream> STDOUT = new ThreadLocal<>();
+
+    private final Path socketPath;
+    private final long idleTimeoutMillis;
+    private final Map<String, Method> entryPoints = new ConcurrentHashMap<>();
+    private final AtomicLong lastActivity = new AtomicLong(System.currentTimeMillis());
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private UserPrincipal owner;
+
+    private PluginHost(Path socketPath, long idleTimeoutMillis) {
+        this.socketPath = socketPath;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PluginHost <socket-path> <idle-timeout-seconds>");
+            System.exit(2);
+        }
+        new PluginHost(Paths.get(args[0]), TimeUnit.SECONDS.toMillis(Long.parseLong(args[1]))).serve();
+    }
+
+    private void serve() throws IOException {
+        ServerSocketChannel server = bind();
+        redirectStandardStreams();
+
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(daemon("bufrnix-plugin-host-idle"));
+        watchdog.scheduleAtFixedRate(() -> {
+            long idle = System.currentTimeMillis() - lastActivity.get();
+            if (activeRequests.get() == 0 && idle >= idleTimeoutMillis) {
+                shutdown(server);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        ExecutorService workers = Executors.newCachedThreadPool(daemon("bufrnix-plugin-host-worker"));
+        while (server.isOpen()) {
+            SocketChannel connection;
+            try {
+                connection = server.accept();
+            } catch (IOException e) {
+                if (!server.isOpen()) {
+                    break;
+                }
+                throw e;
+            }
+            activeRequests.incrementAndGet();
+            lastActivity.set(System.currentTimeMillis());
+            workers.execute(() -> handle(connection));
+        }
+    }
+
+    /**
+     * Bind the socket, replacing a stale socket file left behind by a crashed host, and make it
+     * accessible to its owner only.
+     */
+    private ServerSocketChannel bind() throws IOException {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socketPath);
+        Path directory = socketPath.toAbsolutePath().getParent();
+        Set<PosixFilePermission> directoryPermissions = Files.getPosixFilePermissions(directory);
+        if (Files.isSymbolicLink(directory)
+                || directoryPermissions.contains(PosixFilePermission.GROUP_WRITE)
+                || directoryPermissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException("Refusing to listen in " + directory + ", which other users can write to");
+        }
+        if (Files.exists(socketPath)) {
+            boolean listening;
+            try (SocketChannel probe = SocketChannel.open(address)) {
+                listening = probe.isConnected();
+            } catch (IOException stale) {
+                listening = false;
+            }
+            if (listening) {
+                throw new IOException("Another plugin host is already listening on " + socketPath);
+            }
+            Files.deleteIfExists(socketPath);
+        }
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(address);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteSocket()));
+        Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        // The socket was just created by this process, so its owner is the user running the host
+        owner = Files.getOwner(socketPath);
+        if (!owner.equals(Files.getOwner(directory))) {
+            server.close();
+            throw new IOException("Refusing to listen in " + directory + ", which belongs to another user");
+        }
+        return server;
+    }
+
+    /** Whether the peer of a connection runs as the user running the host. */
+    private boolean fromOwner(SocketChannel connection) {
+        if (!connection.supportedOptions().contains(ExtendedSocketOptions.SO_PEERCRED)) {
+            // The owner-only socket in a private directory still keeps other users out
+            return true;
+        }
+        try {
+            UnixDomainPrincipal peer = connection.getOption(ExtendedSocketOptions.SO_PEERCRED);
+            if (owner.equals(peer.user())) {
+                return true;
+            }
+            System.err.println("bufrnix-plugin-host: refused connection from " + peer.user().getName());
+        } catch (IOException e) {
+            System.err.println("bufrnix-plugin-host: cannot read peer credentials: " + e);
+        }
+        return false;
+    }
+
+    private void handle(SocketChannel connection) {
+        try (connection) {
+            if (!fromOwner(connection)) {
+                return;
+            }
+            InputStream in = Channels.newInputStream(connection);
+            OutputStream out = Channels.newOutputStream(connection);
+            String[] header = readHeader(in).split("\t", -1);
+            byte[] request = in.readAllBytes();
+
+            ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            try {
+                invoke(header[0], header.length > 1 ? header[1] : "", request, stdout);
+                out.write('0');
+                stdout.writeTo(out);
+            } catch (Throwable t) {
+                out.write('1');
+                out.write(describe(t).getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("bufrnix-plugin-host: request failed: " + e);
+        } finally {
+            lastActivity.set(System.currentTimeMillis());
+            activeRequests.decrementAndGet();
+        }
+    }
+
+    private void invoke(String classpath, String mainClass, byte[] request, ByteArrayOutputStream stdout)
+            throws Throwable {
+        Method main = entryPoints.computeIfAbsent(classpath + '\t' + mainClass, key -> loadMain(classpath, mainClass));
+        Thread thread = Thread.currentThread();
+        ClassLoader previousLoader = thread.getContextClassLoader();
+        STDIN.set(new ByteArrayInputStream(request));
+        STDOUT.set(new PrintStream(stdout, false));
+        thread.setContextClassLoader(main.getDeclaringClass().getClassLoader());
+        try {
+            main.invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            STDOUT.get().flush();
+            STDIN.remove();
+            STDOUT.remove();
+            thread.setContextClassLoader(previousLoader);
+        }
+    }
+
+    /** Resolve the plugin entry point once; the class loader stays warm for later requests. */
+    private static Method loadMain(String classpath, String mainClass) {
+        try {
+            String[] entries = classpath.split(":");
+            URL[] urls = new URL[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                urls[i] = Paths.get(entries[i]).toUri().toURL();
+            }
+            String className = mainClass;
+            if (className.isEmpty()) {
+                try (JarFile jar = new JarFile(entries[0])) {
+                    className = jar.getManifest().getMainAttributes().getValue("Main-Class");
+                }
+            }
+            ClassLoader loader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
+            return Class.forName(className, true, loader).getMethod("main", String[].class);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot load plugin from " + classpath, e);
+        }
+    }
+
+    /** Route System.in/System.out to the stream of the request handled by the current thread. */
+    private static void redirectStandardStreams() {
+        InputStream originalIn = System.in;
+        PrintStream originalOut = System.out;
+        System.setIn(new InputStream() {
+            private InputStream delegate() {
+                InputStream in = STDIN.get();
+                return in != null ? in : originalIn;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return delegate().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return delegate().read(b, off, len);
+            }
+
+            @Override
+            public int available() throws IOException {
+                return delegate().available();
+            }
+        });
+        System.setOut(new PrintStream(new OutputStream() {
+            private OutputStream delegate() {
+                PrintStream out = STDOUT.get();
+                return out != null ? out : originalOut;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                delegate().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                delegate().write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate().flush();
+            }
+        }, true));
+    }
+
+    private static String readHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            header.write(b);
+        }
+        return header.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String describe(Throwable t) {
+        StringWriter report = new StringWriter();
+        t.printStackTrace(new PrintWriter(report));
+        return report.toString();
+    }
+
+    private void shutdown(ServerSocketChannel server) {
+        try {
+            server.close();
+        } catch (IOException ignored) {
+            // Exiting anyway
+        }
+        deleteSocket();
+        System.exit(0);
+    }
+
+    private void deleteSocket() {
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException ignored) {
+            // Best effort: a stale socket is replaced by the next host
+        }
+    }
+
+    private static java.util.concurrent.ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
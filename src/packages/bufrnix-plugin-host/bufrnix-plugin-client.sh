@@ -0,0 +1,126 @@
+#!/usr/bin/env bash
+# Thin protoc plugin that forwards the CodeGeneratorRequest to a warm
+# bufrnix plugin host, starting the host on first use.
+#
+# Usage: bufrnix-plugin-client <java> <classpath> [main-class]
+#
+# Without a main class the Main-Class of the first classpath entry is used,
+# like `java -jar`. If the host cannot be reached the plugin runs in a fresh
+# JVM so generation never depends on the daemon.
+#
+# The host runs whatever classpath it is sent, so the client only talks to a
+# socket owned by the current user in a directory no other user can write
+# to, and the host only answers clients of its own user.
+#
+# Environment:
+#   BUFRNIX_PLUGIN_HOST_SOCKET        Socket path (default: per user and JDK in
+#                                     $XDG_RUNTIME_DIR, or /tmp/bufrnix-plugin-host-<uid>)
+#   BUFRNIX_PLUGIN_HOST_IDLE_TIMEOUT  Seconds before an idle host exits (default: 300)
+#   BUFRNIX_PLUGIN_HOST_DISABLE       Set to 1 to always use a fresh JVM
+set -euo pipefail
+
+if [ "$#" -lt 2 ]; then
+  echo "Usage: bufrnix-plugin-client <java> <classpath> [main-class]" >&2
+  exit 2
+fi
+
+java="$1"
+main_class="${3:-}"
+host_jar="@hostJar@"
+
+# The host runs in its own working directory, so resolve classpath entries now
+classpath=""
+IFS=: read -r -a entries <<< "$2"
+for entry in "${entries[@]}"; do
+  classpath="${classpath:+$classpath:}$(realpath "$entry")"
+done
+
+run_cold() {
+  if [ -n "$main_class" ]; then
+    exec "$java" -cp "$classpath" "$main_class"
+  fi
+  exec "$java" -jar "$classpath"
+}
+
+if [ "${BUFRNIX_PLUGIN_HOST_DISABLE:-0}" = "1" ]; then
+  run_cold
+fi
+
+uid=$(id -u)
+jdk_id=$(printf '%s' "$(realpath "$(command -v "$java")")" | cksum | cut -d' ' -f1)
+if [ -n "${BUFRNIX_PLUGIN_HOST_SOCKET:-}" ]; then
+  socket="$BUFRNIX_PLUGIN_HOST_SOCKET"
+elif [ -n "${XDG_RUNTIME_DIR:-}" ]; then
+  socket="$XDG_RUNTIME_DIR/bufrnix-plugin-host-$jdk_id.sock"
+else
+  # /tmp is shared, so keep the socket in a directory only this user can enter
+  socket="/tmp/bufrnix-plugin-host-$uid/$jdk_id.sock"
+fi
+socket=$(realpath -m "$socket")
+socket_dir=$(dirname "$socket")
+idle_timeout="${BUFRNIX_PLUGIN_HOST_IDLE_TIMEOUT:-300}"
+
+# Succeeds for a directory of ours that other users cannot write to
+private_dir() {
+  local owner mode
+  [ -d "$1" ] && [ ! -L "$1" ] || return 1
+  read -r owner mode < <(stat -c '%u %a' "$1")
+  [ "$owner" = "$uid" ] && (( (8#$mode & 8#022) == 0 ))
+}
+
+# Succeeds for a socket of ours, which no other user can have bound
+own_socket() {
+  [ -S "$socket" ] && [ ! -L "$socket" ] && [ "$(stat -c %u "$socket")" = "$uid" ]
+}
+
+(umask 077 && mkdir -p "$socket_dir")
+if ! private_dir "$socket_dir"; then
+  echo "bufrnix-plugin-host: $socket_dir is not a directory of uid $uid closed to other users; running the plugin in a fresh JVM" >&2
+  run_cold
+fi
+
+request=$(mktemp)
+response=$(mktemp)
+trap 'rm -f "$request" "$response"' EXIT
+cat > "$request"
+
+# Send the request; succeeds when the host answered with a status byte
+forward() {
+  own_socket || return 1
+  {
+    printf '%s\t%s\n' "$classpath" "$main_class"
+    cat "$request"
+  } | socat -t 600 - "UNIX-CONNECT:$socket" > "$response" 2>/dev/null && [ -s "$response" ]
+}
+
+# Start a host in the background and wait for its socket to appear
+start_host() {
+  # Nothing answered, so a socket file left behind in our directory is stale
+  rm -f "$socket"
+  # Detach completely: an inherited stdout would keep protoc waiting for EOF
+  (cd / && exec setsid "$java" -cp "$host_jar" \
+    bufrnix.pluginhost.PluginHost "$socket" "$idle_timeout") < /dev/null > /dev/null 2>&1 &
+  for _ in $(seq 1 100); do
+    if own_socket; then
+      return 0
+    fi
+    sleep 0.05
+  done
+  return 1
+}
+
+if ! forward; then
+  # Concurrent clients may race to start a host; only one can bind the socket
+  if ! { start_host && forward; }; then
+    run_cold < "$request"
+  fi
+fi
+
+status=$(head -c 1 "$response")
+if [ "$status" = "0" ]; then
+  tail -c +2 "$response"
+  exit 0
+fi
+echo "bufrnix-plugin-host: plugin failed:" >&2
+tail -c +2 "$response" >&2
+exit 1
@@ -0,0 +1,61 @@
+{
+  lib,
+  stdenv,
+  makeWrapper,
+  jdk,
+  socat,
+  coreutils,
+  util-linux,
+  ...
+}:
+stdenv.mkDerivation {
+  pname = "bufrnix-plugin-host";
+  version = "0.1.0";
+
+  src = lib.fileset.toSource {
+    root = ./.;
+    fileset = lib.fileset.unions [
+      ./PluginHost.java
+      ./bufrnix-plugin-client.sh
+    ];
+  };
+
+  nativeBuildInputs = [jdk makeWrapper];
+
+  buildPhase = ''
+    runHook preBuild
+
+    mkdir -p classes
+    javac --release 17 -d classes PluginHost.java
+    jar --create --file bufrnix-plugin-host.jar \
+      --main-class bufrnix.pluginhost.PluginHost -C classes .
+
+    runHook postBuild
+  '';
+
+  installPhase = ''
+    runHook preInstall
+
+    install -Dm644 bufrnix-plugin-host.jar $out/share/java/bufrnix-plugin-host.jar
+    install -Dm755 bufrnix-plugin-client.sh $out/bin/bufrnix-plugin-client
+    substituteInPlace $out/bin/bufrnix-plugin-client \
+      --subst-var-by hostJar $out/share/java/bufrnix-plugin-host.jar
+    wrapProgram $out/bin/bufrnix-plugin-client \
+      --prefix PATH : ${lib.makeBinPath [socat coreutils util-linux]}
+
+    runHook postInstall
+  '';
+
+  meta = with lib; {
+    description = "Warm JVM host that serves JAR-based protoc plugins over a Unix socket";
+    longDescription = ''
+      protoc starts a new plugin process per invocation, so JVM plugins pay for
+      JVM startup and JIT warmup every time. bufrnix-plugin-client acts as the
+      protoc plugin and forwards each CodeGeneratorRequest to a long-lived host
+      JVM that keeps the plugin JARs loaded. The host exits after an idle timeout.
+    '';
+    license = licenses.asl20;
+    platforms = platforms.unix;
+    mainProgram = "bufrnix-plugin-client";
+  };
+}
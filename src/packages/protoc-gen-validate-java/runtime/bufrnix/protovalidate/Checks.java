@@ -0,0 +1,245 @@
+package bufrnix.protovalidate;
+
+import com.google.protobuf.ByteString;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks shared by the validators generated by protoc-gen-validate-java.
+ *
+ * <p>The arithmetic and conversion helpers fail with an {@link ArithmeticException} where CEL
+ * reports an evaluation error; validators rethrow it as an {@link EvaluationException}.
+ */
+public final class Checks {
+  /** Lists up to this size are checked for duplicates without allocating a set. */
+  private static final int SMALL_LIST = 16;
+
+  private Checks() {}
+
+  /** Returns whether no two elements of {@code values} are equal. */
+  public static boolean unique(List<?> values) {
+    int size = values.size();
+    if (size <= SMALL_LIST) {
+      for (int i = 1; i < size; i++) {
+        Object value = values.get(i);
+        for (int j = 0; j < i; j++) {
+          if (value.equals(values.get(j))) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+    Set<Object> seen = new HashSet<>(size * 2);
+    for (Object value : values) {
+      if (!seen.add(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether {@code value} contains the bytes of {@code part}. */
+  public static boolean contains(ByteString value, ByteString part) {
+    int last = value.size() - part.size();
+    for (int i = 0; i <= last; i++) {
+      if (value.substring(i, i + part.size()).equals(part)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the length of {@code value} in Unicode code points. */
+  public static int codePoints(String value) {
+    return value.codePointCount(0, value.length());
+  }
+
+  /** Returns the length of {@code value} encoded as UTF-8, without encoding it. */
+  public static int utf8Length(String value) {
+    int length = value.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          bytes++;
+        } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+          // Four bytes for the two chars of the pair
+          bytes += 2;
+          i++;
+        } else {
+          bytes += 2;
+        }
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * CEL's {@code left && right} for a {@code left} that can fail: an error is absorbed when
+   * {@code right} is false, as the order of the operands does not matter in CEL.
+   */
+  public static boolean and(BooleanSupplier left, BooleanSupplier right) {
+    boolean value;
+    try {
+      value = left.getAsBoolean();
+    } catch (RuntimeException e) {
+      if (!right.getAsBoolean()) {
+        return false;
+      }
+      throw e;
+    }
+    return value && right.getAsBoolean();
+  }
+
+  /** CEL's {@code left || right} for a {@code left} that can fail, absorbing the error when {@code right} is true. */
+  public static boolean or(BooleanSupplier left, BooleanSupplier right) {
+    boolean value;
+    try {
+      value = left.getAsBoolean();
+    } catch (RuntimeException e) {
+      if (right.getAsBoolean()) {
+        return true;
+      }
+      throw e;
+    }
+    return value || right.getAsBoolean();
+  }
+
+  /** Orders strings by code point, as CEL does, instead of by UTF-16 unit. */
+  public static int compare(String left, String right) {
+    int length = Math.min(left.length(), right.length());
+    for (int i = 0; i < length; i++) {
+      char l = left.charAt(i);
+      char r = right.charAt(i);
+      if (l != r) {
+        return codePointOrder(l) - codePointOrder(r);
+      }
+    }
+    return left.length() - right.length();
+  }
+
+  /** Moves surrogates above the rest of the BMP, so that chars order like the code points they encode. */
+  private static int codePointOrder(char c) {
+    if (c >= 0xE000) {
+      return c - 0x800;
+    }
+    return c >= 0xD800 ? c + 0x2000 : c;
+  }
+
+  /** Orders an int and a uint value by their numeric values. */
+  public static int compareIntUint(long intValue, long uintValue) {
+    if (intValue < 0 || uintValue < 0) {
+      // A negative int is below every uint, a uint above Long.MAX_VALUE above every int
+      return -1;
+    }
+    return Long.compare(intValue, uintValue);
+  }
+
+  /** Returns {@code left / right} for int values. */
+  public static long divide(long left, long right) {
+    if (right == 0) {
+      throw new ArithmeticException("divide by zero");
+    }
+    if (left == Long.MIN_VALUE && right == -1) {
+      throw new ArithmeticException("long overflow");
+    }
+    return left / right;
+  }
+
+  /** Returns {@code left % right} for int values. */
+  public static long remainder(long left, long right) {
+    if (right == 0) {
+      throw new ArithmeticException("modulus by zero");
+    }
+    if (left == Long.MIN_VALUE && right == -1) {
+      throw new ArithmeticException("long overflow");
+    }
+    return left % right;
+  }
+
+  /** Returns {@code left + right} for uint values. */
+  public static long addUnsigned(long left, long right) {
+    long sum = left + right;
+    if (Long.compareUnsigned(sum, left) < 0) {
+      throw new ArithmeticException("unsigned long overflow");
+    }
+    return sum;
+  }
+
+  /** Returns {@code left - right} for uint values. */
+  public static long subtractUnsigned(long left, long right) {
+    if (Long.compareUnsigned(left, right) < 0) {
+      throw new ArithmeticException("unsigned long overflow");
+    }
+    return left - right;
+  }
+
+  /** Returns {@code left * right} for uint values. */
+  public static long multiplyUnsigned(long left, long right) {
+    if (left != 0 && Long.compareUnsigned(right, Long.divideUnsigned(-1L, left)) > 0) {
+      throw new ArithmeticException("unsigned long overflow");
+    }
+    return left * right;
+  }
+
+  /** Returns {@code left / right} for uint values. */
+  public static long divideUnsigned(long left, long right) {
+    if (right == 0) {
+      throw new ArithmeticException("divide by zero");
+    }
+    return Long.divideUnsigned(left, right);
+  }
+
+  /** Returns {@code left % right} for uint values. */
+  public static long remainderUnsigned(long left, long right) {
+    if (right == 0) {
+      throw new ArithmeticException("modulus by zero");
+    }
+    return Long.remainderUnsigned(left, right);
+  }
+
+  /** Converts a double to an int, truncating it; NaN, infinities and values out of range fail. */
+  public static long doubleToInt(double value) {
+    if (!(value >= -0x1p63 && value < 0x1p63)) {
+      throw new ArithmeticException("range error converting " + value + " to int");
+    }
+    return (long) value;
+  }
+
+  /** Converts a double to a uint, truncating it; NaN, infinities and values out of range fail. */
+  public static long doubleToUint(double value) {
+    if (!(value >= 0 && value < 0x1p64)) {
+      throw new ArithmeticException("range error converting " + value + " to uint");
+    }
+    return value < 0x1p63 ? (long) value : (long) (value - 0x1p63) | Long.MIN_VALUE;
+  }
+
+  /** Converts an int to a uint; negative values fail. */
+  public static long intToUint(long value) {
+    if (value < 0) {
+      throw new ArithmeticException("range error converting " + value + " to uint");
+    }
+    return value;
+  }
+
+  /** Converts a uint to an int; values above {@code Long.MAX_VALUE} fail. */
+  public static long uintToInt(long value) {
+    if (value < 0) {
+      throw new ArithmeticException("range error converting " + Long.toUnsignedString(value) + " to int");
+    }
+    return value;
+  }
+
+  /** Converts a uint to the nearest double. */
+  public static double uintToDouble(long value) {
+    if (value >= 0) {
+      return value;
+    }
+    // Halve without losing the bit that decides the rounding
+    return ((value >>> 1) | (value & 1)) * 2.0;
+  }
+}
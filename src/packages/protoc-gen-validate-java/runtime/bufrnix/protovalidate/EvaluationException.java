@@ -0,0 +1,21 @@
+package bufrnix.protovalidate;
+
+/**
+ * Thrown by generated validators when a CEL rule fails to evaluate, e.g. on integer overflow or
+ * an out-of-range conversion, where protovalidate-java throws its {@code ExecutionException}.
+ */
+public final class EvaluationException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  private final String ruleId;
+
+  public EvaluationException(String ruleId, RuntimeException cause) {
+    super("error evaluating " + ruleId + ": " + cause.getMessage(), cause);
+    this.ruleId = ruleId;
+  }
+
+  /** Identifier of the CEL rule that failed to evaluate. */
+  public String getRuleId() {
+    return ruleId;
+  }
+}
@@ -0,0 +1,29 @@
+package bufrnix.protovalidate;
+
+import java.util.Collections;
+import java.util.List;
+
+/** Thrown by the {@code check} methods of generated validators for invalid messages. */
+public final class ValidationException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  private final List<Violation> violations;
+
+  public ValidationException(List<Violation> violations) {
+    super(describe(violations));
+    this.violations = Collections.unmodifiableList(violations);
+  }
+
+  /** The violated rules, in field order. */
+  public List<Violation> getViolations() {
+    return violations;
+  }
+
+  private static String describe(List<Violation> violations) {
+    StringBuilder message = new StringBuilder("validation error:");
+    for (Violation violation : violations) {
+      message.append("\n - ").append(violation);
+    }
+    return message.toString();
+  }
+}
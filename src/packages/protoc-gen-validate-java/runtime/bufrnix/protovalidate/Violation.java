@@ -0,0 +1,76 @@
+package bufrnix.protovalidate;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A buf.validate rule a message does not satisfy, reported by the validators generated by
+ * protoc-gen-validate-java.
+ *
+ * <p>Field paths are relative to the validated message, e.g. {@code name},
+ * {@code phone_numbers[1]} or {@code profile.bio}; message-level rules have an empty path.
+ */
+public final class Violation {
+  private final String fieldPath;
+  private final String ruleId;
+  private final String message;
+
+  public Violation(String fieldPath, String ruleId, String message) {
+    this.fieldPath = fieldPath;
+    this.ruleId = ruleId;
+    this.message = message;
+  }
+
+  /** Path of the violating field, empty for message-level rules. */
+  public String getFieldPath() {
+    return fieldPath;
+  }
+
+  /** Identifier of the violated rule, e.g. {@code string.min_len}. */
+  public String getRuleId() {
+    return ruleId;
+  }
+
+  /** Human-readable description of the violation. */
+  public String getMessage() {
+    return message;
+  }
+
+  /** Returns this violation with {@code parent} prepended to its field path. */
+  public Violation prefixed(String parent) {
+    if (fieldPath.isEmpty()) {
+      return new Violation(parent, ruleId, message);
+    }
+    String separator = fieldPath.startsWith("[") ? "" : ".";
+    return new Violation(parent + separator + fieldPath, ruleId, message);
+  }
+
+  /** Prepends {@code parent} to the field paths of {@code violations} from index {@code from}. */
+  public static void prefix(List<Violation> violations, int from, String parent) {
+    for (int i = from; i < violations.size(); i++) {
+      violations.set(i, violations.get(i).prefixed(parent));
+    }
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Violation)) {
+      return false;
+    }
+    Violation violation = (Violation) other;
+    return fieldPath.equals(violation.fieldPath)
+        && ruleId.equals(violation.ruleId)
+        && message.equals(violation.message);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(fieldPath, ruleId, message);
+  }
+
+  @Override
+  public String toString() {
+    String path = fieldPath.isEmpty() ? "" : fieldPath + ": ";
+    return path + message + " [" + ruleId + "]";
+  }
+}
@@ -0,0 +1,1126 @@
+package bufrnix.protovalidate.compiler;
+
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.re2j.PatternSyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates CEL expressions of buf.validate rules into plain Java expressions.
+ *
+ * <p>Supports the part of CEL that rules on generated messages use: literals, field selection,
+ * {@code has()}, logical, comparison, arithmetic and ternary operators, {@code in}, indexing,
+ * {@code size()}, string functions ({@code startsWith}, {@code endsWith}, {@code contains},
+ * {@code matches}), conversions ({@code int}, {@code uint}, {@code double}, {@code string}),
+ * {@code isNan}, {@code isInf}, {@code unique} and the {@code all}, {@code exists} and
+ * {@code exists_one} macros. Anything else, such as timestamps, durations or the protovalidate
+ * format functions, is rejected with a {@link CelException} at generation time.
+ *
+ * <p>Evaluation follows CEL where Java differs: integer arithmetic and conversions fail on
+ * overflow instead of wrapping, int and uint values compare by their numeric values, strings
+ * order by code point and {@code matches} uses RE2 syntax through re2j. Expressions that can
+ * fail that way are reported by {@link #fallible()}.
+ */
+final class CelCompiler {
+    /** Static fields the generated class declares for values that are costly to build. */
+    interface Constants {
+        /** Declares a constant and returns the name of the field holding it. */
+        String constant(String javaType, String initializer);
+    }
+
+    /** Thrown for expressions outside the supported part of CEL. */
+    static final class CelException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        CelException(String message) {
+            super(message);
+        }
+    }
+
+    /** CEL type of an expression, with the fields describing collection elements. */
+    static final class Type {
+        enum Kind { BOOL, INT, UINT, DOUBLE, STRING, BYTES, MESSAGE, LIST, MAP }
+
+        static final Type BOOL = new Type(Kind.BOOL, null, null);
+        static final Type INT = new Type(Kind.INT, null, null);
+        static final Type UINT = new Type(Kind.UINT, null, null);
+        static final Type DOUBLE = new Type(Kind.DOUBLE, null, null);
+        static final Type STRING = new Type(Kind.STRING, null, null);
+        static final Type BYTES = new Type(Kind.BYTES, null, null);
+
+        final Kind kind;
+        /** Message type of MESSAGE values. */
+        final Descriptor message;
+        /** Repeated field of LIST values, map field of MAP values. */
+        final FieldDescriptor field;
+
+        private Type(Kind kind, Descriptor message, FieldDescriptor field) {
+            this.kind = kind;
+            this.message = message;
+            this.field = field;
+        }
+
+        static Type message(Descriptor message) {
+            return new Type(Kind.MESSAGE, message, null);
+        }
+
+        static Type list(FieldDescriptor field) {
+            return new Type(Kind.LIST, null, field);
+        }
+
+        static Type map(FieldDescriptor field) {
+            return new Type(Kind.MAP, null, field);
+        }
+
+        boolean numeric() {
+            return kind == Kind.INT || kind == Kind.UINT || kind == Kind.DOUBLE;
+        }
+
+        FieldDescriptor mapKey() {
+            return field.getMessageType().findFieldByName("key");
+        }
+
+        FieldDescriptor mapValue() {
+            return field.getMessageType().findFieldByName("value");
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case MESSAGE:
+                    return message.getFullName();
+                case LIST:
+                    return "list(" + field.getName() + ")";
+                case MAP:
+                    return "map(" + field.getName() + ")";
+                default:
+                    return kind.name().toLowerCase();
+            }
+        }
+    }
+
+    /** A Java expression and the CEL type of its value. */
+    static final class Expr {
+        private final String java;
+        private final Type type;
+
+        Expr(String java, Type type) {
+            this.java = java;
+            this.type = type;
+        }
+
+        String java() {
+            return java;
+        }
+
+        Type type() {
+            return type;
+        }
+    }
+
+    private static final Map<String, String> SIGNED_ARITHMETIC = Map.of(
+        "+", "Math.addExact",
+        "-", "Math.subtractExact",
+        "*", "Math.multiplyExact",
+        "/", "bufrnix.protovalidate.Checks.divide",
+        "%", "bufrnix.protovalidate.Checks.remainder");
+    private static final Map<String, String> UNSIGNED_ARITHMETIC = Map.of(
+        "+", "bufrnix.protovalidate.Checks.addUnsigned",
+        "-", "bufrnix.protovalidate.Checks.subtractUnsigned",
+        "*", "bufrnix.protovalidate.Checks.multiplyUnsigned",
+        "/", "bufrnix.protovalidate.Checks.divideUnsigned",
+        "%", "bufrnix.protovalidate.Checks.remainderUnsigned");
+
+    private final Constants constants;
+    private int lambdas;
+    private boolean fallible;
+
+    CelCompiler(Constants constants) {
+        this.constants = constants;
+    }
+
+    /** Compiles {@code expression} with the given variables (at least {@code this}) in scope. */
+    Expr compile(String expression, Map<String, Expr> variables) throws CelException {
+        Node node = new Parser(expression).parse();
+        fallible = false;
+        return compile(node, variables);
+    }
+
+    /**
+     * Whether the last compiled expression can fail with a runtime exception, where CEL reports
+     * an evaluation error such as an overflow.
+     */
+    boolean fallible() {
+        return fallible;
+    }
+
+    // AST
+
+    private interface Node {}
+
+    private static final class Literal implements Node {
+        final Type type;
+        final Object value;
+
+        Literal(Type type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private static final class Ident implements Node {
+        final String name;
+
+        Ident(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Select implements Node {
+        final Node operand;
+        final String field;
+
+        Select(Node operand, String field) {
+            this.operand = operand;
+            this.field = field;
+        }
+    }
+
+    private static final class Call implements Node {
+        final Node target;
+        final String function;
+        final List<Node> args;
+
+        Call(Node target, String function, List<Node> args) {
+            this.target = target;
+            this.function = function;
+            this.args = args;
+        }
+    }
+
+    private static final class Index implements Node {
+        final Node operand;
+        final Node index;
+
+        Index(Node operand, Node index) {
+            this.operand = operand;
+            this.index = index;
+        }
+    }
+
+    private static final class ListLiteral implements Node {
+        final List<Node> elements;
+
+        ListLiteral(List<Node> elements) {
+            this.elements = elements;
+        }
+    }
+
+    private static final class Unary implements Node {
+        final String op;
+        final Node operand;
+
+        Unary(String op, Node operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+    }
+
+    private static final class Binary implements Node {
+        final String op;
+        final Node left;
+        final Node right;
+
+        Binary(String op, Node left, Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class Conditional implements Node {
+        final Node condition;
+        final Node then;
+        final Node otherwise;
+
+        Conditional(Node condition, Node then, Node otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+    }
+
+    // Translation
+
+    private Expr compile(Node node, Map<String, Expr> scope) throws CelException {
+        if (node instanceof Literal) {
+            return literal((Literal) node);
+        }
+        if (node instanceof Ident) {
+            Expr variable = scope.get(((Ident) node).name);
+            if (variable == null) {
+                throw new CelException("unknown identifier " + ((Ident) node).name);
+            }
+            return variable;
+        }
+        if (node instanceof Select) {
+            Select select = (Select) node;
+            Expr operand = compile(select.operand, scope);
+            return Fields.value(operand.java, field(operand, select.field));
+        }
+        if (node instanceof Call) {
+            return call((Call) node, scope);
+        }
+        if (node instanceof Index) {
+            return index((Index) node, scope);
+        }
+        if (node instanceof ListLiteral) {
+            throw new CelException("list literals are only supported on the right of 'in'");
+        }
+        if (node instanceof Unary) {
+            Unary unary = (Unary) node;
+            Expr operand = compile(unary.operand, scope);
+            if (unary.op.equals("!")) {
+                expect(operand, Type.Kind.BOOL, "!");
+                return new Expr("!(" + operand.java + ")", Type.BOOL);
+            }
+            if (operand.type.kind == Type.Kind.INT) {
+                fallible = true;
+                return new Expr("Math.negateExact((long) " + operand.java + ")", Type.INT);
+            }
+            if (operand.type.kind != Type.Kind.DOUBLE) {
+                throw new CelException("cannot negate " + operand.type);
+            }
+            return new Expr("-(" + operand.java + ")", operand.type);
+        }
+        if (node instanceof Binary) {
+            return binary((Binary) node, scope);
+        }
+        Conditional conditional = (Conditional) node;
+        Expr condition = compile(conditional.condition, scope);
+        expect(condition, Type.Kind.BOOL, "?:");
+        Expr then = compile(conditional.then, scope);
+        Expr otherwise = compile(conditional.otherwise, scope);
+        if (then.type.kind != otherwise.type.kind) {
+            throw new CelException("branches of ?: have different types " + then.type + " and " + otherwise.type);
+        }
+        return new Expr("(" + condition.java + " ? " + then.java + " : " + otherwise.java + ")", then.type);
+    }
+
+    private Expr literal(Literal literal) {
+        switch (literal.type.kind) {
+            case BOOL:
+                return new Expr(literal.value.toString(), Type.BOOL);
+            case INT:
+                return new Expr(literal.value + "L", Type.INT);
+            case UINT:
+                return new Expr("0x" + Long.toHexString((Long) literal.value) + "L", Type.UINT);
+            case DOUBLE:
+                return new Expr(Literals.javaDouble((Double) literal.value), Type.DOUBLE);
+            case STRING:
+                return new Expr(Literals.javaString((String) literal.value), Type.STRING);
+            default:
+                String bytes = constants.constant(
+                    "com.google.protobuf.ByteString", Literals.javaByteString((byte[]) literal.value));
+                return new Expr(bytes, Type.BYTES);
+        }
+    }
+
+    private static FieldDescriptor field(Expr operand, String name) throws CelException {
+        if (operand.type.kind != Type.Kind.MESSAGE) {
+            throw new CelException("cannot select ." + name + " from " + operand.type);
+        }
+        FieldDescriptor field = operand.type.message.findFieldByName(name);
+        if (field == null) {
+            throw new CelException(operand.type.message.getFullName() + " has no field " + name);
+        }
+        if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE
+            && !field.isRepeated()
+            && field.getMessageType().getFullName().startsWith("google.protobuf.")) {
+            throw new CelException("well-known type " + field.getMessageType().getFullName() + " in " + name + " is not supported");
+        }
+        return field;
+    }
+
+    private Expr call(Call call, Map<String, Expr> scope) throws CelException {
+        String function = call.function;
+        if (call.target == null && function.equals("has")) {
+            if (call.args.size() != 1 || !(call.args.get(0) instanceof Select)) {
+                throw new CelException("has() takes a field selection");
+            }
+            Select select = (Select) call.args.get(0);
+            Expr operand = compile(select.operand, scope);
+            if (operand.type.kind != Type.Kind.MESSAGE) {
+                throw new CelException("has() needs a message field, got " + operand.type);
+            }
+            FieldDescriptor field = operand.type.message.findFieldByName(select.field);
+            if (field == null) {
+                throw new CelException(operand.type.message.getFullName() + " has no field " + select.field);
+            }
+            return new Expr("(" + Fields.populated(operand.java, field) + ")", Type.BOOL);
+        }
+        if (call.target != null
+            && (function.equals("all") || function.equals("exists") || function.equals("exists_one"))) {
+            return comprehension(call, scope);
+        }
+
+        // Receiver-style and global forms are equivalent, e.g. size(x) and x.size()
+        List<Expr> args = new ArrayList<>();
+        if (call.target != null) {
+            args.add(compile(call.target, scope));
+        }
+        for (Node arg : call.args) {
+            args.add(compile(arg, scope));
+        }
+
+        switch (function) {
+            case "size":
+                arity(function, args, 1);
+                Expr value = args.get(0);
+                switch (value.type.kind) {
+                    case STRING:
+                        return new Expr("(long) bufrnix.protovalidate.Checks.codePoints(" + value.java + ")", Type.INT);
+                    case BYTES:
+                    case LIST:
+                    case MAP:
+                        return new Expr("(long) " + value.java + ".size()", Type.INT);
+                    default:
+                        throw new CelException("size() is not defined for " + value.type);
+                }
+            case "startsWith":
+            case "endsWith":
+            case "contains":
+                arity(function, args, 2);
+                expect(args.get(0), Type.Kind.STRING, function);
+                expect(args.get(1), Type.Kind.STRING, function);
+                return new Expr(args.get(0).java + "." + function + "(" + args.get(1).java + ")", Type.BOOL);
+            case "matches":
+                arity(function, args, 2);
+                expect(args.get(0), Type.Kind.STRING, function);
+                return new Expr(pattern(call, args.get(1)) + ".matcher(" + args.get(0).java + ").find()", Type.BOOL);
+            case "int":
+                arity(function, args, 1);
+                return convert(args.get(0), Type.INT);
+            case "uint":
+                arity(function, args, 1);
+                return convert(args.get(0), Type.UINT);
+            case "double":
+                arity(function, args, 1);
+                return convert(args.get(0), Type.DOUBLE);
+            case "string":
+                arity(function, args, 1);
+                return convert(args.get(0), Type.STRING);
+            case "isNan":
+                arity(function, args, 1);
+                expect(args.get(0), Type.Kind.DOUBLE, function);
+                return new Expr("Double.isNaN(" + args.get(0).java + ")", Type.BOOL);
+            case "isInf":
+                arity(function, args, 1);
+                expect(args.get(0), Type.Kind.DOUBLE, function);
+                return new Expr("Double.isInfinite(" + args.get(0).java + ")", Type.BOOL);
+            case "unique":
+                arity(function, args, 1);
+                expect(args.get(0), Type.Kind.LIST, function);
+                return new Expr("bufrnix.protovalidate.Checks.unique(" + args.get(0).java + ")", Type.BOOL);
+            default:
+                throw new CelException("function " + function + " is not supported");
+        }
+    }
+
+    private String pattern(Call call, Expr regex) throws CelException {
+        expect(regex, Type.Kind.STRING, "matches");
+        Node source = call.args.get(call.args.size() - 1);
+        if (source instanceof Literal) {
+            try {
+                com.google.re2j.Pattern.compile((String) ((Literal) source).value);
+            } catch (PatternSyntaxException e) {
+                throw new CelException("invalid regular expression: " + e.getMessage());
+            }
+            return constants.constant("com.google.re2j.Pattern", "com.google.re2j.Pattern.compile(" + regex.java + ")");
+        }
+        fallible = true;
+        return "com.google.re2j.Pattern.compile(" + regex.java + ")";
+    }
+
+    private Expr comprehension(Call call, Map<String, Expr> scope) throws CelException {
+        if (call.args.size() != 2 || !(call.args.get(0) instanceof Ident)) {
+            throw new CelException(call.function + "() takes a variable name and a predicate");
+        }
+        Expr range = compile(call.target, scope);
+        String variable = "v" + lambdas++ + "$";
+        String stream;
+        Expr element;
+        if (range.type.kind == Type.Kind.LIST) {
+            stream = range.java + ".stream()";
+            element = Fields.scalar(variable, range.type.field, true);
+        } else if (range.type.kind == Type.Kind.MAP) {
+            stream = range.java + ".keySet().stream()";
+            element = Fields.scalar(variable, range.type.mapKey(), true);
+        } else {
+            throw new CelException(call.function + "() is not defined for " + range.type);
+        }
+
+        Map<String, Expr> inner = new HashMap<>(scope);
+        inner.put(((Ident) call.args.get(0)).name, element);
+        Expr predicate = compile(call.args.get(1), inner);
+        expect(predicate, Type.Kind.BOOL, call.function);
+
+        String lambda = variable + " -> " + predicate.java;
+        switch (call.function) {
+            case "all":
+                return new Expr(stream + ".allMatch(" + lambda + ")", Type.BOOL);
+            case "exists":
+                return new Expr(stream + ".anyMatch(" + lambda + ")", Type.BOOL);
+            default:
+                return new Expr("(" + stream + ".filter(" + lambda + ").count() == 1)", Type.BOOL);
+        }
+    }
+
+    private Expr index(Index index, Map<String, Expr> scope) throws CelException {
+        Expr operand = compile(index.operand, scope);
+        Expr key = compile(index.index, scope);
+        if (operand.type.kind == Type.Kind.LIST) {
+            expect(key, Type.Kind.INT, "[]");
+            fallible = true;
+            return Fields.scalar(operand.java + ".get((int) (" + key.java + "))", operand.type.field, true);
+        }
+        if (operand.type.kind == Type.Kind.MAP) {
+            String lookup = operand.java + ".get(" + boxKey(key, operand.type.mapKey()) + ")";
+            return Fields.scalar(lookup, operand.type.mapValue(), true);
+        }
+        throw new CelException("cannot index " + operand.type);
+    }
+
+    private static String boxKey(Expr key, FieldDescriptor keyField) throws CelException {
+        switch (keyField.getJavaType()) {
+            case INT:
+                if (!key.type.numeric()) {
+                    throw new CelException("map key must be a number, got " + key.type);
+                }
+                return "(int) (" + key.java + ")";
+            case LONG:
+                if (!key.type.numeric()) {
+                    throw new CelException("map key must be a number, got " + key.type);
+                }
+                return "(long) (" + key.java + ")";
+            case BOOLEAN:
+                expect(key, Type.Kind.BOOL, "map key");
+                return key.java;
+            default:
+                expect(key, Type.Kind.STRING, "map key");
+                return key.java;
+        }
+    }
+
+    private Expr binary(Binary binary, Map<String, Expr> scope) throws CelException {
+        if (binary.op.equals("in")) {
+            return membership(binary, scope);
+        }
+        boolean outer = fallible;
+        fallible = false;
+        Expr left = compile(binary.left, scope);
+        boolean leftFallible = fallible;
+        fallible |= outer;
+        Expr right = compile(binary.right, scope);
+        switch (binary.op) {
+            case "&&":
+            case "||":
+                expect(left, Type.Kind.BOOL, binary.op);
+                expect(right, Type.Kind.BOOL, binary.op);
+                if (leftFallible) {
+                    // Java would stop at the error of the left operand, CEL lets the right one decide
+                    String function = binary.op.equals("&&") ? "and" : "or";
+                    return new Expr("bufrnix.protovalidate.Checks." + function + "(() -> " + left.java + ", () -> " + right.java + ")", Type.BOOL);
+                }
+                return new Expr("(" + left.java + " " + binary.op + " " + right.java + ")", Type.BOOL);
+            case "==":
+                return new Expr(equal(left, right), Type.BOOL);
+            case "!=":
+                return new Expr("!" + equal(left, right), Type.BOOL);
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+                return new Expr(compare(binary.op, left, right), Type.BOOL);
+            default:
+                return arithmetic(binary.op, left, right);
+        }
+    }
+
+    private Expr membership(Binary binary, Map<String, Expr> scope) throws CelException {
+        Expr value = compile(binary.left, scope);
+        if (binary.right instanceof ListLiteral) {
+            List<String> alternatives = new ArrayList<>();
+            for (Node element : ((ListLiteral) binary.right).elements) {
+                alternatives.add(equal(value, compile(element, scope)));
+            }
+            if (alternatives.isEmpty()) {
+                return new Expr("false", Type.BOOL);
+            }
+            return new Expr("(" + String.join(" || ", alternatives) + ")", Type.BOOL);
+        }
+        Expr range = compile(binary.right, scope);
+        if (range.type.kind == Type.Kind.MAP) {
+            return new Expr(range.java + ".containsKey(" + boxKey(value, range.type.mapKey()) + ")", Type.BOOL);
+        }
+        if (range.type.kind != Type.Kind.LIST) {
+            throw new CelException("'in' is not defined for " + range.type);
+        }
+        String variable = "v" + lambdas++ + "$";
+        Expr element = Fields.scalar(variable, range.type.field, true);
+        return new Expr(range.java + ".stream().anyMatch(" + variable + " -> " + equal(element, value) + ")", Type.BOOL);
+    }
+
+    private static String equal(Expr left, Expr right) throws CelException {
+        if (left.type.numeric() && right.type.numeric()) {
+            String order = order(left, right);
+            if (order != null) {
+                return "(" + order + " == 0)";
+            }
+            return "(" + asDouble(left, right).java + " == " + asDouble(right, left).java + ")";
+        }
+        if (left.type.kind != right.type.kind) {
+            throw new CelException("cannot compare " + left.type + " with " + right.type);
+        }
+        if (left.type.kind == Type.Kind.BOOL) {
+            return "(" + left.java + " == " + right.java + ")";
+        }
+        return left.java + ".equals(" + right.java + ")";
+    }
+
+    private static String compare(String op, Expr left, Expr right) throws CelException {
+        if (left.type.numeric() && right.type.numeric()) {
+            String order = order(left, right);
+            if (order != null) {
+                return "(" + order + " " + op + " 0)";
+            }
+            return "(" + asDouble(left, right).java + " " + op + " " + asDouble(right, left).java + ")";
+        }
+        if (left.type.kind == Type.Kind.STRING && right.type.kind == Type.Kind.STRING) {
+            return "(bufrnix.protovalidate.Checks.compare(" + left.java + ", " + right.java + ") " + op + " 0)";
+        }
+        throw new CelException("cannot order " + left.type + " and " + right.type);
+    }
+
+    /**
+     * Orders two numbers that Java's operators would order differently from CEL because at least
+     * one is a uint, or returns null for the others.
+     */
+    private static String order(Expr left, Expr right) {
+        Type.Kind l = left.type.kind;
+        Type.Kind r = right.type.kind;
+        if (l == Type.Kind.UINT && r == Type.Kind.UINT) {
+            return "Long.compareUnsigned(" + left.java + ", " + right.java + ")";
+        }
+        if (l == Type.Kind.INT && r == Type.Kind.UINT) {
+            return "bufrnix.protovalidate.Checks.compareIntUint(" + left.java + ", " + right.java + ")";
+        }
+        if (l == Type.Kind.UINT && r == Type.Kind.INT) {
+            return "-bufrnix.protovalidate.Checks.compareIntUint(" + right.java + ", " + left.java + ")";
+        }
+        return null;
+    }
+
+    /** Converts a uint compared with a double to a double, which Java would read as signed. */
+    private static Expr asDouble(Expr value, Expr other) {
+        if (value.type.kind == Type.Kind.UINT && other.type.kind == Type.Kind.DOUBLE) {
+            return new Expr("bufrnix.protovalidate.Checks.uintToDouble(" + value.java + ")", Type.DOUBLE);
+        }
+        return value;
+    }
+
+    private Expr arithmetic(String op, Expr left, Expr right) throws CelException {
+        if (op.equals("+") && left.type.kind == Type.Kind.STRING && right.type.kind == Type.Kind.STRING) {
+            return new Expr("(" + left.java + " + " + right.java + ")", Type.STRING);
+        }
+        if (!left.type.numeric() || !right.type.numeric()) {
+            throw new CelException("operator " + op + " is not defined for " + left.type + " and " + right.type);
+        }
+        if (left.type.kind == Type.Kind.DOUBLE || right.type.kind == Type.Kind.DOUBLE) {
+            if (op.equals("%")) {
+                throw new CelException("operator % is not defined for double");
+            }
+            return new Expr("((double) " + asDouble(left, right).java + " " + op + " " + asDouble(right, left).java + ")", Type.DOUBLE);
+        }
+        if (left.type.kind != right.type.kind) {
+            throw new CelException("operator " + op + " is not defined for " + left.type + " and " + right.type);
+        }
+        // CEL integers are 64 bits and fail on overflow instead of wrapping
+        fallible = true;
+        String function;
+        if (left.type.kind == Type.Kind.UINT) {
+            function = UNSIGNED_ARITHMETIC.get(op);
+        } else {
+            function = SIGNED_ARITHMETIC.get(op);
+        }
+        return new Expr(function + "((long) " + left.java + ", (long) " + right.java + ")", left.type);
+    }
+
+    private Expr convert(Expr value, Type target) throws CelException {
+        Type.Kind from = value.type.kind;
+        switch (target.kind) {
+            case INT:
+            case UINT:
+                if (from == target.kind) {
+                    return new Expr("((long) " + value.java + ")", target);
+                }
+                // Values out of range and strings that are no numbers fail
+                fallible = true;
+                boolean signed = target.kind == Type.Kind.INT;
+                if (from == Type.Kind.DOUBLE) {
+                    String check = signed ? "doubleToInt" : "doubleToUint";
+                    return new Expr("bufrnix.protovalidate.Checks." + check + "(" + value.java + ")", target);
+                }
+                if (from == Type.Kind.INT || from == Type.Kind.UINT) {
+                    String check = signed ? "uintToInt" : "intToUint";
+                    return new Expr("bufrnix.protovalidate.Checks." + check + "((long) " + value.java + ")", target);
+                }
+                if (from == Type.Kind.STRING) {
+                    String parse = signed ? "Long.parseLong" : "Long.parseUnsignedLong";
+                    return new Expr(parse + "(" + value.java + ")", target);
+                }
+                break;
+            case DOUBLE:
+                if (from == Type.Kind.INT || from == Type.Kind.DOUBLE) {
+                    return new Expr("((double) " + value.java + ")", Type.DOUBLE);
+                }
+                if (from == Type.Kind.UINT) {
+                    return new Expr("bufrnix.protovalidate.Checks.uintToDouble(" + value.java + ")", Type.DOUBLE);
+                }
+                if (from == Type.Kind.STRING) {
+                    fallible = true;
+                    return new Expr("Double.parseDouble(" + value.java + ")", Type.DOUBLE);
+                }
+                break;
+            default:
+                switch (from) {
+                    case STRING:
+                        return value;
+                    case INT:
+                    case DOUBLE:
+                    case BOOL:
+                        return new Expr("String.valueOf(" + value.java + ")", Type.STRING);
+                    case UINT:
+                        return new Expr("Long.toUnsignedString(" + value.java + ")", Type.STRING);
+                    case BYTES:
+                        return new Expr(value.java + ".toStringUtf8()", Type.STRING);
+                    default:
+                        break;
+                }
+        }
+        throw new CelException("cannot convert " + value.type + " to " + target);
+    }
+
+    private static void arity(String function, List<Expr> args, int expected) throws CelException {
+        if (args.size() != expected) {
+            throw new CelException(function + "() takes " + (expected - 1) + " argument(s) besides its receiver");
+        }
+    }
+
+    private static void expect(Expr expr, Type.Kind kind, String operation) throws CelException {
+        if (expr.type.kind != kind) {
+            throw new CelException(operation + " needs " + kind.name().toLowerCase() + ", got " + expr.type);
+        }
+    }
+
+    // Parsing
+
+    /** Recursive-descent parser following the CEL grammar's operator precedence. */
+    private static final class Parser {
+        private final String source;
+        private int position;
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        Node parse() throws CelException {
+            Node node = conditional();
+            skipSpace();
+            if (position < source.length()) {
+                throw error("unexpected '" + source.charAt(position) + "'");
+            }
+            return node;
+        }
+
+        private Node conditional() throws CelException {
+            Node condition = or();
+            if (accept("?")) {
+                Node then = or();
+                require(":");
+                return new Conditional(condition, then, conditional());
+            }
+            return condition;
+        }
+
+        private Node or() throws CelException {
+            Node node = and();
+            while (accept("||")) {
+                node = new Binary("||", node, and());
+            }
+            return node;
+        }
+
+        private Node and() throws CelException {
+            Node node = relation();
+            while (accept("&&")) {
+                node = new Binary("&&", node, relation());
+            }
+            return node;
+        }
+
+        private Node relation() throws CelException {
+            Node node = addition();
+            while (true) {
+                String op = acceptAny("==", "!=", "<=", ">=", "<", ">");
+                if (op == null && acceptKeyword("in")) {
+                    op = "in";
+                }
+                if (op == null) {
+                    return node;
+                }
+                node = new Binary(op, node, addition());
+            }
+        }
+
+        private Node addition() throws CelException {
+            Node node = multiplication();
+            while (true) {
+                String op = acceptAny("+", "-");
+                if (op == null) {
+                    return node;
+                }
+                node = new Binary(op, node, multiplication());
+            }
+        }
+
+        private Node multiplication() throws CelException {
+            Node node = unary();
+            while (true) {
+                String op = acceptAny("*", "/", "%");
+                if (op == null) {
+                    return node;
+                }
+                node = new Binary(op, node, unary());
+            }
+        }
+
+        private Node unary() throws CelException {
+            if (accept("!")) {
+                return new Unary("!", unary());
+            }
+            if (accept("-")) {
+                return new Unary("-", unary());
+            }
+            return member();
+        }
+
+        private Node member() throws CelException {
+            Node node = primary();
+            while (true) {
+                if (accept(".")) {
+                    String name = identifier();
+                    if (accept("(")) {
+                        node = new Call(node, name, arguments(")"));
+                    } else {
+                        node = new Select(node, name);
+                    }
+                } else if (accept("[")) {
+                    Node index = conditional();
+                    require("]");
+                    node = new Index(node, index);
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node primary() throws CelException {
+            skipSpace();
+            if (position >= source.length()) {
+                throw error("unexpected end of expression");
+            }
+            char c = source.charAt(position);
+            if (accept("(")) {
+                Node node = conditional();
+                require(")");
+                return node;
+            }
+            if (accept("[")) {
+                return new ListLiteral(arguments("]"));
+            }
+            if (Character.isDigit(c) || (c == '.' && position + 1 < source.length() && Character.isDigit(source.charAt(position + 1)))) {
+                return number();
+            }
+            if (c == '"' || c == '\'' || isStringPrefix()) {
+                return string();
+            }
+            if (Character.isLetter(c) || c == '_') {
+                String name = identifier();
+                switch (name) {
+                    case "true":
+                        return new Literal(Type.BOOL, true);
+                    case "false":
+                        return new Literal(Type.BOOL, false);
+                    case "null":
+                        throw error("null is not supported");
+                    default:
+                        break;
+                }
+                if (accept("(")) {
+                    return new Call(null, name, arguments(")"));
+                }
+                return new Ident(name);
+            }
+            throw error("unexpected '" + c + "'");
+        }
+
+        private List<Node> arguments(String close) throws CelException {
+            List<Node> args = new ArrayList<>();
+            if (accept(close)) {
+                return args;
+            }
+            do {
+                args.add(conditional());
+            } while (accept(","));
+            require(close);
+            return args;
+        }
+
+        private Node number() throws CelException {
+            int start = position;
+            if (source.startsWith("0x", position) || source.startsWith("0X", position)) {
+                position += 2;
+                while (position < source.length() && Character.digit(source.charAt(position), 16) >= 0) {
+                    position++;
+                }
+                long value = Long.parseUnsignedLong(source.substring(start + 2, position), 16);
+                return integer(value);
+            }
+            boolean floating = false;
+            while (position < source.length() && Character.isDigit(source.charAt(position))) {
+                position++;
+            }
+            if (position + 1 < source.length() && source.charAt(position) == '.' && Character.isDigit(source.charAt(position + 1))) {
+                floating = true;
+                position++;
+                while (position < source.length() && Character.isDigit(source.charAt(position))) {
+                    position++;
+                }
+            }
+            if (position < source.length() && (source.charAt(position) == 'e' || source.charAt(position) == 'E')) {
+                floating = true;
+                position++;
+                if (position < source.length() && (source.charAt(position) == '+' || source.charAt(position) == '-')) {
+                    position++;
+                }
+                while (position < source.length() && Character.isDigit(source.charAt(position))) {
+                    position++;
+                }
+            }
+            String text = source.substring(start, position);
+            if (floating) {
+                return new Literal(Type.DOUBLE, Double.parseDouble(text));
+            }
+            return integer(Long.parseUnsignedLong(text));
+        }
+
+        private Node integer(long value) {
+            if (position < source.length() && (source.charAt(position) == 'u' || source.charAt(position) == 'U')) {
+                position++;
+                return new Literal(Type.UINT, value);
+            }
+            return new Literal(Type.INT, value);
+        }
+
+        private boolean isStringPrefix() {
+            int i = position;
+            int prefix = 0;
+            while (i < source.length() && prefix < 2 && "rRbB".indexOf(source.charAt(i)) >= 0) {
+                i++;
+                prefix++;
+            }
+            return prefix > 0 && i < source.length() && (source.charAt(i) == '"' || source.charAt(i) == '\'');
+        }
+
+        private Node string() throws CelException {
+            boolean raw = false;
+            boolean bytes = false;
+            while ("rRbB".indexOf(source.charAt(position)) >= 0) {
+                char prefix = Character.toLowerCase(source.charAt(position++));
+                raw |= prefix == 'r';
+                bytes |= prefix == 'b';
+            }
+            char quote = source.charAt(position);
+            String delimiter = source.startsWith(String.valueOf(quote).repeat(3), position)
+                ? String.valueOf(quote).repeat(3)
+                : String.valueOf(quote);
+            position += delimiter.length();
+
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            while (!source.startsWith(delimiter, position)) {
+                if (position >= source.length()) {
+                    throw error("unterminated string");
+                }
+                char c = source.charAt(position);
+                if (c == '\\' && !raw) {
+                    escape(out, bytes);
+                } else {
+                    int codePoint = source.codePointAt(position);
+                    position += Character.charCount(codePoint);
+                    writeUtf8(out, codePoint);
+                }
+            }
+            position += delimiter.length();
+            byte[] value = out.toByteArray();
+            if (bytes) {
+                return new Literal(Type.BYTES, value);
+            }
+            return new Literal(Type.STRING, new String(value, java.nio.charset.StandardCharsets.UTF_8));
+        }
+
+        private void escape(java.io.ByteArrayOutputStream out, boolean bytes) throws CelException {
+            position++;
+            if (position >= source.length()) {
+                throw error("unterminated escape");
+            }
+            char c = source.charAt(position++);
+            switch (c) {
+                case 'a': out.write(7); return;
+                case 'b': out.write('\b'); return;
+                case 'f': out.write('\f'); return;
+                case 'n': out.write('\n'); return;
+                case 'r': out.write('\r'); return;
+                case 't': out.write('\t'); return;
+                case 'v': out.write(11); return;
+                case '\\':
+                case '?':
+                case '"':
+                case '\'':
+                case '`':
+                    out.write(c);
+                    return;
+                case 'x':
+                case 'X':
+                    writeCode(out, hex(2), bytes);
+                    return;
+                case 'u':
+                    writeUtf8(out, hex(4));
+                    return;
+                case 'U':
+                    writeUtf8(out, hex(8));
+                    return;
+                default:
+                    if (c >= '0' && c <= '3') {
+                        position--;
+                        int value = Integer.parseInt(take(3), 8);
+                        writeCode(out, value, bytes);
+                        return;
+                    }
+                    throw error("unknown escape \\" + c);
+            }
+        }
+
+        /** Octal and hex escapes are bytes in bytes literals and code points in strings. */
+        private static void writeCode(java.io.ByteArrayOutputStream out, int value, boolean bytes) {
+            if (bytes) {
+                out.write(value);
+            } else {
+                writeUtf8(out, value);
+            }
+        }
+
+        private static void writeUtf8(java.io.ByteArrayOutputStream out, int codePoint) {
+            byte[] encoded = new String(Character.toChars(codePoint)).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            out.write(encoded, 0, encoded.length);
+        }
+
+        private int hex(int digits) throws CelException {
+            return Integer.parseInt(take(digits), 16);
+        }
+
+        private String take(int length) throws CelException {
+            if (position + length > source.length()) {
+                throw error("unterminated escape");
+            }
+            String text = source.substring(position, position + length);
+            position += length;
+            return text;
+        }
+
+        private String identifier() throws CelException {
+            skipSpace();
+            int start = position;
+            while (position < source.length()
+                && (Character.isLetterOrDigit(source.charAt(position)) || source.charAt(position) == '_')) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected identifier");
+            }
+            return source.substring(start, position);
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            skipSpace();
+            int end = position + keyword.length();
+            if (source.startsWith(keyword, position)
+                && (end == source.length() || !(Character.isLetterOrDigit(source.charAt(end)) || source.charAt(end) == '_'))) {
+                position = end;
+                return true;
+            }
+            return false;
+        }
+
+        private String acceptAny(String... tokens) {
+            for (String token : tokens) {
+                if (peek(token) && !(token.equals("<") && peek("<=")) && !(token.equals(">") && peek(">="))) {
+                    position += token.length();
+                    return token;
+                }
+            }
+            return null;
+        }
+
+        private boolean peek(String token) {
+            skipSpace();
+            return source.startsWith(token, position);
+        }
+
+        private boolean accept(String token) {
+            if (peek(token)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void require(String token) throws CelException {
+            if (!accept(token)) {
+                throw error("expected '" + token + "'");
+            }
+        }
+
+        private void skipSpace() {
+            while (position < source.length()) {
+                char c = source.charAt(position);
+                if (Character.isWhitespace(c)) {
+                    position++;
+                } else if (source.startsWith("//", position)) {
+                    while (position < source.length() && source.charAt(position) != '\n') {
+                        position++;
+                    }
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private CelException error(String message) {
+            return new CelException(message + " at position " + position);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package bufrnix.protovalidate.compiler;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+
+/** Java expressions reading fields of generated messages, typed for the CEL compiler. */
+final class Fields {
+    private Fields() {}
+
+    /** Whether the Java generator reads this enum field as a number via {@code get<Field>Value()}. */
+    static boolean openEnum(FieldDescriptor field) {
+        return field.getJavaType() == FieldDescriptor.JavaType.ENUM && !field.legacyEnumFieldTreatedAsClosed();
+    }
+
+    static boolean unsigned(FieldDescriptor field) {
+        switch (field.getType()) {
+            case UINT32:
+            case FIXED32:
+            case UINT64:
+            case FIXED64:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Reads a field of the message {@code message} as a CEL value. */
+    static CelCompiler.Expr value(String message, FieldDescriptor field) {
+        String name = JavaNames.accessor(field);
+        if (field.isMapField()) {
+            String suffix = openEnum(field.getMessageType().findFieldByName("value")) ? "ValueMap()" : "Map()";
+            return new CelCompiler.Expr(message + ".get" + name + suffix, CelCompiler.Type.map(field));
+        }
+        if (field.isRepeated()) {
+            String suffix = openEnum(field) ? "ValueList()" : "List()";
+            return new CelCompiler.Expr(message + ".get" + name + suffix, CelCompiler.Type.list(field));
+        }
+        String getter = message + ".get" + name + (openEnum(field) ? "Value()" : "()");
+        return scalar(getter, field, false);
+    }
+
+    /**
+     * Converts a Java expression holding a single value of {@code field} into a CEL value.
+     * {@code boxed} marks values taken from collections, which hold wrapper objects.
+     */
+    static CelCompiler.Expr scalar(String java, FieldDescriptor field, boolean boxed) {
+        switch (field.getJavaType()) {
+            case INT:
+                if (unsigned(field)) {
+                    return new CelCompiler.Expr("Integer.toUnsignedLong(" + java + ")", CelCompiler.Type.UINT);
+                }
+                return new CelCompiler.Expr(boxed ? java + ".intValue()" : java, CelCompiler.Type.INT);
+            case LONG:
+                String longValue = boxed ? java + ".longValue()" : java;
+                return new CelCompiler.Expr(longValue, unsigned(field) ? CelCompiler.Type.UINT : CelCompiler.Type.INT);
+            case FLOAT:
+            case DOUBLE:
+                return new CelCompiler.Expr(boxed ? java + ".doubleValue()" : java, CelCompiler.Type.DOUBLE);
+            case BOOLEAN:
+                return new CelCompiler.Expr(boxed ? java + ".booleanValue()" : java, CelCompiler.Type.BOOL);
+            case STRING:
+                return new CelCompiler.Expr(java, CelCompiler.Type.STRING);
+            case BYTE_STRING:
+                return new CelCompiler.Expr(java, CelCompiler.Type.BYTES);
+            case ENUM:
+                if (openEnum(field)) {
+                    return new CelCompiler.Expr(boxed ? java + ".intValue()" : java, CelCompiler.Type.INT);
+                }
+                return new CelCompiler.Expr(java + ".getNumber()", CelCompiler.Type.INT);
+            case MESSAGE:
+                return new CelCompiler.Expr(java, CelCompiler.Type.message(field.getMessageType()));
+            default:
+                throw new IllegalStateException("unknown field type " + field.getJavaType());
+        }
+    }
+
+    /** Java condition that is true if the field of {@code message} is populated, as CEL's has(). */
+    static String populated(String message, FieldDescriptor field) {
+        String name = JavaNames.accessor(field);
+        if (field.isRepeated()) {
+            return message + ".get" + name + "Count() > 0";
+        }
+        if (field.hasPresence()) {
+            return message + ".has" + name + "()";
+        }
+        return nonZero(value(message, field).java(), field);
+    }
+
+    /** Java condition that is true if a single value of {@code field} is not its zero value. */
+    static String nonZero(String java, FieldDescriptor field) {
+        switch (field.getJavaType()) {
+            case STRING:
+            case BYTE_STRING:
+                return "!" + java + ".isEmpty()";
+            case BOOLEAN:
+                return java;
+            case MESSAGE:
+                return "true";
+            default:
+                return java + " != 0";
+        }
+    }
+
+    /** Java type of a single value of {@code field} as held by the generated validators. */
+    static String javaType(FieldDescriptor field) {
+        switch (field.getJavaType()) {
+            case INT:
+            case ENUM:
+                return "int";
+            case LONG:
+                return "long";
+            case FLOAT:
+                return "float";
+            case DOUBLE:
+                return "double";
+            case BOOLEAN:
+                return "boolean";
+            case STRING:
+                return "java.lang.String";
+            case BYTE_STRING:
+                return "com.google.protobuf.ByteString";
+            case MESSAGE:
+                return JavaNames.className(field.getMessageType());
+            default:
+                throw new IllegalStateException("unknown field type " + field.getJavaType());
+        }
+    }
+}
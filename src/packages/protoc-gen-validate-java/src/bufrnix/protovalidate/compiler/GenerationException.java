@@ -0,0 +1,10 @@
+package bufrnix.protovalidate.compiler;
+
+/** Rules that cannot be compiled; reported to protoc as the plugin's error. */
+final class GenerationException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    GenerationException(String message) {
+        super(message);
+    }
+}
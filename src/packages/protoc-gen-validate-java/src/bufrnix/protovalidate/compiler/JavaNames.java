@@ -0,0 +1,153 @@
+package bufrnix.protovalidate.compiler;
+
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.Descriptors.OneofDescriptor;
+import com.google.protobuf.Descriptors.ServiceDescriptor;
+import java.util.Set;
+
+/**
+ * Names of the classes and accessors protoc's Java generator emits, so that generated
+ * validators can call them directly.
+ */
+final class JavaNames {
+    /** Capitalized field names the Java generator suffixes with an underscore. */
+    private static final Set<String> FORBIDDEN = Set.of(
+        "Class",
+        "CachedSize",
+        "SerializedSize",
+        "DefaultInstanceForType",
+        "ParserForType",
+        "UnknownFields",
+        "DescriptorForType",
+        "AllFields",
+        "InitializationErrorString");
+
+    private JavaNames() {}
+
+    static String javaPackage(FileDescriptor file) {
+        if (file.getOptions().hasJavaPackage()) {
+            return file.getOptions().getJavaPackage();
+        }
+        return file.getPackage();
+    }
+
+    static String outerClassName(FileDescriptor file) {
+        if (file.getOptions().hasJavaOuterClassname()) {
+            return file.getOptions().getJavaOuterClassname();
+        }
+        String base = file.getName();
+        base = base.substring(base.lastIndexOf('/') + 1);
+        if (base.endsWith(".proto")) {
+            base = base.substring(0, base.length() - ".proto".length());
+        }
+        String name = camelCase(base, true);
+        return conflicts(file, name) ? name + "OuterClass" : name;
+    }
+
+    /** Fully qualified name of the class generated for a message. */
+    static String className(Descriptor message) {
+        String nested = message.getName();
+        for (Descriptor parent = message.getContainingType(); parent != null; parent = parent.getContainingType()) {
+            nested = parent.getName() + "." + nested;
+        }
+        return qualify(message.getFile(), nested);
+    }
+
+    /** Fully qualified name of the class generated for an enum. */
+    static String className(EnumDescriptor enumType) {
+        Descriptor parent = enumType.getContainingType();
+        if (parent != null) {
+            return className(parent) + "." + enumType.getName();
+        }
+        return qualify(enumType.getFile(), enumType.getName());
+    }
+
+    /** Simple name of the validator generated for a message, e.g. {@code User_AddressValidator}. */
+    static String validatorName(Descriptor message) {
+        String name = message.getName();
+        for (Descriptor parent = message.getContainingType(); parent != null; parent = parent.getContainingType()) {
+            name = parent.getName() + "_" + name;
+        }
+        return name + "Validator";
+    }
+
+    /** Field name as it appears in accessors, e.g. {@code PhoneNumbers} in {@code getPhoneNumbersList()}. */
+    static String accessor(FieldDescriptor field) {
+        String name = camelCase(field.getName(), true);
+        return FORBIDDEN.contains(name) ? name + "_" : name;
+    }
+
+    static String accessor(OneofDescriptor oneof) {
+        return camelCase(oneof.getName(), true);
+    }
+
+    private static String qualify(FileDescriptor file, String nested) {
+        String javaPackage = javaPackage(file);
+        String prefix = javaPackage.isEmpty() ? "" : javaPackage + ".";
+        if (file.getOptions().getJavaMultipleFiles()) {
+            return prefix + nested;
+        }
+        return prefix + outerClassName(file) + "." + nested;
+    }
+
+    /** Port of the Java generator's UnderscoresToCamelCase. */
+    static String camelCase(String input, boolean capitalizeFirst) {
+        StringBuilder result = new StringBuilder(input.length());
+        boolean capitalizeNext = capitalizeFirst;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                result.append(capitalizeNext ? Character.toUpperCase(c) : c);
+                capitalizeNext = false;
+            } else if (c >= 'A' && c <= 'Z') {
+                result.append(i == 0 && !capitalizeFirst ? Character.toLowerCase(c) : c);
+                capitalizeNext = false;
+            } else if (c >= '0' && c <= '9') {
+                result.append(c);
+                capitalizeNext = true;
+            } else {
+                capitalizeNext = true;
+            }
+        }
+        return result.toString();
+    }
+
+    private static boolean conflicts(FileDescriptor file, String name) {
+        for (EnumDescriptor enumType : file.getEnumTypes()) {
+            if (enumType.getName().equals(name)) {
+                return true;
+            }
+        }
+        for (ServiceDescriptor service : file.getServices()) {
+            if (service.getName().equals(name)) {
+                return true;
+            }
+        }
+        for (Descriptor message : file.getMessageTypes()) {
+            if (conflicts(message, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean conflicts(Descriptor message, String name) {
+        if (message.getName().equals(name)) {
+            return true;
+        }
+        for (EnumDescriptor enumType : message.getEnumTypes()) {
+            if (enumType.getName().equals(name)) {
+                return true;
+            }
+        }
+        for (Descriptor nested : message.getNestedTypes()) {
+            if (conflicts(nested, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
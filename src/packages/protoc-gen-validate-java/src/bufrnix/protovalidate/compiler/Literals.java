@@ -0,0 +1,81 @@
+package bufrnix.protovalidate.compiler;
+
+/** Java source literals for values taken from rules. */
+final class Literals {
+    private Literals() {}
+
+    static String javaString(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    static String javaDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "Double.NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        }
+        return Double.toString(value) + "d";
+    }
+
+    static String javaFloat(float value) {
+        if (Float.isNaN(value)) {
+            return "Float.NaN";
+        }
+        if (Float.isInfinite(value)) {
+            return value > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+        }
+        return Float.toString(value) + "f";
+    }
+
+    static String javaByteString(byte[] value) {
+        StringBuilder out = new StringBuilder("com.google.protobuf.ByteString.copyFrom(new byte[] {");
+        for (int i = 0; i < value.length; i++) {
+            out.append(i == 0 ? "" : ", ").append(value[i]);
+        }
+        return out.append("})").toString();
+    }
+
+    /** Shortest readable form of a number in violation messages, e.g. 100 rather than 100.0. */
+    static String display(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    static String displayHex(byte[] value) {
+        StringBuilder out = new StringBuilder();
+        for (byte b : value) {
+            out.append(String.format("%02x", b));
+        }
+        return out.toString();
+    }
+}
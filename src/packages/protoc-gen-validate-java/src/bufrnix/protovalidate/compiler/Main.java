@@ -0,0 +1,175 @@
+package bufrnix.protovalidate.compiler;
+
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorRequest;
+import com.google.protobuf.compiler.PluginProtos.CodeGeneratorResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * protoc plugin compiling buf.validate rules into Java validator classes.
+ *
+ * <p>For every message of the generated files that has rules, directly or through message
+ * fields, it writes {@code <Message>Validator} next to the message classes of protoc's Java
+ * generator, plus the small {@code bufrnix.protovalidate} runtime the validators share. Messages
+ * of imported files that such a message references get their validators too, so their rules
+ * are checked with the message's own. The output needs only protobuf-java, and re2j for regular
+ * expressions: no reflection, no CEL interpreter.
+ */
+public final class Main {
+    private static final String[] RUNTIME = {
+        "Violation.java", "ValidationException.java", "EvaluationException.java", "Checks.java",
+    };
+
+    private Main() {}
+
+    public static void main(String[] args) throws Exception {
+        CodeGeneratorRequest request = CodeGeneratorRequest.parseFrom(System.in);
+        CodeGeneratorResponse response;
+        try {
+            response = generate(request);
+        } catch (GenerationException e) {
+            response = CodeGeneratorResponse.newBuilder().setError(e.getMessage()).build();
+        }
+        response.writeTo(System.out);
+        System.out.flush();
+    }
+
+    static CodeGeneratorResponse generate(CodeGeneratorRequest request) throws Exception {
+        Schema schema = new Schema(request.getProtoFileList());
+        // Imported files count as well: a generated message may reach rules only through them
+        List<Descriptor> messages = new ArrayList<>();
+        for (FileDescriptorProto file : request.getProtoFileList()) {
+            collect(schema.file(file.getName()).getMessageTypes(), messages);
+        }
+
+        // A message needs a validator if it has rules or a message field whose type has one
+        Map<Descriptor, String> validators = new LinkedHashMap<>();
+        for (Descriptor message : messages) {
+            if (hasRules(schema, message)) {
+                validators.put(message, validatorClass(message));
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Descriptor message : messages) {
+                if (!validators.containsKey(message) && referencesValidated(message, validators)) {
+                    validators.put(message, validatorClass(message));
+                    changed = true;
+                }
+            }
+        }
+
+        // Write the validators of the generated files and of the imported messages they call
+        Set<String> generated = new HashSet<>(request.getFileToGenerateList());
+        Set<Descriptor> written = new LinkedHashSet<>();
+        Deque<Descriptor> pending = new ArrayDeque<>();
+        for (Descriptor message : validators.keySet()) {
+            if (generated.contains(message.getFile().getName())) {
+                pending.add(message);
+            }
+        }
+        while (!pending.isEmpty()) {
+            Descriptor message = pending.remove();
+            if (!written.add(message)) {
+                continue;
+            }
+            for (FieldDescriptor field : message.getFields()) {
+                Descriptor target = messageType(field);
+                if (target != null && validators.containsKey(target)) {
+                    pending.add(target);
+                }
+            }
+        }
+
+        CodeGeneratorResponse.Builder response = CodeGeneratorResponse.newBuilder()
+            .setSupportedFeatures(CodeGeneratorResponse.Feature.FEATURE_PROTO3_OPTIONAL_VALUE);
+        for (Descriptor message : written) {
+            String source = new ValidatorGenerator(schema, message, validators).generate();
+            response.addFileBuilder()
+                .setName(validatorClass(message).replace('.', '/') + ".java")
+                .setContent(source);
+        }
+        if (!written.isEmpty()) {
+            for (String runtime : RUNTIME) {
+                response.addFileBuilder()
+                    .setName("bufrnix/protovalidate/" + runtime)
+                    .setContent(resource(runtime));
+            }
+        }
+        return response.build();
+    }
+
+    private static void collect(List<Descriptor> types, List<Descriptor> out) {
+        for (Descriptor type : types) {
+            if (type.getOptions().getMapEntry()) {
+                continue;
+            }
+            out.add(type);
+            collect(type.getNestedTypes(), out);
+        }
+    }
+
+    private static boolean hasRules(Schema schema, Descriptor message) throws Exception {
+        if (schema.messageRules(message) != null) {
+            return true;
+        }
+        for (FieldDescriptor field : message.getFields()) {
+            if (schema.fieldRules(field) != null) {
+                return true;
+            }
+        }
+        for (var oneof : message.getRealOneofs()) {
+            if (schema.oneofRules(oneof) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean referencesValidated(Descriptor message, Map<Descriptor, String> validators) {
+        for (FieldDescriptor field : message.getFields()) {
+            Descriptor target = messageType(field);
+            if (target != null && validators.containsKey(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The message type of a message field, or of the values of a map field; null for others. */
+    private static Descriptor messageType(FieldDescriptor field) {
+        FieldDescriptor target = field.isMapField() ? field.getMessageType().findFieldByName("value") : field;
+        return target.getJavaType() == FieldDescriptor.JavaType.MESSAGE ? target.getMessageType() : null;
+    }
+
+    private static String validatorClass(Descriptor message) {
+        FileDescriptor file = message.getFile();
+        String javaPackage = JavaNames.javaPackage(file);
+        String name = JavaNames.validatorName(message);
+        return javaPackage.isEmpty() ? name : javaPackage + "." + name;
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = Main.class.getResourceAsStream("/bufrnix/protovalidate/" + name)) {
+            if (in == null) {
+                throw new IOException("missing runtime source " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package bufrnix.protovalidate.compiler;
+
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A buf.validate rules message read by field name, so that both the published schema and
+ * wire-compatible subsets of it work.
+ *
+ * <p>Every rule read is marked as handled; {@link #requireHandled} rejects rules the generator
+ * does not implement instead of silently skipping them.
+ */
+final class Rules {
+    private final Message message;
+    private final String name;
+    private final Set<String> handled = new HashSet<>();
+
+    Rules(Message message, String name) {
+        this.message = message;
+        this.name = name;
+        // Examples document valid values and have no effect on validation
+        handled.add("example");
+    }
+
+    String name() {
+        return name;
+    }
+
+    boolean has(String rule) {
+        FieldDescriptor field = message.getDescriptorForType().findFieldByName(rule);
+        if (field == null) {
+            return false;
+        }
+        return field.isRepeated() ? message.getRepeatedFieldCount(field) > 0 : message.hasField(field);
+    }
+
+    Object get(String rule) {
+        handled.add(rule);
+        return message.getField(message.getDescriptorForType().findFieldByName(rule));
+    }
+
+    boolean bool(String rule) {
+        return has(rule) && (Boolean) get(rule);
+    }
+
+    long number(String rule) {
+        return ((Number) get(rule)).longValue();
+    }
+
+    String string(String rule) {
+        return (String) get(rule);
+    }
+
+    /** Number of the enum value of {@code rule}, 0 if unset. */
+    int enumNumber(String rule) {
+        return has(rule) ? ((EnumValueDescriptor) get(rule)).getNumber() : 0;
+    }
+
+    List<Object> list(String rule) {
+        if (!has(rule)) {
+            return new ArrayList<>();
+        }
+        handled.add(rule);
+        List<Object> values = new ArrayList<>();
+        for (Object value : (List<?>) message.getField(message.getDescriptorForType().findFieldByName(rule))) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    /** Nested rules message such as {@code string} or {@code items}, null if unset. */
+    Rules group(String rule) {
+        if (!has(rule)) {
+            return null;
+        }
+        return new Rules((Message) get(rule), name.isEmpty() ? rule : name + "." + rule);
+    }
+
+    void markHandled(String rule) {
+        handled.add(rule);
+    }
+
+    /** Throws if any rule set in this message was not read. */
+    void requireHandled(String location) throws GenerationException {
+        for (FieldDescriptor field : message.getAllFields().keySet()) {
+            if (!handled.contains(field.getName())) {
+                String rule = name.isEmpty() ? field.getName() : name + "." + field.getName();
+                throw new GenerationException(location + ": rule " + rule + " is not supported by protoc-gen-validate-java");
+            }
+        }
+    }
+}
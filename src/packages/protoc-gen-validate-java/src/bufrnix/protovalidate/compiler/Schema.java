@@ -0,0 +1,95 @@
+package bufrnix.protovalidate.compiler;
+
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.Descriptors.OneofDescriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Descriptors of a CodeGeneratorRequest and the buf.validate rules attached to them.
+ *
+ * <p>The buf.validate extensions are taken from the request itself, so rules are read from
+ * whichever validate.proto the generated files import. Options arrive with the extensions as
+ * unknown fields and are re-parsed against a registry of the dynamic extensions.
+ */
+final class Schema {
+    private final Map<String, FileDescriptor> files = new HashMap<>();
+    private final ExtensionRegistry registry = ExtensionRegistry.newInstance();
+    private FieldDescriptor fieldExtension;
+    private FieldDescriptor messageExtension;
+    private FieldDescriptor oneofExtension;
+
+    Schema(List<FileDescriptorProto> protos) throws DescriptorValidationException {
+        // protoc sends files in dependency order
+        for (FileDescriptorProto proto : protos) {
+            FileDescriptor[] dependencies = new FileDescriptor[proto.getDependencyCount()];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = files.get(proto.getDependency(i));
+            }
+            FileDescriptor file = FileDescriptor.buildFrom(proto, dependencies);
+            files.put(file.getName(), file);
+            for (FieldDescriptor extension : file.getExtensions()) {
+                if (!extension.getFullName().startsWith("buf.validate.")
+                    || extension.getJavaType() != FieldDescriptor.JavaType.MESSAGE) {
+                    continue;
+                }
+                switch (extension.getContainingType().getFullName()) {
+                    case "google.protobuf.FieldOptions":
+                        fieldExtension = extension.getName().equals("field") ? extension : fieldExtension;
+                        break;
+                    case "google.protobuf.MessageOptions":
+                        messageExtension = extension.getName().equals("message") ? extension : messageExtension;
+                        break;
+                    case "google.protobuf.OneofOptions":
+                        oneofExtension = extension.getName().equals("oneof") ? extension : oneofExtension;
+                        break;
+                    default:
+                        continue;
+                }
+                registry.add(extension, DynamicMessage.getDefaultInstance(extension.getMessageType()));
+            }
+        }
+    }
+
+    FileDescriptor file(String name) {
+        return files.get(name);
+    }
+
+    /** The {@code buf.validate.field} rules of a field, null if it has none. */
+    Rules fieldRules(FieldDescriptor field) throws InvalidProtocolBufferException {
+        Message rules = read(fieldExtension, field.getOptions());
+        return rules == null ? null : new Rules(rules, "");
+    }
+
+    /** The {@code buf.validate.message} rules of a message, null if it has none. */
+    Rules messageRules(Descriptor message) throws InvalidProtocolBufferException {
+        Message rules = read(messageExtension, message.getOptions());
+        return rules == null ? null : new Rules(rules, "");
+    }
+
+    /** The {@code buf.validate.oneof} rules of a oneof, null if it has none. */
+    Rules oneofRules(OneofDescriptor oneof) throws InvalidProtocolBufferException {
+        Message rules = read(oneofExtension, oneof.getOptions());
+        return rules == null ? null : new Rules(rules, "");
+    }
+
+    private Message read(FieldDescriptor extension, Message options) throws InvalidProtocolBufferException {
+        if (extension == null) {
+            return null;
+        }
+        DynamicMessage parsed = DynamicMessage.parseFrom(extension.getContainingType(), options.toByteString(), registry);
+        if (!parsed.hasField(extension)) {
+            return null;
+        }
+        return (Message) parsed.getField(extension);
+    }
+}
@@ -0,0 +1,797 @@
+package bufrnix.protovalidate.compiler;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.OneofDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.re2j.PatternSyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Writes the validator class of one message.
+ *
+ * <p>Every rule becomes a direct check on the generated accessors; CEL rules are translated by
+ * {@link CelCompiler}. Validators of message fields are called for nested messages that have
+ * one, and their violations are prefixed with the field path only when there are any. CEL rules
+ * that fail to evaluate throw an {@code EvaluationException}.
+ */
+final class ValidatorGenerator implements CelCompiler.Constants {
+    private static final int IGNORE_IF_ZERO_VALUE = 1;
+    private static final int IGNORE_ALWAYS = 3;
+
+    /** Sets replace chains of comparisons for {@code in} rules longer than this. */
+    private static final int SMALL_LIST = 4;
+
+    private final Schema schema;
+    private final Descriptor message;
+    private final Map<Descriptor, String> validators;
+    private final CelCompiler cel = new CelCompiler(this);
+    private final Map<String, String> constants = new LinkedHashMap<>();
+    private final Map<String, String> constantTypes = new HashMap<>();
+    /** Fields named by message oneof rules, whose other rules only apply when they are set. */
+    private final Set<String> oneofFields = new HashSet<>();
+    private final StringBuilder body = new StringBuilder();
+    private int indent;
+
+    ValidatorGenerator(Schema schema, Descriptor message, Map<Descriptor, String> validators) {
+        this.schema = schema;
+        this.message = message;
+        this.validators = validators;
+    }
+
+    /** Returns the source of the validator class. */
+    String generate() throws GenerationException, InvalidProtocolBufferException {
+        String messageClass = JavaNames.className(message);
+        String javaPackage = JavaNames.javaPackage(message.getFile());
+        String name = JavaNames.validatorName(message);
+
+        indent = 2;
+        Rules messageRules = schema.messageRules(message);
+        if (messageRules != null) {
+            for (Object rule : messageRules.list("oneof")) {
+                for (Object field : new Rules((Message) rule, "oneof").list("fields")) {
+                    oneofFields.add((String) field);
+                }
+            }
+        }
+        for (FieldDescriptor field : message.getFields()) {
+            field(field);
+        }
+        for (OneofDescriptor oneof : message.getRealOneofs()) {
+            oneof(oneof);
+        }
+        messageRules();
+
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated by protoc-gen-validate-java from ").append(message.getFile().getName()).append(". DO NOT EDIT!\n");
+        if (!javaPackage.isEmpty()) {
+            out.append("package ").append(javaPackage).append(";\n\n");
+        }
+        out.append("import bufrnix.protovalidate.ValidationException;\n");
+        out.append("import bufrnix.protovalidate.Violation;\n\n");
+        out.append("/**\n");
+        out.append(" * Validates {@link ").append(messageClass).append("} against the buf.validate rules of\n");
+        out.append(" * {@code ").append(message.getFullName()).append("}, without reflection or CEL evaluation.\n");
+        out.append(" */\n");
+        out.append("public final class ").append(name).append(" {\n");
+        for (Map.Entry<String, String> constant : constants.entrySet()) {
+            out.append("  private static final ").append(constantTypes.get(constant.getValue())).append(' ')
+                .append(constant.getValue()).append(" =\n      ").append(constant.getKey()).append(";\n");
+        }
+        if (!constants.isEmpty()) {
+            out.append('\n');
+        }
+        out.append("  private ").append(name).append("() {}\n\n");
+        out.append("  /** Returns the violations of {@code message}, empty if it is valid. */\n");
+        out.append("  public static java.util.List<Violation> validate(").append(messageClass).append(" message) {\n");
+        out.append("    java.util.List<Violation> violations = new java.util.ArrayList<>();\n");
+        out.append("    validate(message, violations);\n");
+        out.append("    return violations;\n");
+        out.append("  }\n\n");
+        out.append("  /** Returns whether {@code message} satisfies all of its rules. */\n");
+        out.append("  public static boolean isValid(").append(messageClass).append(" message) {\n");
+        out.append("    return validate(message).isEmpty();\n");
+        out.append("  }\n\n");
+        out.append("  /** Throws a {@link ValidationException} listing the violations of an invalid {@code message}. */\n");
+        out.append("  public static void check(").append(messageClass).append(" message) throws ValidationException {\n");
+        out.append("    java.util.List<Violation> violations = validate(message);\n");
+        out.append("    if (!violations.isEmpty()) {\n");
+        out.append("      throw new ValidationException(violations);\n");
+        out.append("    }\n");
+        out.append("  }\n\n");
+        out.append("  /** Appends the violations of {@code message} to {@code violations}, with paths relative to it. */\n");
+        out.append("  public static void validate(").append(messageClass).append(" message, java.util.List<Violation> violations) {\n");
+        out.append(body);
+        out.append("  }\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    @Override
+    public String constant(String javaType, String initializer) {
+        String existing = constants.get(initializer);
+        if (existing != null) {
+            return existing;
+        }
+        String name = "CONSTANT_" + constants.size();
+        constants.put(initializer, name);
+        constantTypes.put(name, javaType);
+        return name;
+    }
+
+    // Fields
+
+    private void field(FieldDescriptor field) throws GenerationException, InvalidProtocolBufferException {
+        Rules rules = schema.fieldRules(field);
+        String nested = nestedValidator(field);
+        if (rules == null && nested == null) {
+            return;
+        }
+        String location = field.getFullName();
+        int ignore = rules == null ? 0 : rules.enumNumber("ignore");
+        if (ignore == 0 && oneofFields.contains(field.getName())) {
+            ignore = IGNORE_IF_ZERO_VALUE;
+        }
+        if (ignore == IGNORE_ALWAYS) {
+            return;
+        }
+        boolean required = rules != null && rules.bool("required");
+        String path = Literals.javaString(field.getName());
+        String populated = Fields.populated("message", field);
+
+        line("// " + field.getName());
+        if (required) {
+            line("if (!(" + populated + ")) {");
+            indent++;
+            violation(path, "required", Literals.javaString("value is required"));
+            indent--;
+            line("} else {");
+        } else if (field.hasPresence() || ignore == IGNORE_IF_ZERO_VALUE) {
+            line("if (" + populated + ") {");
+        } else {
+            line("{");
+        }
+        indent++;
+        if (field.isMapField()) {
+            mapField(field, rules, nested, path);
+        } else if (field.isRepeated()) {
+            repeatedField(field, rules, nested, path);
+        } else {
+            line(Fields.javaType(field) + " value = " + getter("message", field) + ";");
+            if (rules != null) {
+                valueRules(field, rules, "value", path, location);
+            }
+            nested(nested, "value", path);
+        }
+        if (rules != null) {
+            celRules(rules, Fields.value("message", field), path, location);
+            rules.requireHandled(location);
+        }
+        indent--;
+        line("}");
+    }
+
+    private void repeatedField(FieldDescriptor field, Rules rules, String nested, String path)
+        throws GenerationException {
+        String location = field.getFullName();
+        line("java.util.List<" + boxedType(field) + "> values = " + Fields.value("message", field).java() + ";");
+        Rules items = null;
+        if (rules != null) {
+            Rules repeated = typeGroup(field, rules, "repeated", location);
+            if (repeated != null) {
+                if (repeated.has("min_items")) {
+                    long min = repeated.number("min_items");
+                    check("values.size() < " + min, path, "repeated.min_items", "value must contain at least " + min + " item(s)");
+                }
+                if (repeated.has("max_items")) {
+                    long max = repeated.number("max_items");
+                    check("values.size() > " + max, path, "repeated.max_items", "value must contain no more than " + max + " item(s)");
+                }
+                if (repeated.bool("unique")) {
+                    if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+                        throw new GenerationException(location + ": repeated.unique is only supported for scalar fields");
+                    }
+                    check("!bufrnix.protovalidate.Checks.unique(values)", path, "repeated.unique", "repeated value must contain unique items");
+                }
+                items = repeated.group("items");
+                repeated.requireHandled(location);
+            }
+        }
+        if (items == null && nested == null) {
+            return;
+        }
+        line("for (int i = 0; i < values.size(); i++) {");
+        indent++;
+        String itemPath = path.substring(0, path.length() - 1) + "[\" + i + \"]\"";
+        element(field, items, nested, "item", "values.get(i)", itemPath, location + "[]");
+        indent--;
+        line("}");
+    }
+
+    private void mapField(FieldDescriptor field, Rules rules, String nested, String path) throws GenerationException {
+        String location = field.getFullName();
+        FieldDescriptor key = field.getMessageType().findFieldByName("key");
+        FieldDescriptor value = field.getMessageType().findFieldByName("value");
+        String entryType = "java.util.Map.Entry<" + boxedType(key) + ", " + boxedType(value) + ">";
+        line("java.util.Map<" + boxedType(key) + ", " + boxedType(value) + "> entries = " + Fields.value("message", field).java() + ";");
+        Rules keys = null;
+        Rules values = null;
+        if (rules != null) {
+            Rules map = typeGroup(field, rules, "map", location);
+            if (map != null) {
+                if (map.has("min_pairs")) {
+                    long min = map.number("min_pairs");
+                    check("entries.size() < " + min, path, "map.min_pairs", "map must be at least " + min + " entries");
+                }
+                if (map.has("max_pairs")) {
+                    long max = map.number("max_pairs");
+                    check("entries.size() > " + max, path, "map.max_pairs", "map must be at most " + max + " entries");
+                }
+                keys = map.group("keys");
+                values = map.group("values");
+                map.requireHandled(location);
+            }
+        }
+        if (keys == null && values == null && nested == null) {
+            return;
+        }
+        line("for (" + entryType + " entry : entries.entrySet()) {");
+        indent++;
+        String keyText = key.getJavaType() == FieldDescriptor.JavaType.STRING ? "\\\"\" + entry.getKey() + \"\\\"" : "\" + entry.getKey() + \"";
+        String entryPath = path.substring(0, path.length() - 1) + "[" + keyText + "]\"";
+        if (keys != null) {
+            element(key, keys, null, "key", "entry.getKey()", entryPath, location + "[key]");
+        }
+        if (values != null || nested != null) {
+            element(value, values, nested, "item", "entry.getValue()", entryPath, location + "[value]");
+        }
+        indent--;
+        line("}");
+    }
+
+    /** Checks one element of a repeated field, or one key or value of a map field. */
+    private void element(FieldDescriptor field, Rules rules, String nested, String local, String boxed, String path, String location)
+        throws GenerationException {
+        String value = Fields.openEnum(field) || field.getJavaType() != FieldDescriptor.JavaType.ENUM ? boxed : boxed + ".getNumber()";
+        line("{");
+        indent++;
+        line(Fields.javaType(field) + " " + local + " = " + value + ";");
+        if (rules != null) {
+            int ignore = rules.enumNumber("ignore");
+            if (ignore == IGNORE_ALWAYS) {
+                indent--;
+                line("}");
+                return;
+            }
+            if (ignore == IGNORE_IF_ZERO_VALUE) {
+                line("if (" + Fields.nonZero(local, field) + ") {");
+                indent++;
+            }
+            valueRules(field, rules, local, path, location);
+            CelCompiler.Expr self = field.getJavaType() == FieldDescriptor.JavaType.ENUM
+                ? new CelCompiler.Expr(local, CelCompiler.Type.INT) : Fields.scalar(local, field, false);
+            celRules(rules, self, path, location);
+            rules.requireHandled(location);
+            if (ignore == IGNORE_IF_ZERO_VALUE) {
+                indent--;
+                line("}");
+            }
+        }
+        nested(nested, local, path);
+        indent--;
+        line("}");
+    }
+
+    private void nested(String validator, String value, String path) {
+        if (validator == null) {
+            return;
+        }
+        line("int before = violations.size();");
+        line(validator + ".validate(" + value + ", violations);");
+        line("if (violations.size() > before) {");
+        indent++;
+        line("Violation.prefix(violations, before, " + path + ");");
+        indent--;
+        line("}");
+    }
+
+    private String nestedValidator(FieldDescriptor field) {
+        FieldDescriptor target = field.isMapField() ? field.getMessageType().findFieldByName("value") : field;
+        if (target.getJavaType() != FieldDescriptor.JavaType.MESSAGE) {
+            return null;
+        }
+        return validators.get(target.getMessageType());
+    }
+
+    // Standard rules
+
+    private static final String[] TYPE_GROUPS = {
+        "float", "double", "int32", "int64", "uint32", "uint64", "sint32", "sint64", "fixed32", "fixed64",
+        "sfixed32", "sfixed64", "bool", "string", "bytes", "enum", "repeated", "map", "any", "duration", "timestamp",
+    };
+
+    /** Returns the type-specific rules of a field, rejecting rules for a different type. */
+    private static Rules typeGroup(FieldDescriptor field, Rules rules, String expected, String location) throws GenerationException {
+        for (String group : TYPE_GROUPS) {
+            if (!group.equals(expected) && rules.has(group)) {
+                throw new GenerationException(location + ": " + group + " rules do not apply to a field of type " + expected);
+            }
+        }
+        return rules.group(expected);
+    }
+
+    private void valueRules(FieldDescriptor field, Rules rules, String value, String path, String location)
+        throws GenerationException {
+        String type = groupName(field);
+        Rules group = typeGroup(field, rules, type, location);
+        if (group == null) {
+            return;
+        }
+        switch (field.getJavaType()) {
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                numberRules(field, group, value, path, type);
+                break;
+            case BOOLEAN:
+                if (group.has("const")) {
+                    boolean expected = (Boolean) group.get("const");
+                    check(value + " != " + expected, path, "bool.const", "value must equal " + expected);
+                }
+                break;
+            case STRING:
+                stringRules(group, value, path, location);
+                break;
+            case BYTE_STRING:
+                bytesRules(group, value, path, location);
+                break;
+            case ENUM:
+                enumRules(field, group, value, path);
+                break;
+            default:
+                break;
+        }
+        group.requireHandled(location);
+    }
+
+    private static String groupName(FieldDescriptor field) {
+        switch (field.getType()) {
+            case MESSAGE:
+            case GROUP:
+                String name = field.getMessageType().getFullName();
+                if (name.equals("google.protobuf.Duration")) {
+                    return "duration";
+                }
+                if (name.equals("google.protobuf.Timestamp")) {
+                    return "timestamp";
+                }
+                return name.equals("google.protobuf.Any") ? "any" : "message";
+            default:
+                return field.getType().name().toLowerCase();
+        }
+    }
+
+    private void numberRules(FieldDescriptor field, Rules rules, String value, String path, String type) {
+        if (rules.has("const")) {
+            Object expected = rules.get("const");
+            check("!(" + equal(field, value, expected) + ")", path, type + ".const", "value must equal " + display(field, expected));
+        }
+
+        String lower = rules.has("gt") ? "gt" : rules.has("gte") ? "gte" : null;
+        String upper = rules.has("lt") ? "lt" : rules.has("lte") ? "lte" : null;
+        if (lower != null || upper != null) {
+            Object low = lower == null ? null : rules.get(lower);
+            Object high = upper == null ? null : rules.get(upper);
+            String lowerOk = lower == null ? null : compare(field, value, lower.equals("gt") ? ">" : ">=", low);
+            String upperOk = upper == null ? null : compare(field, value, upper.equals("lt") ? "<" : "<=", high);
+            String lowerText = lower == null ? null : (lower.equals("gt") ? "greater than " : "greater than or equal to ") + display(field, low);
+            String upperText = upper == null ? null : (upper.equals("lt") ? "less than " : "less than or equal to ") + display(field, high);
+            if (lower == null) {
+                check("!" + upperOk, path, type + "." + upper, "value must be " + upperText);
+            } else if (upper == null) {
+                check("!" + lowerOk, path, type + "." + lower, "value must be " + lowerText);
+            } else if (compareConstants(field, low, high) < 0) {
+                check("!(" + lowerOk + " && " + upperOk + ")", path, type + "." + lower + "_" + upper,
+                    "value must be " + lowerText + " and " + upperText);
+            } else {
+                // An inverted range excludes the values between the bounds
+                check("!(" + lowerOk + " || " + upperOk + ")", path, type + "." + lower + "_" + upper + "_exclusive",
+                    "value must be " + lowerText + " or " + upperText);
+            }
+        }
+
+        inRules(rules, value, path, type, item -> equal(field, value, item), item -> display(field, item), null, null);
+
+        if (rules.bool("finite")) {
+            String wrapper = field.getJavaType() == FieldDescriptor.JavaType.FLOAT ? "Float" : "Double";
+            check("!" + wrapper + ".isFinite(" + value + ")", path, type + ".finite", "value must be finite");
+        }
+    }
+
+    private static String equal(FieldDescriptor field, String value, Object constant) {
+        return value + " == " + literal(field, constant);
+    }
+
+    private static String compare(FieldDescriptor field, String value, String op, Object constant) {
+        if (Fields.unsigned(field)) {
+            String wrapper = field.getJavaType() == FieldDescriptor.JavaType.INT ? "Integer" : "Long";
+            return "(" + wrapper + ".compareUnsigned(" + value + ", " + literal(field, constant) + ") " + op + " 0)";
+        }
+        return "(" + value + " " + op + " " + literal(field, constant) + ")";
+    }
+
+    private static int compareConstants(FieldDescriptor field, Object low, Object high) {
+        if (Fields.unsigned(field)) {
+            return Long.compareUnsigned(unsignedBits(low), unsignedBits(high));
+        }
+        return Double.compare(((Number) low).doubleValue(), ((Number) high).doubleValue());
+    }
+
+    private static long unsignedBits(Object value) {
+        return value instanceof Integer ? Integer.toUnsignedLong((Integer) value) : (Long) value;
+    }
+
+    private static String literal(FieldDescriptor field, Object constant) {
+        switch (field.getJavaType()) {
+            case LONG:
+                return constant + "L";
+            case FLOAT:
+                return Literals.javaFloat((Float) constant);
+            case DOUBLE:
+                return Literals.javaDouble((Double) constant);
+            default:
+                return constant.toString();
+        }
+    }
+
+    private static String display(FieldDescriptor field, Object constant) {
+        if (Fields.unsigned(field)) {
+            return Long.toUnsignedString(unsignedBits(constant));
+        }
+        if (constant instanceof Float || constant instanceof Double) {
+            return Literals.display(((Number) constant).doubleValue());
+        }
+        return constant.toString();
+    }
+
+    private void stringRules(Rules rules, String value, String path, String location) throws GenerationException {
+        if (rules.has("const")) {
+            String expected = rules.string("const");
+            check("!" + value + ".equals(" + Literals.javaString(expected) + ")", path, "string.const", "value must equal `" + expected + "`");
+        }
+        String codePoints = "bufrnix.protovalidate.Checks.codePoints(" + value + ")";
+        if (rules.has("len")) {
+            long length = rules.number("len");
+            check(codePoints + " != " + length, path, "string.len", "value length must be " + length + " characters");
+        }
+        if (rules.has("min_len")) {
+            long min = rules.number("min_len");
+            // A string has at most as many code points as chars
+            check(value + ".length() < " + min + " || " + codePoints + " < " + min, path, "string.min_len",
+                "value length must be at least " + min + " characters");
+        }
+        if (rules.has("max_len")) {
+            long max = rules.number("max_len");
+            check(value + ".length() > " + max + " && " + codePoints + " > " + max, path, "string.max_len",
+                "value length must be at most " + max + " characters");
+        }
+        String bytes = "bufrnix.protovalidate.Checks.utf8Length(" + value + ")";
+        if (rules.has("len_bytes")) {
+            long length = rules.number("len_bytes");
+            check(bytes + " != " + length, path, "string.len_bytes", "value length must be " + length + " bytes");
+        }
+        if (rules.has("min_bytes")) {
+            long min = rules.number("min_bytes");
+            check(bytes + " < " + min, path, "string.min_bytes", "value length must be at least " + min + " bytes");
+        }
+        if (rules.has("max_bytes")) {
+            long max = rules.number("max_bytes");
+            check(bytes + " > " + max, path, "string.max_bytes", "value length must be at most " + max + " bytes");
+        }
+        if (rules.has("pattern")) {
+            String pattern = pattern(rules.string("pattern"), location);
+            String regex = rules.string("pattern");
+            check("!" + pattern + ".matcher(" + value + ").find()", path, "string.pattern", "value does not match regex pattern `" + regex + "`");
+        }
+        if (rules.has("prefix")) {
+            String prefix = rules.string("prefix");
+            check("!" + value + ".startsWith(" + Literals.javaString(prefix) + ")", path, "string.prefix", "value does not have prefix `" + prefix + "`");
+        }
+        if (rules.has("suffix")) {
+            String suffix = rules.string("suffix");
+            check("!" + value + ".endsWith(" + Literals.javaString(suffix) + ")", path, "string.suffix", "value does not have suffix `" + suffix + "`");
+        }
+        if (rules.has("contains")) {
+            String part = rules.string("contains");
+            check("!" + value + ".contains(" + Literals.javaString(part) + ")", path, "string.contains", "value does not contain substring `" + part + "`");
+        }
+        if (rules.has("not_contains")) {
+            String part = rules.string("not_contains");
+            check(value + ".contains(" + Literals.javaString(part) + ")", path, "string.not_contains", "value contains substring `" + part + "`");
+        }
+        inRules(rules, value, path, "string", item -> value + ".equals(" + Literals.javaString((String) item) + ")", Object::toString,
+            item -> Literals.javaString((String) item), "java.util.Set<java.lang.String>");
+    }
+
+    private void bytesRules(Rules rules, String value, String path, String location) throws GenerationException {
+        if (rules.has("const")) {
+            ByteString expected = (ByteString) rules.get("const");
+            check("!" + value + ".equals(" + bytesConstant(expected) + ")", path, "bytes.const",
+                "value must be " + Literals.displayHex(expected.toByteArray()));
+        }
+        if (rules.has("len")) {
+            long length = rules.number("len");
+            check(value + ".size() != " + length, path, "bytes.len", "value length must be " + length + " bytes");
+        }
+        if (rules.has("min_len")) {
+            long min = rules.number("min_len");
+            check(value + ".size() < " + min, path, "bytes.min_len", "value length must be at least " + min + " bytes");
+        }
+        if (rules.has("max_len")) {
+            long max = rules.number("max_len");
+            check(value + ".size() > " + max, path, "bytes.max_len", "value must be at most " + max + " bytes");
+        }
+        if (rules.has("pattern")) {
+            String pattern = pattern(rules.string("pattern"), location);
+            String regex = rules.string("pattern");
+            check("!" + value + ".isValidUtf8() || !" + pattern + ".matcher(" + value + ".toStringUtf8()).find()", path, "bytes.pattern",
+                "value must match regex pattern `" + regex + "`");
+        }
+        if (rules.has("prefix")) {
+            ByteString prefix = (ByteString) rules.get("prefix");
+            check("!" + value + ".startsWith(" + bytesConstant(prefix) + ")", path, "bytes.prefix",
+                "value does not have prefix " + Literals.displayHex(prefix.toByteArray()));
+        }
+        if (rules.has("suffix")) {
+            ByteString suffix = (ByteString) rules.get("suffix");
+            check("!" + value + ".endsWith(" + bytesConstant(suffix) + ")", path, "bytes.suffix",
+                "value does not have suffix " + Literals.displayHex(suffix.toByteArray()));
+        }
+        if (rules.has("contains")) {
+            ByteString part = (ByteString) rules.get("contains");
+            check("!bufrnix.protovalidate.Checks.contains(" + value + ", " + bytesConstant(part) + ")", path, "bytes.contains",
+                "value does not contain " + Literals.displayHex(part.toByteArray()));
+        }
+        inRules(rules, value, path, "bytes", item -> value + ".equals(" + bytesConstant((ByteString) item) + ")",
+            item -> Literals.displayHex(((ByteString) item).toByteArray()), null, null);
+    }
+
+    private void enumRules(FieldDescriptor field, Rules rules, String value, String path) {
+        if (rules.has("const")) {
+            Object expected = rules.get("const");
+            check(value + " != " + expected, path, "enum.const", "value must equal " + expected);
+        }
+        if (rules.bool("defined_only")) {
+            List<Object> numbers = new ArrayList<>();
+            for (EnumValueDescriptor defined : field.getEnumType().getValues()) {
+                if (!numbers.contains(defined.getNumber())) {
+                    numbers.add(defined.getNumber());
+                }
+            }
+            String condition;
+            if (numbers.size() > SMALL_LIST) {
+                condition = "!" + constant("java.util.Set<java.lang.Integer>", "java.util.Set.of(" + join(numbers, Object::toString) + ")") + ".contains(" + value + ")";
+            } else {
+                condition = "!(" + join(numbers, " || ", number -> value + " == " + number) + ")";
+            }
+            check(condition, path, "enum.defined_only", "value must be one of the defined enum values");
+        }
+        inRules(rules, value, path, "enum", item -> value + " == " + item, Object::toString, Object::toString,
+            "java.util.Set<java.lang.Integer>");
+    }
+
+    /**
+     * Emits in and not_in checks, as chained comparisons for short lists or, when
+     * {@code setType} is given, as a lookup in a constant set for long ones.
+     */
+    private void inRules(Rules rules, String value, String path, String type, Function<Object, String> equal,
+        Function<Object, String> display, Function<Object, String> literal, String setType) {
+        for (String rule : new String[] {"in", "not_in"}) {
+            List<Object> items = rules.list(rule);
+            if (items.isEmpty()) {
+                continue;
+            }
+            boolean in = rule.equals("in");
+            String text = "value must " + (in ? "" : "not ") + "be in list [" + join(items, display) + "]";
+            String any;
+            if (setType != null && items.size() > SMALL_LIST) {
+                any = constant(setType, "java.util.Set.of(" + join(items, literal) + ")") + ".contains(" + value + ")";
+            } else {
+                any = "(" + join(items, " || ", equal) + ")";
+            }
+            check(in ? "!" + any : any, path, type + "." + rule, text);
+        }
+    }
+
+    /** Declares the compiled RE2 pattern of a rule, rejecting syntax RE2 does not accept. */
+    private String pattern(String regex, String location) throws GenerationException {
+        try {
+            com.google.re2j.Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new GenerationException(location + ": invalid regular expression `" + regex + "`: " + e.getMessage());
+        }
+        return constant("com.google.re2j.Pattern", "com.google.re2j.Pattern.compile(" + Literals.javaString(regex) + ")");
+    }
+
+    private String bytesConstant(ByteString value) {
+        return constant("com.google.protobuf.ByteString", Literals.javaByteString(value.toByteArray()));
+    }
+
+    // CEL rules
+
+    private void celRules(Rules rules, CelCompiler.Expr self, String path, String location) throws GenerationException {
+        for (Object rule : rules.list("cel")) {
+            String id = "";
+            String text = "";
+            String expression;
+            if (rule instanceof Message) {
+                Rules cel = new Rules((Message) rule, "cel");
+                id = cel.has("id") ? cel.string("id") : "";
+                text = cel.has("message") ? cel.string("message") : "";
+                expression = cel.string("expression");
+            } else {
+                expression = (String) rule;
+            }
+            Map<String, CelCompiler.Expr> scope = new HashMap<>();
+            scope.put("this", self);
+            CelCompiler.Expr compiled;
+            try {
+                compiled = cel.compile(expression, scope);
+            } catch (CelCompiler.CelException e) {
+                throw new GenerationException(location + ": cannot compile CEL expression `" + expression + "`: " + e.getMessage());
+            }
+            boolean fallible = cel.fallible();
+            if (fallible) {
+                // Overflows and other evaluation errors fail the validation, as in protovalidate-java
+                line("try {");
+                indent++;
+            }
+            switch (compiled.type().kind) {
+                case BOOL:
+                    String description = text.isEmpty() ? "\"\"" : Literals.javaString(text);
+                    line("if (!(" + compiled.java() + ")) {");
+                    indent++;
+                    violation(path, id, description);
+                    indent--;
+                    line("}");
+                    break;
+                case STRING:
+                    line("{");
+                    indent++;
+                    line("java.lang.String result = " + compiled.java() + ";");
+                    line("if (!result.isEmpty()) {");
+                    indent++;
+                    violation(path, id, "result");
+                    indent--;
+                    line("}");
+                    indent--;
+                    line("}");
+                    break;
+                default:
+                    throw new GenerationException(location + ": CEL expression `" + expression + "` must produce a bool or a string");
+            }
+            if (fallible) {
+                indent--;
+                line("} catch (java.lang.RuntimeException e) {");
+                line("  throw new bufrnix.protovalidate.EvaluationException(" + Literals.javaString(id) + ", e);");
+                line("}");
+            }
+        }
+    }
+
+    // Oneofs and message rules
+
+    private void oneof(OneofDescriptor oneof) throws GenerationException, InvalidProtocolBufferException {
+        Rules rules = schema.oneofRules(oneof);
+        if (rules == null) {
+            return;
+        }
+        if (rules.bool("required")) {
+            line("// " + oneof.getName());
+            check("message.get" + JavaNames.accessor(oneof) + "Case().getNumber() == 0", Literals.javaString(oneof.getName()),
+                "required", "exactly one field is required in oneof");
+        }
+        rules.requireHandled(oneof.getFullName());
+    }
+
+    private void messageRules() throws GenerationException, InvalidProtocolBufferException {
+        Rules rules = schema.messageRules(message);
+        if (rules == null) {
+            return;
+        }
+        String location = message.getFullName();
+        for (Object rule : rules.list("oneof")) {
+            Rules oneof = new Rules((Message) rule, "oneof");
+            List<Object> names = oneof.list("fields");
+            List<String> populated = new ArrayList<>();
+            for (Object name : names) {
+                FieldDescriptor field = message.findFieldByName((String) name);
+                if (field == null) {
+                    throw new GenerationException(location + ": oneof rule names unknown field " + name);
+                }
+                populated.add("(" + Fields.populated("message", field) + " ? 1 : 0)");
+            }
+            String count = "(" + String.join(" + ", populated) + ")";
+            String fields = join(names, Object::toString);
+            line("// oneof " + fields);
+            check(count + " > 1", "\"\"", "message.oneof", "only one of " + fields + " can be set");
+            if (oneof.bool("required")) {
+                check(count + " == 0", "\"\"", "message.oneof", "one of " + fields + " must be set");
+            }
+            oneof.requireHandled(location);
+        }
+        if (rules.has("cel")) {
+            line("// " + message.getName());
+            celRules(rules, new CelCompiler.Expr("message", CelCompiler.Type.message(message)), "\"\"", location);
+        }
+        rules.requireHandled(location);
+    }
+
+    // Output helpers
+
+    private void check(String failure, String path, String id, String text) {
+        line("if (" + failure + ") {");
+        indent++;
+        violation(path, id, Literals.javaString(text));
+        indent--;
+        line("}");
+    }
+
+    private void violation(String path, String id, String text) {
+        line("violations.add(new Violation(" + path + ", " + Literals.javaString(id) + ", " + text + "));");
+    }
+
+    private void line(String code) {
+        body.append("  ".repeat(indent)).append(code).append('\n');
+    }
+
+    private static String getter(String message, FieldDescriptor field) {
+        String name = JavaNames.accessor(field);
+        if (field.getJavaType() != FieldDescriptor.JavaType.ENUM) {
+            return message + ".get" + name + "()";
+        }
+        return Fields.openEnum(field) ? message + ".get" + name + "Value()" : message + ".get" + name + "().getNumber()";
+    }
+
+    private static String boxedType(FieldDescriptor field) {
+        switch (field.getJavaType()) {
+            case INT:
+                return "java.lang.Integer";
+            case LONG:
+                return "java.lang.Long";
+            case FLOAT:
+                return "java.lang.Float";
+            case DOUBLE:
+                return "java.lang.Double";
+            case BOOLEAN:
+                return "java.lang.Boolean";
+            case ENUM:
+                return Fields.openEnum(field) ? "java.lang.Integer" : JavaNames.className(field.getEnumType());
+            default:
+                return Fields.javaType(field);
+        }
+    }
+
+    private static String join(List<Object> items, Function<Object, String> format) {
+        return join(items, ", ", format);
+    }
+
+    private static String join(List<Object> items, String separator, Function<Object, String> format) {
+        List<String> parts = new ArrayList<>();
+        for (Object item : items) {
+            parts.add(format.apply(item));
+        }
+        return String.join(separator, parts);
+    }
+}
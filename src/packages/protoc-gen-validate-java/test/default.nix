@@ -0,0 +1,57 @@
+/* Differential test of protoc-gen-validate-java against protovalidate-java.
+
+   Generates the messages of proto/conformance/v1 and the validators of
+   cases.proto alone, so the validators of the imported common.proto must
+   come along, and runs DifferentialTest. The build fails if a compiled
+   validator and the protovalidate runtime disagree on a case.
+
+   Type: Derivation
+*/
+{
+  lib,
+  stdenv,
+  jdk,
+  protobuf,
+  fetchurl,
+  callPackage,
+  ...
+}:
+with lib; let
+  plugin = callPackage ../. {};
+  mavenDeps = import ../../../languages/java/maven-deps.nix {inherit fetchurl lib;};
+  classpath = concatStringsSep ":" (mavenDeps.protobuf ++ mavenDeps.protovalidate);
+  # buf/validate/validate.proto of the protovalidate-java release in maven-deps.nix
+  validateProtos = ../../../../examples/java-protovalidate/proto;
+in
+  stdenv.mkDerivation {
+    name = "protoc-gen-validate-java-differential-test";
+
+    src = fileset.toSource {
+      root = ./.;
+      fileset = fileset.unions [
+        ./proto
+        ./java
+      ];
+    };
+
+    nativeBuildInputs = [jdk protobuf];
+
+    buildPhase = ''
+      runHook preBuild
+
+      mkdir -p gen classes
+      protoc -I proto -I ${validateProtos} --java_out=gen \
+        proto/conformance/v1/common.proto proto/conformance/v1/cases.proto
+      protoc -I proto -I ${validateProtos} \
+        --plugin=protoc-gen-validate-java=${plugin}/bin/protoc-gen-validate-java \
+        --validate-java_out=gen proto/conformance/v1/cases.proto
+      javac -nowarn -cp ${classpath} -d classes $(find gen java -name '*.java')
+      java -cp classes:${classpath} build.buf.protovalidate.DifferentialTest
+
+      runHook postBuild
+    '';
+
+    installPhase = ''
+      touch $out
+    '';
+  }
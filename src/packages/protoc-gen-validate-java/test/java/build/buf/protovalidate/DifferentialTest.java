@@ -0,0 +1,162 @@
+// In protovalidate-java's package to format its field paths with its own FieldPathUtils
+package build.buf.protovalidate;
+
+import build.buf.protovalidate.exceptions.ExecutionException;
+import bufrnix.conformance.v1.Address;
+import bufrnix.conformance.v1.Comparisons;
+import bufrnix.conformance.v1.ComparisonsValidator;
+import bufrnix.conformance.v1.Conversions;
+import bufrnix.conformance.v1.ConversionsValidator;
+import bufrnix.conformance.v1.Division;
+import bufrnix.conformance.v1.DivisionValidator;
+import bufrnix.conformance.v1.Imported;
+import bufrnix.conformance.v1.ImportedValidator;
+import bufrnix.conformance.v1.IntArithmetic;
+import bufrnix.conformance.v1.IntArithmeticValidator;
+import bufrnix.conformance.v1.MixedComparisons;
+import bufrnix.conformance.v1.MixedComparisonsValidator;
+import bufrnix.conformance.v1.Patterns;
+import bufrnix.conformance.v1.PatternsValidator;
+import bufrnix.conformance.v1.UintArithmetic;
+import bufrnix.conformance.v1.UintArithmeticValidator;
+import bufrnix.protovalidate.EvaluationException;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Validates the messages of cases.proto with the validators of protoc-gen-validate-java and with
+ * protovalidate-java, and fails if they disagree on the violations or on which rule fails to
+ * evaluate. Expressions protovalidate-java rejects or evaluates differently from CEL are checked
+ * against the results CEL defines.
+ */
+public final class DifferentialTest {
+  private static final Validator RUNTIME = ValidatorFactory.newBuilder().build();
+  private static int failures;
+
+  private DifferentialTest() {}
+
+  public static void main(String[] args) throws Exception {
+    Patterns word = Patterns.newBuilder().setEmail("a@b.com").setToken(bytes("abc")).setWord("abc").build();
+    check("pattern", word, PatternsValidator::validate);
+    // protovalidate-java reports a violation, java.util.regex would match before the newline
+    check("pattern trailing newline", word.toBuilder().setEmail("a@b.com\n").build(), PatternsValidator::validate);
+    check("bytes pattern trailing newline", word.toBuilder().setToken(bytes("abc\n")).build(), PatternsValidator::validate);
+    check("matches trailing newline", word.toBuilder().setWord("abc\n").build(), PatternsValidator::validate);
+
+    check("int arithmetic", IntArithmetic.getDefaultInstance(), IntArithmeticValidator::validate);
+    check("int add overflow", IntArithmetic.newBuilder().setValue(Long.MAX_VALUE).build(), IntArithmeticValidator::validate);
+    check("int subtract overflow", IntArithmetic.newBuilder().setValue(Long.MIN_VALUE).build(), IntArithmeticValidator::validate);
+    check("int multiply overflow", IntArithmetic.newBuilder().setValue(1L << 62).build(), IntArithmeticValidator::validate);
+    check("int32 widened", IntArithmetic.newBuilder().setSmall(1 << 30).build(), IntArithmeticValidator::validate);
+    check("overflow absorbed", IntArithmetic.newBuilder().addValues(Long.MAX_VALUE).build(), IntArithmeticValidator::validate);
+    check("overflow not absorbed", IntArithmetic.newBuilder().addValues(1L << 62).build(), IntArithmeticValidator::validate);
+    check("logical operators", IntArithmetic.newBuilder().addValues(-5).addValues(5).build(), IntArithmeticValidator::validate);
+
+    check("uint arithmetic", UintArithmetic.getDefaultInstance(), UintArithmeticValidator::validate);
+    check("uint add overflow", UintArithmetic.newBuilder().setValue(-1L).build(), UintArithmeticValidator::validate);
+    check("uint multiply overflow", UintArithmetic.newBuilder().setValue(0x6000000000000000L).build(), UintArithmeticValidator::validate);
+    check("uint subtract overflow", UintArithmetic.newBuilder().setFloor(6).build(), UintArithmeticValidator::validate);
+
+    check("division", Division.newBuilder().setDividend(7).build(), DivisionValidator::validate);
+    check("negative quotient", Division.newBuilder().setDividend(-7).build(), DivisionValidator::validate);
+    check("divide by zero", Division.newBuilder().setDividend(7).setDivisor(-1).build(), DivisionValidator::validate);
+    check("divide overflow", Division.newBuilder().setDividend(Long.MIN_VALUE).setDivisor(-2).build(), DivisionValidator::validate);
+
+    check("conversions", Conversions.newBuilder().setToInt(2.5).setToUint(2.5).build(), ConversionsValidator::validate);
+    check("double to int below -1", Conversions.newBuilder().setToInt(-2.5).build(), ConversionsValidator::validate);
+    check("double to int lowest", Conversions.newBuilder().setToInt(-0x1p63).build(), ConversionsValidator::validate);
+    check("double to int below range", Conversions.newBuilder().setToInt(-0x1.0000000000001p63).build(), ConversionsValidator::validate);
+    check("double to int above range", Conversions.newBuilder().setToInt(0x1p63).build(), ConversionsValidator::validate);
+    check("double to int NaN", Conversions.newBuilder().setToInt(Double.NaN).build(), ConversionsValidator::validate);
+    check("double to int infinity", Conversions.newBuilder().setToInt(Double.NEGATIVE_INFINITY).build(), ConversionsValidator::validate);
+    check("double to uint negative zero", Conversions.newBuilder().setToUint(-0.0).build(), ConversionsValidator::validate);
+    check("double to uint negative", Conversions.newBuilder().setToUint(-0.5).build(), ConversionsValidator::validate);
+    check("double to uint above int range", Conversions.newBuilder().setToUint(1e19).build(), ConversionsValidator::validate);
+    check("double to uint above range", Conversions.newBuilder().setToUint(0x1p64).build(), ConversionsValidator::validate);
+    check("double to uint NaN", Conversions.newBuilder().setToUint(Double.NaN).build(), ConversionsValidator::validate);
+    check("int to uint negative", Conversions.newBuilder().setSigned(-1).build(), ConversionsValidator::validate);
+    check("uint to int above range", Conversions.newBuilder().setUnsigned(-1L).build(), ConversionsValidator::validate);
+
+    Comparisons ordered = Comparisons.newBuilder().setLow("a").setHigh("b").setSmall(1).setLarge(2).build();
+    check("comparisons", ordered, ComparisonsValidator::validate);
+    // U+FF61 sorts before U+1F600 by code point, as CEL defines, but after its high surrogate by
+    // UTF-16 unit, as cel-java 0.10.1 under protovalidate-java 0.13.0 compares
+    expect("strings by code point", ordered.toBuilder().setLow("\uFF61").setHigh("\uD83D\uDE00").build(), ComparisonsValidator::validate);
+    expect("strings by code point reversed", ordered.toBuilder().setLow("\uD83D\uDE00").setHigh("\uFF61").build(), ComparisonsValidator::validate,
+        " | comparisons.strings | low must sort before high");
+    check("uint above int range", ordered.toBuilder().setLarge(-1L).build(), ComparisonsValidator::validate);
+    check("uint above int range reversed", ordered.toBuilder().setSmall(-1L).build(), ComparisonsValidator::validate);
+
+    MixedComparisons mixed = MixedComparisons.newBuilder().setSigned(-1).setUnsigned(2).build();
+    expect("int below uint", mixed, MixedComparisonsValidator::validate);
+    expect("int below large uint", mixed.toBuilder().setUnsigned(-1L).build(), MixedComparisonsValidator::validate);
+    expect("int above uint", mixed.toBuilder().setSigned(5).build(), MixedComparisonsValidator::validate,
+        " | mixed.less | signed must be less than unsigned");
+    expect("int equal to uint", mixed.toBuilder().setSigned(2).build(), MixedComparisonsValidator::validate,
+        " | mixed.equal | signed must differ from unsigned", " | mixed.less | signed must be less than unsigned");
+
+    Address zip = Address.newBuilder().setZip("12345").build();
+    check("imported", Imported.newBuilder().setAddress(zip).putByName("home", zip).build(), ImportedValidator::validate);
+    check("imported invalid", Imported.newBuilder().setAddress(Address.newBuilder().setZip("123"))
+        .putByName("home", Address.newBuilder().setZip("1").build()).build(), ImportedValidator::validate);
+
+    if (failures > 0) {
+      System.out.println(failures + " case(s) failed");
+      System.exit(1);
+    }
+    System.out.println("all cases passed");
+  }
+
+  private static <M extends Message> void check(String name, M message, Function<M, List<bufrnix.protovalidate.Violation>> compiled)
+      throws Exception {
+    Set<String> expected = new TreeSet<>();
+    try {
+      for (Violation violation : RUNTIME.validate(message).getViolations()) {
+        build.buf.validate.Violation proto = violation.toProto();
+        expected.add(FieldPathUtils.fieldPathString(proto.getField()) + " | " + proto.getRuleId() + " | " + proto.getMessage());
+      }
+    } catch (ExecutionException e) {
+      // "error evaluating <rule id>: <CEL error>"
+      String reason = e.getMessage().substring("error evaluating ".length());
+      expected.add("error evaluating " + reason.substring(0, reason.indexOf(':')));
+    }
+    compare(name, expected, compiled(message, compiled));
+  }
+
+  /** Checks a message against the violations CEL defines, where protovalidate-java cannot tell. */
+  private static <M extends Message> void expect(String name, M message, Function<M, List<bufrnix.protovalidate.Violation>> compiled,
+      String... violations) {
+    compare(name, new TreeSet<>(List.of(violations)), compiled(message, compiled));
+  }
+
+  private static <M extends Message> Set<String> compiled(M message, Function<M, List<bufrnix.protovalidate.Violation>> compiled) {
+    Set<String> actual = new TreeSet<>();
+    try {
+      for (bufrnix.protovalidate.Violation violation : compiled.apply(message)) {
+        actual.add(violation.getFieldPath() + " | " + violation.getRuleId() + " | " + violation.getMessage());
+      }
+    } catch (EvaluationException e) {
+      actual.add("error evaluating " + e.getRuleId());
+    }
+    return actual;
+  }
+
+  private static void compare(String name, Set<String> expected, Set<String> actual) {
+    if (expected.equals(actual)) {
+      System.out.println("ok " + name + " " + actual);
+      return;
+    }
+    failures++;
+    System.out.println("FAIL " + name);
+    System.out.println("  expected: " + expected);
+    System.out.println("  compiled: " + actual);
+  }
+
+  private static ByteString bytes(String value) {
+    return ByteString.copyFromUtf8(value);
+  }
+}
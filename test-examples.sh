@@ -396,6 +396,13 @@ test_example "java-basic" \
     "gen/java/build.gradle" \
     "gen/java/pom.xml"
 
+# Test Java lite example
+test_example "java-lite" \
+    "gen/java/com/example/protos/v1/Person.java" \
+    "gen/java/com/example/protos/v1/AddressBook.java" \
+    "gen/java/build.gradle" \
+    "gen/java/pom.xml"
+
 # Test Go multiple outputs example  
 test_example "go-multiple-outputs" \
     "gen/go/orders/v1/order.pb.go" \